@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point for {@code benchmarks.jar}. Behaves like the standard JMH launcher, except that it
+ * always enables the GC profiler so that every run reports allocation rates alongside timings.
+ * Accepts the usual JMH command-line options, e.g. {@code java -jar benchmarks.jar Iterable -p
+ * size=1000}.
+ */
+public final class BenchmarkMain {
+  public static void main(String[] args) throws Exception {
+    List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+    if (!containsProfiler(jmhArgs, "gc")) {
+      jmhArgs.add("-prof");
+      jmhArgs.add("gc");
+    }
+    Main.main(jmhArgs.toArray(new String[0]));
+  }
+
+  private static boolean containsProfiler(List<String> args, String profiler) {
+    for (int i = 0; i < args.size() - 1; i++) {
+      if (args.get(i).equals("-prof") && args.get(i + 1).equals(profiler)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private BenchmarkMain() {}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for a single {@link Expect} shared by many threads, as in a test that makes assertions
+ * from a thread pool. Every assertion checks the test phase, so this measures how much the threads
+ * contend on the state of the {@code Expect}. Run with {@code -t} to vary the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ExpectBenchmark {
+  private Expect expect;
+  private CountDownLatch testFinished;
+  private Thread test;
+
+  private final Object actual = "the quick brown fox";
+  // A new instance, so that the check can't succeed on identity alone.
+  private final Object expected = new String("the quick brown fox");
+
+  /** Starts a "test method" that keeps {@link #expect} in its rule context until teardown. */
+  @Setup(Level.Iteration)
+  public void startTest() throws InterruptedException {
+    expect = Expect.create();
+    testFinished = new CountDownLatch(1);
+    final CountDownLatch testStarted = new CountDownLatch(1);
+    final Statement statement =
+        expect.apply(
+            new Statement() {
+              @Override
+              public void evaluate() throws InterruptedException {
+                testStarted.countDown();
+                testFinished.await();
+              }
+            },
+            Description.EMPTY);
+    test =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              statement.evaluate();
+            } catch (Throwable t) {
+              throw new AssertionError(t);
+            }
+          }
+        };
+    test.start();
+    testStarted.await();
+  }
+
+  @TearDown(Level.Iteration)
+  public void finishTest() throws InterruptedException {
+    testFinished.countDown();
+    test.join();
+  }
+
+  @Benchmark
+  public Expect isEqualTo() {
+    expect.that(actual).isEqualTo(expected);
+    return expect;
+  }
+
+  @Benchmark
+  public boolean hasFailures() {
+    return expect.hasFailures();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.Function;
+import com.google.common.truth.IterableSubjectBenchmark.Scenario;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link IterableSubject.UsingCorrespondence#containsExactlyElementsIn(Iterable)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuzzyIterableSubjectBenchmark {
+  /** How the assertion knows which elements might correspond. */
+  public enum Keys {
+    /** No keys: every actual element is compared with every expected element. */
+    NONE,
+    /** The correspondence has a key hint. */
+    KEY_HINT,
+  }
+
+  private static final Function<String, String> LOWER_CASE =
+      new Function<String, String>() {
+        @Override
+        public String apply(String input) {
+          return Ascii.toLowerCase(input);
+        }
+      };
+
+  private static final Correspondence<String, String> CASE_INSENSITIVE_EQUALITY =
+      Correspondence.from(
+          new Correspondence.BinaryPredicate<String, String>() {
+            @Override
+            public boolean apply(String actual, String expected) {
+              return Ascii.equalsIgnoreCase(actual, expected);
+            }
+          },
+          "equals (ignoring case)");
+
+  @Param({"10", "1000"})
+  int size;
+
+  @Param Scenario scenario;
+
+  @Param Keys keys;
+
+  private List<String> actual;
+  private List<String> expected;
+
+  @Setup
+  public void setUp() {
+    expected = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      expected.add("element" + i);
+    }
+    actual = new ArrayList<>(size);
+    for (String element : expected) {
+      actual.add(Ascii.toUpperCase(element));
+    }
+    if (scenario != Scenario.IN_ORDER) {
+      Collections.shuffle(actual, new Random(size));
+    }
+    if (scenario == Scenario.FAILING) {
+      actual.set(actual.size() / 2, "unexpected");
+    }
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyElementsIn() {
+    try {
+      switch (keys) {
+        case NONE:
+          assertThat(actual)
+              .comparingElementsUsing(CASE_INSENSITIVE_EQUALITY)
+              .containsExactlyElementsIn(expected);
+          break;
+        case KEY_HINT:
+          assertThat(actual)
+              .comparingElementsUsing(CASE_INSENSITIVE_EQUALITY.withKeyHint(LOWER_CASE, LOWER_CASE))
+              .containsExactlyElementsIn(expected);
+          break;
+      }
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
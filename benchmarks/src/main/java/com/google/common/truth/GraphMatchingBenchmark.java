@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableListMultimap;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the two {@code GraphMatching.maximumCardinalityBipartiteMatching} overloads, over
+ * the same random graphs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphMatchingBenchmark {
+  /** How many edges each LHS vertex has. */
+  public enum Density {
+    /** About 5 edges per vertex. */
+    SPARSE,
+    /** Edges to about a tenth of the RHS vertices. */
+    DENSE;
+
+    /** Returns the probability of each edge in a graph with the given number of vertices. */
+    double edgeProbability(int size) {
+      return this == SPARSE ? Math.min(1.0, 5.0 / size) : 0.1;
+    }
+  }
+
+  @Param({"1000", "5000"})
+  int size;
+
+  @Param Density density;
+
+  private ImmutableListMultimap<Integer, Integer> multimap;
+  private int[] edgeStarts;
+  private int[] edgeTargets;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(size);
+    double probability = density.edgeProbability(size);
+    ImmutableListMultimap.Builder<Integer, Integer> builder = ImmutableListMultimap.builder();
+    edgeStarts = new int[size + 1];
+    int[] targets = new int[16];
+    int edgeCount = 0;
+    for (int lhs = 0; lhs < size; lhs++) {
+      for (int rhs = 0; rhs < size; rhs++) {
+        if (random.nextDouble() < probability) {
+          builder.put(lhs, rhs);
+          if (edgeCount == targets.length) {
+            targets = Arrays.copyOf(targets, targets.length * 2);
+          }
+          targets[edgeCount++] = rhs;
+        }
+      }
+      edgeStarts[lhs + 1] = edgeCount;
+    }
+    multimap = builder.build();
+    edgeTargets = Arrays.copyOf(targets, edgeCount);
+  }
+
+  @Benchmark
+  public ImmutableBiMap<Integer, Integer> multimap() {
+    return GraphMatching.maximumCardinalityBipartiteMatching(multimap);
+  }
+
+  @Benchmark
+  public int[] indexed() {
+    return GraphMatching.maximumCardinalityBipartiteMatching(edgeStarts, edgeTargets, size);
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@code Truth.assertThat(...).isEqualTo(...)}, the most common assertion of all.
+ * The passing variants measure the fixed cost of creating a subject and checking it; the failing
+ * variants also measure building, throwing and cleaning the failure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsEqualToBenchmark {
+  @Param({"true", "false"})
+  boolean passing;
+
+  private int actualInt;
+  private int expectedInt;
+  private long actualLong;
+  private long expectedLong;
+  private String actualString;
+  private String expectedString;
+  private ImmutableList<String> actualList;
+  private ImmutableList<String> expectedList;
+
+  @Setup
+  public void setUp() {
+    actualInt = 42;
+    expectedInt = passing ? 42 : 43;
+    actualLong = 42L;
+    expectedLong = passing ? 42L : 43L;
+    actualString = "the quick brown fox";
+    // A new instance, so that the check can't succeed on identity alone.
+    expectedString = new String(passing ? "the quick brown fox" : "the quick brown cat");
+    actualList = ImmutableList.of("a", "b", "c");
+    expectedList = passing ? ImmutableList.of("a", "b", "c") : ImmutableList.of("a", "b", "d");
+  }
+
+  @Benchmark
+  public AssertionError intIsEqualTo() {
+    try {
+      assertThat(actualInt).isEqualTo(expectedInt);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError longIsEqualTo() {
+    try {
+      assertThat(actualLong).isEqualTo(expectedLong);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError booleanIsEqualTo() {
+    try {
+      assertThat(passing).isEqualTo(true);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError stringIsEqualTo() {
+    try {
+      assertThat(actualString).isEqualTo(expectedString);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError stringIsEqualToWithMessage() {
+    try {
+      Truth.assertWithMessage("value of %s", "field").that(actualString).isEqualTo(expectedString);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError iterableIsEqualTo() {
+    try {
+      assertThat(actualList).isEqualTo(expectedList);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for {@link IterableSubject#containsExactlyElementsIn(Iterable)}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterableSubjectBenchmark {
+  /** The relationship between the actual and expected elements. */
+  public enum Scenario {
+    /** The same elements in the same order. Passes, and {@code inOrder()} passes. */
+    IN_ORDER,
+    /** The same elements, shuffled. Passes, but {@code inOrder()} would fail. */
+    OUT_OF_ORDER,
+    /** The expected elements, shuffled, with one element replaced. Fails. */
+    FAILING,
+  }
+
+  @Param({"10", "1000", "10000"})
+  int size;
+
+  @Param Scenario scenario;
+
+  private List<String> actual;
+  private List<String> expected;
+
+  @Setup
+  public void setUp() {
+    expected = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      expected.add("element" + i);
+    }
+    actual = new ArrayList<>(size);
+    for (String element : expected) {
+      // Copy the strings so that equals() can't short-circuit on identity.
+      actual.add(new String(element));
+    }
+    if (scenario != Scenario.IN_ORDER) {
+      Collections.shuffle(actual, new Random(size));
+    }
+    if (scenario == Scenario.FAILING) {
+      actual.set(actual.size() / 2, "unexpected");
+    }
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyElementsIn() {
+    try {
+      assertThat(actual).containsExactlyElementsIn(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyElementsInOrder() {
+    try {
+      assertThat(actual).containsExactlyElementsIn(expected).inOrder();
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for {@link MapSubject#containsExactlyEntriesIn(Map)}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapSubjectBenchmark {
+  /** The relationship between the actual and expected entries. */
+  public enum Scenario {
+    /** The same entries in the same order. Passes, and {@code inOrder()} passes. */
+    IN_ORDER,
+    /** The same entries in a different order. Passes, but {@code inOrder()} would fail. */
+    OUT_OF_ORDER,
+    /** One value differs, one key is missing and one is unexpected. Fails. */
+    FAILING,
+  }
+
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  @Param Scenario scenario;
+
+  private Map<String, Integer> actual;
+  private Map<String, Integer> expected;
+
+  @Setup
+  public void setUp() {
+    List<String> keys = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      keys.add("key" + i);
+    }
+    expected = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      expected.put(keys.get(i), i);
+    }
+    if (scenario != Scenario.IN_ORDER) {
+      Collections.shuffle(keys, new Random(size));
+    }
+    actual = new LinkedHashMap<>();
+    for (String key : keys) {
+      actual.put(new String(key), expected.get(key));
+    }
+    if (scenario == Scenario.FAILING) {
+      actual.put(keys.get(0), -1);
+      actual.remove(keys.get(keys.size() - 1));
+      actual.put("unexpected", -1);
+    }
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyEntriesIn() {
+    try {
+      assertThat(actual).containsExactlyEntriesIn(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyEntriesInOrder() {
+    try {
+      assertThat(actual).containsExactlyEntriesIn(expected).inOrder();
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the diff that a failing {@link StringSubject#isEqualTo} computes for long,
+ * multi-line strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringDiffBenchmark {
+  @Param({"1000", "100000", "500000"})
+  int lines;
+
+  /** How many lines differ, spread evenly through the strings. */
+  @Param({"1", "100"})
+  int changedLines;
+
+  private String expected;
+  private String actual;
+
+  @Setup
+  public void setUp() {
+    StringBuilder expectedBuilder = new StringBuilder();
+    StringBuilder actualBuilder = new StringBuilder();
+    int changeEvery = lines / changedLines;
+    for (int i = 0; i < lines; i++) {
+      String line = "line " + i + ": the quick brown fox jumps over the lazy dog\n";
+      expectedBuilder.append(line);
+      actualBuilder.append(i % changeEvery == changeEvery / 2 ? "changed " + line : line);
+    }
+    expected = expectedBuilder.toString();
+    actual = actualBuilder.toString();
+  }
+
+  @Benchmark
+  public AssertionError isEqualTo() {
+    try {
+      assertThat(actual).isEqualTo(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Strings;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for {@link StringSubject#matches}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSubjectBenchmark {
+  private static final String REGEX = "[a-z ]+";
+  private static final Pattern PATTERN = Pattern.compile(REGEX);
+
+  @Param({"10", "1000", "100000"})
+  int length;
+
+  @Param({"true", "false"})
+  boolean passing;
+
+  private String actual;
+
+  @Setup
+  public void setUp() {
+    String words = Strings.repeat("lorem ipsum ", length / 12 + 1).substring(0, length - 1) + "x";
+    // A trailing digit doesn't match the regex.
+    actual = passing ? words : words.substring(0, length - 1) + "0";
+  }
+
+  @Benchmark
+  public AssertionError matchesString() {
+    try {
+      assertThat(actual).matches(REGEX);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError matchesPattern() {
+    try {
+      assertThat(actual).matches(PATTERN);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
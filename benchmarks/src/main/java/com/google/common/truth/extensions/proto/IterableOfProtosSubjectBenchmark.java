@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth.extensions.proto;
+
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link IterableOfProtosSubject#containsExactlyElementsIn} with the messages in
+ * reverse order, so that actual messages have to be compared against expected messages at other
+ * indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterableOfProtosSubjectBenchmark {
+  /** The number of messages. */
+  @Param({"100", "1000"})
+  int size;
+
+  @Param({"true", "false"})
+  boolean passing;
+
+  private List<Struct> actual;
+  private List<Struct> expected;
+
+  @Setup
+  public void setUp() {
+    expected = new ArrayList<>();
+    actual = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      expected.add(makeStruct(i, i));
+      actual.add(makeStruct(i, !passing && i == size / 2 ? -i : i));
+    }
+    actual = Lists.reverse(actual);
+  }
+
+  private static Struct makeStruct(int index, int id) {
+    return Struct.newBuilder()
+        .putFields("name", Value.newBuilder().setStringValue("element" + index).build())
+        .putFields("id", Value.newBuilder().setNumberValue(id).build())
+        .build();
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyElementsIn() {
+    try {
+      assertThat(actual).containsExactlyElementsIn(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError ignoringRepeatedFieldOrderContainsExactlyElementsIn() {
+    try {
+      assertThat(actual).ignoringRepeatedFieldOrder().containsExactlyElementsIn(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError comparingExpectedFieldsOnlyContainsExactlyElementsIn() {
+    try {
+      assertThat(actual).comparingExpectedFieldsOnly().containsExactlyElementsIn(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
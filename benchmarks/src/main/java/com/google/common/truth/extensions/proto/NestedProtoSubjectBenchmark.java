@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth.extensions.proto;
+
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link ProtoSubject#isEqualTo} on deeply nested messages: a list of children,
+ * each of which is a chain of nested {@link Struct}s. Every level of nesting makes the differencer
+ * recurse into sub-messages with a narrower scope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NestedProtoSubjectBenchmark {
+  /** The number of children in the top-level list. */
+  @Param({"1000"})
+  int children;
+
+  /** The depth of nesting in each child. */
+  @Param({"10"})
+  int depth;
+
+  @Param({"true", "false"})
+  boolean passing;
+
+  private Value actual;
+  private Value expected;
+
+  @Setup
+  public void setUp() {
+    expected = makeValue(children, depth, -1);
+    actual = makeValue(children, depth, passing ? -1 : children / 2);
+  }
+
+  /**
+   * Returns a list value with the given number of children, each nested to the given depth. If
+   * {@code modifiedChild} is non-negative, the innermost value of that child is changed.
+   */
+  private static Value makeValue(int children, int depth, int modifiedChild) {
+    ListValue.Builder list = ListValue.newBuilder();
+    for (int i = 0; i < children; i++) {
+      Value child = Value.newBuilder().setNumberValue(i == modifiedChild ? -i : i).build();
+      for (int level = 0; level < depth; level++) {
+        child =
+            Value.newBuilder()
+                .setStructValue(
+                    Struct.newBuilder()
+                        .putFields("level", Value.newBuilder().setNumberValue(level).build())
+                        .putFields("child", child))
+                .build();
+      }
+      list.addValues(child);
+    }
+    return Value.newBuilder().setListValue(list).build();
+  }
+
+  @Benchmark
+  public AssertionError isEqualTo() {
+    try {
+      assertThat(actual).isEqualTo(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError ignoringFieldAbsenceIsEqualTo() {
+    try {
+      assertThat(actual).ignoringFieldAbsence().isEqualTo(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
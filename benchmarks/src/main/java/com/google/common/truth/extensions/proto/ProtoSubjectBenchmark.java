@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth.extensions.proto;
+
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link ProtoSubject#isEqualTo}. The messages are {@link Struct}s, which exercise
+ * nested messages, repeated fields and map fields without needing any generated test protos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtoSubjectBenchmark {
+  /** The number of entries in the top-level struct. */
+  @Param({"10", "1000"})
+  int size;
+
+  @Param({"true", "false"})
+  boolean passing;
+
+  private Struct actual;
+  private Struct expected;
+
+  @Setup
+  public void setUp() {
+    expected = makeStruct(size, -1);
+    // Build a second, equal instance so that the check can't succeed on identity alone.
+    actual = makeStruct(size, passing ? -1 : size / 2);
+  }
+
+  /**
+   * Returns a struct with the given number of entries, each of which is itself a small struct. If
+   * {@code modifiedIndex} is non-negative, one nested value of that entry is changed.
+   */
+  static Struct makeStruct(int size, int modifiedIndex) {
+    Struct.Builder struct = Struct.newBuilder();
+    for (int i = 0; i < size; i++) {
+      ListValue.Builder tags = ListValue.newBuilder();
+      for (int j = 0; j < 3; j++) {
+        tags.addValues(Value.newBuilder().setStringValue("tag" + j));
+      }
+      Struct entry =
+          Struct.newBuilder()
+              .putFields("name", Value.newBuilder().setStringValue("entry" + i).build())
+              .putFields(
+                  "id", Value.newBuilder().setNumberValue(i == modifiedIndex ? -i : i).build())
+              .putFields("tags", Value.newBuilder().setListValue(tags).build())
+              .build();
+      struct.putFields("field" + i, Value.newBuilder().setStructValue(entry).build());
+    }
+    return struct.build();
+  }
+
+  @Benchmark
+  public AssertionError isEqualTo() {
+    try {
+      assertThat(actual).isEqualTo(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AssertionError ignoringRepeatedFieldOrderIsEqualTo() {
+    try {
+      assertThat(actual).ignoringRepeatedFieldOrder().isEqualTo(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth.extensions.proto;
+
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link ProtoSubject#isEqualTo} with {@link
+ * ProtoFluentAssertion#ignoringRepeatedFieldOrder} on a long repeated field whose elements are in
+ * reverse order, so that every element has to be paired up with a different index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepeatedFieldOrderBenchmark {
+  /** The number of elements in the repeated field. */
+  @Param({"100", "1000"})
+  int size;
+
+  @Param({"true", "false"})
+  boolean passing;
+
+  private Value actual;
+  private Value expected;
+
+  @Setup
+  public void setUp() {
+    expected = makeList(size, false, -1);
+    actual = makeList(size, true, passing ? -1 : size / 2);
+  }
+
+  /**
+   * Returns a list value with the given number of small struct elements, optionally in reverse
+   * order. If {@code modifiedIndex} is non-negative, one nested value of that element is changed.
+   */
+  private static Value makeList(int size, boolean reversed, int modifiedIndex) {
+    ListValue.Builder list = ListValue.newBuilder();
+    for (int n = 0; n < size; n++) {
+      int i = reversed ? size - 1 - n : n;
+      list.addValues(
+          Value.newBuilder()
+              .setStructValue(
+                  Struct.newBuilder()
+                      .putFields("name", Value.newBuilder().setStringValue("element" + i).build())
+                      .putFields(
+                          "id",
+                          Value.newBuilder().setNumberValue(i == modifiedIndex ? -i : i).build())));
+    }
+    return Value.newBuilder().setListValue(list).build();
+  }
+
+  @Benchmark
+  public AssertionError ignoringRepeatedFieldOrderIsEqualTo() {
+    try {
+      assertThat(actual).ignoringRepeatedFieldOrder().isEqualTo(expected);
+      return null;
+    } catch (AssertionError e) {
+      return e;
+    }
+  }
+}
@@ -264,6 +264,29 @@ public abstract class Correspondence<A, E> {
       return Objects.equal(actualTransform.apply(actual), expectedTransform.apply(expected));
     }
 
+    // The transformed values are themselves keys: compare() is true exactly when they're equal.
+    // We only vouch for them when we know that they hash consistently, though.
+
+    @Override
+    boolean hasKeyHint() {
+      return true;
+    }
+
+    @Override
+    Object actualKey(@NullableDecl A actual) {
+      return hashableOrNoKey(actualTransform.apply(actual));
+    }
+
+    @Override
+    Object expectedKey(@NullableDecl E expected) {
+      return hashableOrNoKey(expectedTransform.apply(expected));
+    }
+
+    @NullableDecl
+    private static Object hashableOrNoKey(@NullableDecl Object key) {
+      return SubjectUtils.hasHashCodeConsistentWithEquals(key) ? key : NO_KEY;
+    }
+
     @Override
     public String toString() {
       return description;
@@ -391,6 +414,104 @@ public abstract class Correspondence<A, E> {
       return formatter.formatDiff(actual, expected);
     }
 
+    @Override
+    boolean hasKeyHint() {
+      return delegate.hasKeyHint();
+    }
+
+    @Override
+    @NullableDecl
+    Object actualKey(@NullableDecl A actual) {
+      return delegate.actualKey(actual);
+    }
+
+    @Override
+    @NullableDecl
+    Object expectedKey(@NullableDecl E expected) {
+      return delegate.expectedKey(expected);
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  /**
+   * Returns a new correspondence which is like this one, except that it promises that an actual
+   * value can only correspond to an expected value if the given functions map them to equal keys.
+   * (Keys are compared using {@link Object#equals}, and a null key is equal only to another null
+   * key.) Assertions which compare many actual values against many expected values, such as {@link
+   * IterableSubject.UsingCorrespondence#containsExactlyElementsIn}, can use this hint to call
+   * {@link #compare} only for pairs of values with equal keys, which can make them much faster.
+   *
+   * <p>The hint is a promise, not a suggestion: if {@code compare} returns true for some pair of
+   * values whose keys differ, assertions may give wrong results. The keys must also implement
+   * {@link Object#hashCode} consistently with {@link Object#equals}. If either function throws an
+   * exception for some value, that value is compared against all the others. Because {@code
+   * compare} is never called for a pair of values with different keys, an exception that it would
+   * have thrown for such a pair doesn't fail the assertion, as it otherwise would.
+   *
+   * <p>Correspondences created by {@link #transforming} already know that their values can only
+   * correspond if the transformed values are equal, so there is no need to call this method on
+   * them.
+   *
+   * <p>Example:
+   *
+   * <pre>{@code
+   * static final Correspondence<MyRecord, MyRecord> EQUIVALENCE =
+   *     Correspondence.from(MyRecordTestHelper::recordsEquivalent, "is equivalent to")
+   *         .withKeyHint(MyRecord::getId, MyRecord::getId);
+   * }</pre>
+   */
+  public Correspondence<A, E> withKeyHint(
+      Function<? super A, ?> actualKeyFunction, Function<? super E, ?> expectedKeyFunction) {
+    return new KeyHinted<>(this, actualKeyFunction, expectedKeyFunction);
+  }
+
+  private static final class KeyHinted<A, E> extends Correspondence<A, E> {
+
+    private final Correspondence<A, E> delegate;
+    private final Function<? super A, ?> actualKeyFunction;
+    private final Function<? super E, ?> expectedKeyFunction;
+
+    KeyHinted(
+        Correspondence<A, E> delegate,
+        Function<? super A, ?> actualKeyFunction,
+        Function<? super E, ?> expectedKeyFunction) {
+      this.delegate = checkNotNull(delegate);
+      this.actualKeyFunction = checkNotNull(actualKeyFunction);
+      this.expectedKeyFunction = checkNotNull(expectedKeyFunction);
+    }
+
+    @Override
+    public boolean compare(@NullableDecl A actual, @NullableDecl E expected) {
+      return delegate.compare(actual, expected);
+    }
+
+    @Override
+    @NullableDecl
+    public String formatDiff(@NullableDecl A actual, @NullableDecl E expected) {
+      return delegate.formatDiff(actual, expected);
+    }
+
+    @Override
+    boolean hasKeyHint() {
+      return true;
+    }
+
+    @Override
+    @NullableDecl
+    Object actualKey(@NullableDecl A actual) {
+      return actualKeyFunction.apply(actual);
+    }
+
+    @Override
+    @NullableDecl
+    Object expectedKey(@NullableDecl E expected) {
+      return expectedKeyFunction.apply(expected);
+    }
+
     @Override
     public String toString() {
       return delegate.toString();
@@ -605,6 +726,23 @@ public abstract class Correspondence<A, E> {
       }
     }
 
+    /**
+     * Adds the exceptions stored in the given store, as if they had been added to this store after
+     * any exceptions which it already holds. This lets work be split between several stores (for
+     * example, one per thread) and then merged, with the same results as using a single store.
+     */
+    void addAll(ExceptionStore other) {
+      if (firstCompareException == null) {
+        firstCompareException = other.firstCompareException;
+      }
+      if (firstPairingException == null) {
+        firstPairingException = other.firstPairingException;
+      }
+      if (firstFormatDiffException == null) {
+        firstFormatDiffException = other.firstFormatDiffException;
+      }
+    }
+
     /** Returns whether any exceptions thrown during {@code compare} calls were stored. */
     boolean hasCompareException() {
       return firstCompareException != null;
@@ -673,6 +811,76 @@ public abstract class Correspondence<A, E> {
     }
   }
 
+  /**
+   * Key returned by {@link #actualKey} or {@link #expectedKey} for a value that has no usable key.
+   * Such a value may correspond to values with any key.
+   */
+  static final Object NO_KEY = new Object();
+
+  /**
+   * Returns whether this correspondence guarantees that {@link #compare} can only return true for
+   * an actual value and an expected value whose keys, as returned by {@link #actualKey} and {@link
+   * #expectedKey}, are equal (or where at least one of the keys is {@link #NO_KEY}).
+   */
+  boolean hasKeyHint() {
+    return false;
+  }
+
+  /**
+   * Returns the key of the given actual value (see {@link #hasKeyHint}), which is always {@link
+   * #NO_KEY} if this correspondence has no key hint. May throw, which callers should treat like
+   * {@link #NO_KEY}.
+   */
+  @NullableDecl
+  Object actualKey(@NullableDecl A actual) {
+    return NO_KEY;
+  }
+
+  /**
+   * Returns the key of the given expected value (see {@link #hasKeyHint}), which is always {@link
+   * #NO_KEY} if this correspondence has no key hint. May throw, which callers should treat like
+   * {@link #NO_KEY}.
+   */
+  @NullableDecl
+  Object expectedKey(@NullableDecl E expected) {
+    return NO_KEY;
+  }
+
+  /** Returns the key of the given actual value, or {@link #NO_KEY} if {@link #actualKey} throws. */
+  @NullableDecl
+  final Object safeActualKey(@NullableDecl A actual) {
+    try {
+      return actualKey(actual);
+    } catch (RuntimeException e) {
+      return NO_KEY;
+    }
+  }
+
+  /**
+   * Returns the key of the given expected value, or {@link #NO_KEY} if {@link #expectedKey} throws.
+   */
+  @NullableDecl
+  final Object safeExpectedKey(@NullableDecl E expected) {
+    try {
+      return expectedKey(expected);
+    } catch (RuntimeException e) {
+      return NO_KEY;
+    }
+  }
+
+  /**
+   * Returns whether the key hint allows the given actual value to correspond to an expected value
+   * whose key, as returned by {@link #safeExpectedKey}, is {@code expectedKey}. If this returns
+   * false, {@link #compare} is guaranteed to return false, so callers can skip it.
+   */
+  final boolean mayCorrespond(@NullableDecl A actual, @NullableDecl Object expectedKey) {
+    if (expectedKey == NO_KEY) {
+      return true;
+    }
+    Object actualKey = safeActualKey(actual);
+    return actualKey == NO_KEY || Objects.equal(actualKey, expectedKey);
+  }
+
   /**
    * Invokes {@link #compare}, catching any exceptions. If the comparison does not throw, returns
    * the result. If it does throw, adds the exception to the given {@link ExceptionStore} and
@@ -15,21 +15,33 @@
  */
 package com.google.common.truth;
 
+import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.padStart;
 import static com.google.common.base.Strings.repeat;
 import static com.google.common.base.Throwables.getStackTraceAsString;
+import static com.google.common.io.FileWriteMode.APPEND;
 import static com.google.common.truth.Expect.TestPhase.AFTER;
 import static com.google.common.truth.Expect.TestPhase.BEFORE;
 import static com.google.common.truth.Expect.TestPhase.DURING;
 
 import com.google.common.annotations.GwtIncompatible;
-import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
 import com.google.common.truth.Truth.SimpleAssertionError;
-import com.google.errorprone.annotations.concurrent.GuardedBy;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.junit.internal.AssumptionViolatedException;
 import org.junit.rules.ErrorCollector;
@@ -62,32 +74,63 @@ import org.junit.runners.model.Statement;
  * failures when the main thread finishes executing the test method. Thus, you must ensure that any
  * background threads complete their assertions before then, or your test may ignore their results.
  *
+ * <p>To keep the failure message of a test with very many failures manageable, {@code Expect}
+ * prints at most 1000 failures, or roughly 4M characters, in full. It summarizes the rest by their
+ * most common messages, and it always prints the last failure. The system properties {@code
+ * com.google.common.truth.expect.max_reported_failures} and {@code
+ * com.google.common.truth.expect.max_report_length} change these limits. To see every failure, set
+ * {@code com.google.common.truth.expect.full_report_file} to the name of a file: {@code Expect}
+ * appends the complete report of each failing test to it, without building the report in memory.
+ *
  * <p>To record failures for the purpose of testing that an assertion fails when it should, see
  * {@link ExpectFailure}.
  */
 @GwtIncompatible("JUnit4")
 public final class Expect extends StandardSubjectBuilder implements TestRule {
 
+  /*
+   * The gatherer doesn't lock: Every assertion made on an Expect checks the test phase, and tests
+   * may make assertions from many threads at once. Failures are kept in arrival order, which is the
+   * order in which toString() numbers them.
+   *
+   * Without a lock, a failure recorded by another thread at the very moment that the test method
+   * completes might be left out of the report. But Expect already requires other threads to finish
+   * their assertions before the test method completes (see the class documentation).
+   */
+  private static final String MAX_REPORTED_FAILURES_PROPERTY =
+      "com.google.common.truth.expect.max_reported_failures";
+  private static final String MAX_REPORT_LENGTH_PROPERTY =
+      "com.google.common.truth.expect.max_report_length";
+  private static final String FULL_REPORT_FILE_PROPERTY =
+      "com.google.common.truth.expect.full_report_file";
+
+  private static final int DEFAULT_MAX_REPORTED_FAILURES = 1000;
+  private static final int DEFAULT_MAX_REPORT_LENGTH = 4 * 1024 * 1024;
+  private static final int MAX_SUMMARIZED_MESSAGES = 5;
+  private static final int MAX_SUMMARIZED_MESSAGE_LENGTH = 200;
+
+  private static final Object FULL_REPORT_FILE_LOCK = new Object();
+
   private static final class ExpectationGatherer implements FailureStrategy {
-    @GuardedBy("this")
-    private final List<AssertionError> failures = new ArrayList<AssertionError>();
+    private final Queue<AssertionError> failures = new ConcurrentLinkedQueue<>();
 
-    @GuardedBy("this")
-    private TestPhase inRuleContext = BEFORE;
+    private final AtomicReference<TestPhase> inRuleContext = new AtomicReference<>(BEFORE);
+
+    @NullableDecl private volatile Description description;
 
     ExpectationGatherer() {}
 
     @Override
-    public synchronized void fail(AssertionError failure) {
+    public void fail(AssertionError failure) {
       record(failure);
     }
 
-    synchronized void enterRuleContext() {
-      checkState(inRuleContext == BEFORE);
-      inRuleContext = DURING;
+    void enterRuleContext(Description description) {
+      checkState(inRuleContext.compareAndSet(BEFORE, DURING));
+      this.description = description;
     }
 
-    synchronized void leaveRuleContext(@NullableDecl Throwable caught) throws Throwable {
+    void leaveRuleContext(@NullableDecl Throwable caught) throws Throwable {
       try {
         if (caught == null) {
           doLeaveRuleContext();
@@ -99,67 +142,206 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
          * the "real" failure. TODO(cpovirk): Maybe attach as a suppressed exception once we require
          * a newer version of Android.
          */
-        checkState(inRuleContext == DURING);
+        checkState(inRuleContext.get() == DURING);
       } finally {
-        inRuleContext = AFTER;
+        inRuleContext.set(AFTER);
       }
     }
 
-    synchronized void checkInRuleContext() {
+    void checkInRuleContext() {
       doCheckInRuleContext(null);
     }
 
-    synchronized boolean hasFailures() {
+    boolean hasFailures() {
       return !failures.isEmpty();
     }
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
+      // Snapshot the failures so that the count agrees with the list even if other threads fail.
+      List<AssertionError> failures = ImmutableList.copyOf(this.failures);
       if (failures.isEmpty()) {
         return "No expectation failed.";
       }
+      StringBuilder message = new StringBuilder();
+      try {
+        appendReport(
+            message,
+            failures,
+            readLimit(MAX_REPORTED_FAILURES_PROPERTY, DEFAULT_MAX_REPORTED_FAILURES),
+            readLimit(MAX_REPORT_LENGTH_PROPERTY, DEFAULT_MAX_REPORT_LENGTH));
+      } catch (IOException impossible) {
+        throw new AssertionError(impossible);
+      }
+      return message.toString();
+    }
+
+    /**
+     * Appends the numbered failures. Once {@code maxFailures} failures or {@code maxLength}
+     * characters have been appended, the remaining failures other than the last are only
+     * summarized. The last failure is always appended, since it's often the exception that ended
+     * the test.
+     */
+    private static void appendReport(
+        Appendable out, List<AssertionError> failures, int maxFailures, int maxLength)
+        throws IOException {
       int numFailures = failures.size();
-      StringBuilder message =
-          new StringBuilder(
-              numFailures + (numFailures > 1 ? " expectations" : " expectation") + " failed:\n");
-      int countLength = String.valueOf(failures.size() + 1).length();
-      int count = 0;
-      for (AssertionError failure : failures) {
-        count++;
-        message.append("  ");
-        message.append(padStart(String.valueOf(count), countLength, ' '));
-        message.append(". ");
-        if (count == 1) {
-          appendIndented(countLength, message, getStackTraceAsString(failure));
-        } else {
-          appendIndented(
-              countLength,
-              message,
-              printSubsequentFailure(failures.get(0).getStackTrace(), failure));
-        }
-        message.append("\n");
+      String header =
+          numFailures + (numFailures > 1 ? " expectations" : " expectation") + " failed:\n";
+      out.append(header);
+      long length = header.length();
+      int countLength = String.valueOf(numFailures + 1).length();
+      StackTraceElement[] baseTraceFrames = failures.get(0).getStackTrace();
+      int shown = 0;
+      while (shown < numFailures && shown < maxFailures && length < maxLength) {
+        length += appendFailure(out, shown, countLength, baseTraceFrames, failures.get(shown));
+        shown++;
       }
+      if (shown < numFailures - 1) {
+        appendOmitted(out, countLength, failures.subList(shown, numFailures - 1));
+      }
+      if (shown < numFailures) {
+        appendFailure(
+            out, numFailures - 1, countLength, baseTraceFrames, failures.get(numFailures - 1));
+      }
+    }
 
-      return message.toString();
+    /** Appends the failure at {@code index}, and returns the number of characters appended. */
+    private static int appendFailure(
+        Appendable out,
+        int index,
+        int countLength,
+        StackTraceElement[] baseTraceFrames,
+        AssertionError failure)
+        throws IOException {
+      String entry =
+          "  "
+              + padStart(String.valueOf(index + 1), countLength, ' ')
+              + ". "
+              + indent(
+                  countLength,
+                  index == 0
+                      ? getStackTraceAsString(failure)
+                      : printSubsequentFailure(baseTraceFrames, failure))
+              + "\n";
+      out.append(entry);
+      return entry.length();
+    }
+
+    /**
+     * Appends a summary of failures that are too many to print in full: their number and the first
+     * lines of their most common messages.
+     */
+    private static void appendOmitted(
+        Appendable out, int countLength, List<AssertionError> omitted) throws IOException {
+      Multiset<String> messages = LinkedHashMultiset.create();
+      for (AssertionError failure : omitted) {
+        messages.add(firstLine(failure));
+      }
+      String indent = repeat(" ", countLength + 4);
+      out.append(indent)
+          .append(
+              omitted.size() == 1
+                  ? "... 1 more expectation failed but isn't shown"
+                  : "... " + omitted.size() + " more expectations failed but aren't shown")
+          .append(". Most common messages:\n");
+      for (Multiset.Entry<String> entry :
+          Iterables.limit(
+              Multisets.copyHighestCountFirst(messages).entrySet(), MAX_SUMMARIZED_MESSAGES)) {
+        out.append(indent)
+            .append(String.valueOf(entry.getCount()))
+            .append("x ")
+            .append(entry.getElement())
+            .append("\n");
+      }
+      if (messages.elementSet().size() > MAX_SUMMARIZED_MESSAGES) {
+        out.append(indent).append("...\n");
+      }
+    }
+
+    private static String firstLine(AssertionError failure) {
+      String description = failure.toString();
+      int lineBreak = description.indexOf('\n');
+      String firstLine = lineBreak < 0 ? description : description.substring(0, lineBreak);
+      return firstLine.length() > MAX_SUMMARIZED_MESSAGE_LENGTH
+          ? firstLine.substring(0, MAX_SUMMARIZED_MESSAGE_LENGTH) + "..."
+          : firstLine;
     }
 
-    private static void appendIndented(int countLength, StringBuilder builder, String toAppend) {
+    private static String indent(int countLength, String toIndent) {
       int indent = countLength + 4; // "  " and ". "
-      builder.append(toAppend.replace("\n", "\n" + repeat(" ", indent)));
+      return toIndent.replace("\n", "\n" + repeat(" ", indent));
     }
 
-    private String printSubsequentFailure(
+    /**
+     * Prints {@code toPrint} as {@link Throwable#printStackTrace} would print it as the cause of an
+     * exception with the stack trace {@code baseTraceFrames}: The frames that it has in common with
+     * that trace are replaced with a "... n more" line.
+     */
+    private static String printSubsequentFailure(
         StackTraceElement[] baseTraceFrames, AssertionError toPrint) {
-      Exception e = new RuntimeException("__EXCEPTION_MARKER__", toPrint);
-      e.setStackTrace(baseTraceFrames);
-      String s = Throwables.getStackTraceAsString(e);
-      // Force single line reluctant matching
-      return s.replaceFirst("(?s)^.*?__EXCEPTION_MARKER__.*?Caused by:\\s+", "");
+      StackTraceElement[] frames = toPrint.getStackTrace();
+      int inCommon = 0;
+      while (inCommon < frames.length
+          && inCommon < baseTraceFrames.length
+          && frames[frames.length - 1 - inCommon].equals(
+              baseTraceFrames[baseTraceFrames.length - 1 - inCommon])) {
+        inCommon++;
+      }
+      String description = toPrint.toString();
+      StringBuilder result = new StringBuilder(description);
+      for (int i = 0; i < frames.length - inCommon; i++) {
+        result.append("\n\tat ").append(frames[i]);
+      }
+      if (inCommon != 0) {
+        result.append("\n\t... ").append(inCommon).append(" more");
+      }
+      result.append('\n');
+      if (toPrint.getCause() != null || Platform.getSuppressed(toPrint).length > 0) {
+        // The causes and suppressed exceptions print the same way no matter what encloses toPrint.
+        String full = getStackTraceAsString(toPrint);
+        int end = description.length();
+        for (int i = 0; i <= frames.length && end >= 0; i++) {
+          end = full.indexOf('\n', end);
+          end = end < 0 ? end : end + 1;
+        }
+        if (end >= 0) {
+          result.append(full, end, full.length());
+        }
+      }
+      return result.toString();
+    }
+
+    /**
+     * Appends the full report to the file named by {@link #FULL_REPORT_FILE_PROPERTY}, if any, and
+     * returns a note saying where the report is, or an empty string.
+     */
+    private String writeFullReport() {
+      String fileName = readProperty(FULL_REPORT_FILE_PROPERTY);
+      if (fileName == null || fileName.isEmpty()) {
+        return "";
+      }
+      List<AssertionError> failures = ImmutableList.copyOf(this.failures);
+      File file = new File(fileName);
+      try {
+        // Tests in other threads may be writing their own reports to the same file.
+        synchronized (FULL_REPORT_FILE_LOCK) {
+          Writer writer = Files.asCharSink(file, UTF_8, APPEND).openBufferedStream();
+          try {
+            writer.append("===== ").append(String.valueOf(description)).append(" =====\n");
+            appendReport(writer, failures, Integer.MAX_VALUE, Integer.MAX_VALUE);
+          } finally {
+            writer.close();
+          }
+        }
+        return "\nThe full report was appended to " + file.getAbsolutePath();
+      } catch (IOException e) {
+        return "\nThe full report could not be appended to " + file.getAbsolutePath() + ": " + e;
+      }
     }
 
-    @GuardedBy("this")
     private void doCheckInRuleContext(@NullableDecl AssertionError failure) {
-      switch (inRuleContext) {
+      switch (inRuleContext.get()) {
         case BEFORE:
           throw new IllegalStateException(
               "assertion made on Expect instance, but it's not enabled as a @Rule.", failure);
@@ -179,14 +361,12 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
       throw new AssertionError();
     }
 
-    @GuardedBy("this")
     private void doLeaveRuleContext() {
       if (hasFailures()) {
-        throw SimpleAssertionError.createWithNoStack(this.toString());
+        throw SimpleAssertionError.createWithNoStack(this.toString() + writeFullReport());
       }
     }
 
-    @GuardedBy("this")
     private void doLeaveRuleContext(Throwable caught) throws Throwable {
       if (hasFailures()) {
         String message =
@@ -194,13 +374,12 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
                 ? "Also, after those failures, an assumption was violated"
                 : "Also, after those failures, an exception was thrown";
         record(SimpleAssertionError.createWithNoStack(message + ": " + caught, caught));
-        throw SimpleAssertionError.createWithNoStack(this.toString());
+        throw SimpleAssertionError.createWithNoStack(this.toString() + writeFullReport());
       } else {
         throw caught;
       }
     }
 
-    @GuardedBy("this")
     private void record(AssertionError failure) {
       doCheckInRuleContext(failure);
       failures.add(failure);
@@ -238,13 +417,13 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
   }
 
   @Override
-  public Statement apply(final Statement base, Description description) {
+  public Statement apply(final Statement base, final Description description) {
     checkNotNull(base);
     checkNotNull(description);
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
-        gatherer.enterRuleContext();
+        gatherer.enterRuleContext(description);
         Throwable caught = null;
         try {
           base.evaluate();
@@ -257,6 +436,26 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
     };
   }
 
+  /**
+   * Returns the value of a non-negative integer system property, or {@code defaultValue} if the
+   * property isn't set to one.
+   */
+  private static int readLimit(String name, int defaultValue) {
+    String value = readProperty(name);
+    Integer limit = value == null ? null : Ints.tryParse(value.trim());
+    return limit == null || limit < 0 ? defaultValue : limit;
+  }
+
+  @NullableDecl
+  private static String readProperty(String name) {
+    // Reading system properties might be forbidden.
+    try {
+      return System.getProperty(name);
+    } catch (SecurityException e) {
+      return null;
+    }
+  }
+
   enum TestPhase {
     BEFORE,
     DURING,
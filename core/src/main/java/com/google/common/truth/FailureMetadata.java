@@ -22,11 +22,13 @@ import static com.google.common.base.Verify.verifyNotNull;
 import static com.google.common.truth.Fact.fact;
 import static com.google.common.truth.LazyMessage.evaluateAll;
 import static com.google.common.truth.Platform.cleanStackTrace;
-import static com.google.common.truth.SubjectUtils.append;
 import static com.google.common.truth.SubjectUtils.concat;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.List;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
@@ -51,26 +53,30 @@ import org.checkerframework.checker.nullness.compatqual.NullableDecl;
  */
 public final class FailureMetadata {
   static FailureMetadata forFailureStrategy(FailureStrategy failureStrategy) {
-    return new FailureMetadata(
-        failureStrategy, ImmutableList.<LazyMessage>of(), ImmutableList.<Step>of());
+    return new FailureMetadata(failureStrategy, RenderingBudget.defaultBudget(), null, null);
   }
 
   private final FailureStrategy strategy;
 
+  private final RenderingBudget renderingBudget;
+
   /**
    * The data from a call to either (a) a {@link Subject} constructor or (b) {@link Subject#check}.
    */
   private static final class Step {
-    static Step subjectCreation(Subject<?, ?> subject) {
-      return new Step(checkNotNull(subject), null, null);
+    static Step subjectCreation(@NullableDecl Step previous, Subject<?, ?> subject) {
+      return new Step(previous, checkNotNull(subject), null, null);
     }
 
     static Step checkCall(
+        @NullableDecl Step previous,
         OldAndNewValuesAreSimilar valuesAreSimilar,
         @NullableDecl Function<String, String> descriptionUpdate) {
-      return new Step(null, descriptionUpdate, valuesAreSimilar);
+      return new Step(previous, null, descriptionUpdate, valuesAreSimilar);
     }
 
+    @NullableDecl final Step previous;
+
     /*
      * We store Subject, rather than the actual value itself, so that we can call actualAsString(),
      * which lets subjects customize display through actualCustomStringRepresentation(). Why not
@@ -87,9 +93,11 @@ public final class FailureMetadata {
     @NullableDecl final OldAndNewValuesAreSimilar valuesAreSimilar;
 
     private Step(
+        @NullableDecl Step previous,
         @NullableDecl Subject<?, ?> subject,
         @NullableDecl Function<String, String> descriptionUpdate,
         @NullableDecl OldAndNewValuesAreSimilar valuesAreSimilar) {
+      this.previous = previous;
       this.subject = subject;
       this.descriptionUpdate = descriptionUpdate;
       this.valuesAreSimilar = valuesAreSimilar;
@@ -100,23 +108,36 @@ public final class FailureMetadata {
     }
   }
 
+  /** A message from a call to {@link #withMessage}, linked to the message before it. */
+  private static final class MessageLink {
+    final LazyMessage message;
+    @NullableDecl final MessageLink previous;
+
+    MessageLink(LazyMessage message, @NullableDecl MessageLink previous) {
+      this.message = message;
+      this.previous = previous;
+    }
+  }
+
   /*
-   * TODO(cpovirk): This implementation is wasteful, especially because `steps` is used even by
-   * non-chaining assertions. If it ever does matter, we could use an immutable cactus stack -- or
-   * probably even avoid storing most of the chain entirely (unless we end up wanting more of the
-   * chain to show "telescoping context," as in "the int value of this optional in this list in this
-   * multimap").
+   * The messages and steps are immutable cactus stacks: Each instance shares the links of the
+   * instance it was derived from and adds at most one of its own, so deriving an instance doesn't
+   * copy anything. We convert them to lists only when an assertion fails.
    */
 
-  private final ImmutableList<LazyMessage> messages;
+  @NullableDecl private final MessageLink lastMessage;
 
-  private final ImmutableList<Step> steps;
+  @NullableDecl private final Step lastStep;
 
-  FailureMetadata(
-      FailureStrategy strategy, ImmutableList<LazyMessage> messages, ImmutableList<Step> steps) {
+  private FailureMetadata(
+      FailureStrategy strategy,
+      RenderingBudget renderingBudget,
+      @NullableDecl MessageLink lastMessage,
+      @NullableDecl Step lastStep) {
     this.strategy = checkNotNull(strategy);
-    this.messages = checkNotNull(messages);
-    this.steps = checkNotNull(steps);
+    this.renderingBudget = checkNotNull(renderingBudget);
+    this.lastMessage = lastMessage;
+    this.lastStep = lastStep;
   }
 
   /**
@@ -126,21 +147,17 @@ public final class FailureMetadata {
    * ThrowableSubject#hasMessageThat}.
    */
   FailureMetadata updateForSubject(Subject<?, ?> subject) {
-    ImmutableList<Step> steps = append(this.steps, Step.subjectCreation(subject));
-    return derive(messages, steps);
+    return derive(lastMessage, Step.subjectCreation(lastStep, subject));
   }
 
   FailureMetadata updateForCheckCall() {
-    ImmutableList<Step> steps = append(this.steps, Step.checkCall(null, null));
-    return derive(messages, steps);
+    return derive(lastMessage, Step.checkCall(lastStep, null, null));
   }
 
   FailureMetadata updateForCheckCall(
       OldAndNewValuesAreSimilar valuesAreSimilar, Function<String, String> descriptionUpdate) {
     checkNotNull(descriptionUpdate);
-    ImmutableList<Step> steps =
-        append(this.steps, Step.checkCall(valuesAreSimilar, descriptionUpdate));
-    return derive(messages, steps);
+    return derive(lastMessage, Step.checkCall(lastStep, valuesAreSimilar, descriptionUpdate));
   }
 
   /**
@@ -161,8 +178,20 @@ public final class FailureMetadata {
    * Subject}) or {@link Truth#assertWithMessage} (for most other calls).
    */
   FailureMetadata withMessage(String format, Object[] args) {
-    ImmutableList<LazyMessage> messages = append(this.messages, new LazyMessage(format, args));
-    return derive(messages, steps);
+    return derive(new MessageLink(new LazyMessage(format, args), lastMessage), lastStep);
+  }
+
+  /**
+   * Returns a new instance whose subjects render values for failure messages within the given
+   * budget. The way for Truth users to set a budget is {@link
+   * StandardSubjectBuilder#withRenderingBudget}.
+   */
+  FailureMetadata withRenderingBudget(RenderingBudget renderingBudget) {
+    return new FailureMetadata(strategy, checkNotNull(renderingBudget), lastMessage, lastStep);
+  }
+
+  RenderingBudget renderingBudget() {
+    return renderingBudget;
   }
 
   void failEqualityCheck(
@@ -172,9 +201,9 @@ public final class FailureMetadata {
       String actual) {
     doFail(
         ComparisonFailureWithFacts.create(
-            evaluateAll(messages),
-            concat(description(), headFacts),
-            concat(tailFacts, rootUnlessThrowable()),
+            evaluateAll(messages()),
+            truncateValues(concat(description(), headFacts)),
+            truncateValues(concat(tailFacts, rootUnlessThrowable())),
             expected,
             actual,
             rootCause()));
@@ -183,8 +212,8 @@ public final class FailureMetadata {
   void fail(ImmutableList<Fact> facts) {
     doFail(
         AssertionErrorWithFacts.create(
-            evaluateAll(messages),
-            concat(description(), facts, rootUnlessThrowable()),
+            evaluateAll(messages()),
+            truncateValues(concat(description(), facts, rootUnlessThrowable())),
             rootCause()));
   }
 
@@ -193,8 +222,40 @@ public final class FailureMetadata {
     strategy.fail(failure);
   }
 
-  private FailureMetadata derive(ImmutableList<LazyMessage> messages, ImmutableList<Step> steps) {
-    return new FailureMetadata(strategy, messages, steps);
+  private FailureMetadata derive(
+      @NullableDecl MessageLink lastMessage, @NullableDecl Step lastStep) {
+    return new FailureMetadata(strategy, renderingBudget, lastMessage, lastStep);
+  }
+
+  /**
+   * Applies the character limit of the rendering budget to every fact, including those with values
+   * that weren't rendered by the budget, like some expected values. The default budget has no
+   * character limit, so this only truncates facts under a budget set by {@link
+   * #withRenderingBudget}.
+   */
+  private ImmutableList<Fact> truncateValues(ImmutableList<Fact> facts) {
+    ImmutableList.Builder<Fact> truncated = ImmutableList.builder();
+    for (Fact fact : facts) {
+      String value = fact.value == null ? null : renderingBudget.truncate(fact.value);
+      truncated.add(value == fact.value ? fact : fact(fact.key, value));
+    }
+    return truncated.build();
+  }
+
+  private ImmutableList<LazyMessage> messages() {
+    List<LazyMessage> messages = new ArrayList<>();
+    for (MessageLink link = lastMessage; link != null; link = link.previous) {
+      messages.add(link.message);
+    }
+    return ImmutableList.copyOf(Lists.reverse(messages));
+  }
+
+  private ImmutableList<Step> steps() {
+    List<Step> steps = new ArrayList<>();
+    for (Step step = lastStep; step != null; step = step.previous) {
+      steps.add(step);
+    }
+    return ImmutableList.copyOf(Lists.reverse(steps));
   }
 
   /**
@@ -219,7 +280,7 @@ public final class FailureMetadata {
   private ImmutableList<Fact> description() {
     String description = null;
     boolean descriptionWasDerived = false;
-    for (Step step : steps) {
+    for (Step step : steps()) {
       if (step.isCheckCall()) {
         checkState(description != null);
         if (step.descriptionUpdate == null) {
@@ -272,7 +333,7 @@ public final class FailureMetadata {
   private ImmutableList<Fact> rootUnlessThrowable() {
     Step rootSubject = null;
     boolean seenDerivation = false;
-    for (Step step : steps) {
+    for (Step step : steps()) {
       if (step.isCheckCall()) {
         /*
          * If we don't have a description update, don't trigger display of a root object. (If we
@@ -318,7 +379,7 @@ public final class FailureMetadata {
    */
   @NullableDecl
   private Throwable rootCause() {
-    for (Step step : steps) {
+    for (Step step : steps()) {
       if (!step.isCheckCall() && step.subject.actual() instanceof Throwable) {
         return (Throwable) step.subject.actual();
       }
@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.Multimap;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
@@ -55,6 +56,23 @@ final class GraphMatching {
     return HopcroftKarp.overBipartiteGraph(graph).perform();
   }
 
+  /**
+   * Finds a maximum cardinality matching of a bipartite graph whose vertices are identified by
+   * indexes, as {@link #maximumCardinalityBipartiteMatching(Multimap)} does, but without boxing or
+   * hashing any vertices. The LHS vertices are {@code 0} to {@code edgeStarts.length - 2} and the
+   * RHS vertices are {@code 0} to {@code rhsCount - 1}. The edges are given in compressed sparse
+   * row form: the RHS vertices adjacent to LHS vertex {@code lhs} are {@code edgeTargets[i]} for
+   * {@code edgeStarts[lhs] <= i < edgeStarts[lhs + 1]}.
+   *
+   * <p>Returns an array giving the RHS vertex matched to each LHS vertex, or {@code -1} for
+   * unmatched LHS vertices. The matching is the same one that the {@code Multimap} overload would
+   * return for the equivalent graph, with keys and values iterated in increasing order.
+   */
+  static int[] maximumCardinalityBipartiteMatching(
+      int[] edgeStarts, int[] edgeTargets, int rhsCount) {
+    return new IndexedHopcroftKarp(edgeStarts, edgeTargets, rhsCount).perform();
+  }
+
   private GraphMatching() {}
 
   /**
@@ -259,4 +277,159 @@ final class GraphMatching {
       return false;
     }
   }
+
+  /**
+   * Implementation of the Hopcroft–Karp algorithm over a graph of indexes, for {@link
+   * #maximumCardinalityBipartiteMatching(int[], int[], int)}. This follows {@link HopcroftKarp}
+   * step for step, so see that class for an explanation of the algorithm; the only differences are
+   * that vertices, layers and the matching are held in {@code int} arrays, that the DFS uses an
+   * explicit stack rather than recursion, and that an LHS vertex from which a DFS fails is not
+   * searched again in the same phase (which can't change the result, since nothing done later in
+   * the phase could let the search succeed).
+   */
+  private static final class IndexedHopcroftKarp {
+
+    /** The layer of an LHS vertex not visited by the BFS, or known to be a dead end in the DFS. */
+    private static final int NO_LAYER = 0;
+
+    private static final int UNMATCHED = -1;
+
+    private final int lhsCount;
+    private final int[] edgeStarts;
+    private final int[] edgeTargets;
+
+    /** The RHS vertex matched to each LHS vertex, or {@link #UNMATCHED}. */
+    private final int[] rhsForLhs;
+
+    /** The LHS vertex matched to each RHS vertex, or {@link #UNMATCHED}. */
+    private final int[] lhsForRhs;
+
+    /** The BFS layer of each LHS vertex, or {@link #NO_LAYER}. */
+    private final int[] layers;
+
+    /** Scratch space for the BFS queue, and for the DFS stack of LHS vertices. */
+    private final int[] lhsScratch;
+
+    /** Scratch space for the DFS stack of positions in {@link #edgeTargets}. */
+    private final int[] edgeScratch;
+
+    IndexedHopcroftKarp(int[] edgeStarts, int[] edgeTargets, int rhsCount) {
+      this.lhsCount = edgeStarts.length - 1;
+      this.edgeStarts = edgeStarts;
+      this.edgeTargets = edgeTargets;
+      this.rhsForLhs = new int[lhsCount];
+      this.lhsForRhs = new int[rhsCount];
+      this.layers = new int[lhsCount];
+      this.lhsScratch = new int[lhsCount];
+      this.edgeScratch = new int[lhsCount];
+      Arrays.fill(rhsForLhs, UNMATCHED);
+      Arrays.fill(lhsForRhs, UNMATCHED);
+    }
+
+    /** Performs the algorithm, and returns the RHS vertex matched to each LHS vertex. */
+    int[] perform() {
+      while (true) {
+        int freeRhsVertexLayer = breadthFirstSearch();
+        if (freeRhsVertexLayer == NO_LAYER) {
+          break;
+        }
+        for (int lhs = 0; lhs < lhsCount; lhs++) {
+          if (rhsForLhs[lhs] == UNMATCHED) {
+            depthFirstSearch(freeRhsVertexLayer, lhs);
+          }
+        }
+      }
+      return rhsForLhs;
+    }
+
+    /**
+     * Performs the BFS phase, filling in {@link #layers}. Returns the layer in which the first free
+     * RHS vertex was found, or {@link #NO_LAYER} if there was none.
+     */
+    private int breadthFirstSearch() {
+      Arrays.fill(layers, NO_LAYER);
+      int[] queue = lhsScratch;
+      int queueHead = 0;
+      int queueTail = 0;
+      int freeRhsVertexLayer = NO_LAYER;
+
+      for (int lhs = 0; lhs < lhsCount; lhs++) {
+        if (rhsForLhs[lhs] == UNMATCHED) {
+          layers[lhs] = 1;
+          queue[queueTail++] = lhs;
+        }
+      }
+
+      while (queueHead < queueTail) {
+        int lhs = queue[queueHead++];
+        int layer = layers[lhs];
+        if (freeRhsVertexLayer != NO_LAYER && layer > freeRhsVertexLayer) {
+          break;
+        }
+        for (int edge = edgeStarts[lhs]; edge < edgeStarts[lhs + 1]; edge++) {
+          int nextLhs = lhsForRhs[edgeTargets[edge]];
+          if (nextLhs == UNMATCHED) {
+            if (freeRhsVertexLayer == NO_LAYER) {
+              freeRhsVertexLayer = layer;
+            }
+          } else if (layers[nextLhs] == NO_LAYER) {
+            layers[nextLhs] = layer + 1;
+            queue[queueTail++] = nextLhs;
+          }
+        }
+      }
+
+      return freeRhsVertexLayer;
+    }
+
+    /**
+     * Performs the DFS phase from the given free LHS vertex, flipping the edges along the path if
+     * it finds one. Returns whether it did.
+     */
+    @CanIgnoreReturnValue
+    private boolean depthFirstSearch(int freeRhsVertexLayer, int startLhs) {
+      if (layers[startLhs] == NO_LAYER || layers[startLhs] > freeRhsVertexLayer) {
+        return false;
+      }
+      // The path so far: stackLhs[i] is the i-th LHS vertex on it, and stackEdge[i] is the position
+      // in edgeTargets of the edge out of it which is currently being tried.
+      int[] stackLhs = lhsScratch;
+      int[] stackEdge = edgeScratch;
+      int depth = 0;
+      stackLhs[0] = startLhs;
+      stackEdge[0] = edgeStarts[startLhs];
+      while (depth >= 0) {
+        int lhs = stackLhs[depth];
+        int edge = stackEdge[depth];
+        if (edge == edgeStarts[lhs + 1]) {
+          // Every edge from this LHS vertex is a dead end, so backtrack.
+          layers[lhs] = NO_LAYER;
+          depth--;
+          if (depth >= 0) {
+            stackEdge[depth]++;
+          }
+          continue;
+        }
+        int nextLhs = lhsForRhs[edgeTargets[edge]];
+        if (nextLhs == UNMATCHED) {
+          // We found a free RHS vertex, so flip every edge along the path.
+          for (int i = depth; i >= 0; i--) {
+            int rhs = edgeTargets[stackEdge[i]];
+            rhsForLhs[stackLhs[i]] = rhs;
+            lhsForRhs[rhs] = stackLhs[i];
+          }
+          return true;
+        }
+        int nextLayer = layers[lhs] + 1;
+        if (layers[nextLhs] == nextLayer && nextLayer <= freeRhsVertexLayer) {
+          depth++;
+          stackLhs[depth] = nextLhs;
+          stackEdge[depth] = edgeStarts[nextLhs];
+        } else {
+          stackEdge[depth]++;
+        }
+      }
+      return false;
+    }
+  }
 }
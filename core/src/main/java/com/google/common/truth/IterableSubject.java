@@ -28,6 +28,7 @@ import static com.google.common.truth.IterableSubject.ElementFactGrouping.ALL_IN
 import static com.google.common.truth.IterableSubject.ElementFactGrouping.FACT_PER_ELEMENT;
 import static com.google.common.truth.SubjectUtils.accumulate;
 import static com.google.common.truth.SubjectUtils.annotateEmptyStrings;
+import static com.google.common.truth.SubjectUtils.classesWithTrustedHashCodes;
 import static com.google.common.truth.SubjectUtils.countDuplicatesAndAddTypeInfo;
 import static com.google.common.truth.SubjectUtils.countDuplicatesAndMaybeAddTypeInfoReturnObject;
 import static com.google.common.truth.SubjectUtils.entryString;
@@ -52,16 +53,19 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.LinkedHashMultiset;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multiset.Entry;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.truth.SubjectUtils.DuplicateGroupedAndTyped;
+import com.google.common.truth.SubjectUtils.HashIndexedList;
+import com.google.common.truth.SubjectUtils.SearchableList;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -101,7 +105,8 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
 
   @Override
   protected String actualCustomStringRepresentation() {
-    if (actual() != null) {
+    // If the iterable is too large to print in full, don't call its toString() even to check it.
+    if (actual() != null && renderingBudget().fitsElementLimits(actual())) {
       // Check the value of iterable.toString() against the default Object.toString() implementation
       // so we can avoid things like "com.google.common.graph.Traverser$GraphTraverser$1@5e316c74"
       String objectToString =
@@ -109,7 +114,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
               + '@'
               + Integer.toHexString(System.identityHashCode(actual()));
       if (actual().toString().equals(objectToString)) {
-        return Iterables.toString(actual());
+        return renderingBudget().renderIterable(actual());
       }
     }
     return super.actualCustomStringRepresentation();
@@ -192,10 +197,8 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
   // TODO(cpovirk): Consider using makeElementFacts-style messages here, in contains(), etc.
   public final void containsAnyIn(Iterable<?> expected) {
     Collection<?> actual = iterableToCollection(actual());
-    for (Object item : expected) {
-      if (actual.contains(item)) {
-        return;
-      }
+    if (!elementsContainedIn(actual, iterableToList(expected), /* firstOnly= */ true).isEmpty()) {
+      return;
     }
     if (hasMatchingToStringPair(actual, expected)) {
       failWithoutActual(
@@ -298,27 +301,19 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
    */
   @CanIgnoreReturnValue
   public final Ordered containsAtLeastElementsIn(Iterable<?> expectedIterable) {
-    List<?> actual = Lists.newLinkedList(actual());
+    List<?> actual = iterableToList(actual());
     final Collection<?> expected = iterableToCollection(expectedIterable);
 
-    List<Object> missing = newArrayList();
-    List<Object> actualNotInOrder = newArrayList();
+    if (containsInOrder(actual, expected)) {
+      return IN_ORDER;
+    }
 
-    boolean ordered = true;
-    // step through the expected elements...
+    // The expected elements aren't all present in order. Find out whether any are missing entirely.
+    HashIndexedList unmatched = new HashIndexedList(actual);
+    List<Object> missing = newArrayList();
     for (Object e : expected) {
-      int index = actual.indexOf(e);
-      if (index != -1) { // if we find the element in the actual list...
-        // drain all the elements that come before that element into actualNotInOrder
-        moveElements(actual, actualNotInOrder, index);
-        // and remove the element from the actual list
-        actual.remove(0);
-      } else { // otherwise try removing it from actualNotInOrder...
-        if (actualNotInOrder.remove(e)) { // if it was in actualNotInOrder, we're not in order
-          ordered = false;
-        } else { // if it's not in actualNotInOrder, we're missing an expected element
-          missing.add(e);
-        }
+      if (!unmatched.remove(e)) {
+        missing.add(e);
       }
     }
     // if we have any missing expected elements, fail
@@ -334,16 +329,14 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
      * actual iterable than the default of "but was," which may _sound_ like it should show only the
      * required elements, rather than the full actual iterable.
      */
-    return ordered
-        ? IN_ORDER
-        : new Ordered() {
-          @Override
-          public void inOrder() {
-            failWithActual(
-                simpleFact("required elements were all found, but order was wrong"),
-                fact("expected order for required elements", expected));
-          }
-        };
+    return new Ordered() {
+      @Override
+      public void inOrder() {
+        failWithActual(
+            simpleFact("required elements were all found, but order was wrong"),
+            fact("expected order for required elements", expected));
+      }
+    };
   }
 
   /**
@@ -384,13 +377,22 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
   }
 
   /**
-   * Removes at most the given number of available elements from the input list and adds them to the
-   * given output collection.
+   * Returns whether {@code actual} contains the {@code expected} elements in order, possibly with
+   * other elements between them. Matching each expected element to the first unused equal element
+   * finds such an arrangement whenever there is one.
    */
-  private static void moveElements(List<?> input, Collection<Object> output, int maxElements) {
-    for (int i = 0; i < maxElements; i++) {
-      output.add(input.remove(0));
+  private static boolean containsInOrder(Iterable<?> actual, Iterable<?> expected) {
+    Iterator<?> actualIter = actual.iterator();
+    for (Object e : expected) {
+      boolean found = false;
+      while (!found && actualIter.hasNext()) {
+        found = Objects.equal(e, actualIter.next());
+      }
+      if (!found) {
+        return false;
+      }
     }
+    return true;
   }
 
   /**
@@ -489,10 +491,12 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
               .failEqualityCheckForEqualsWithoutDescription(requiredElement);
           return ALREADY_FAILED;
         }
-        // Missing elements; elements that are not missing will be removed as we iterate.
-        Collection<Object> missing = newArrayList();
-        missing.add(requiredElement);
-        Iterators.addAll(missing, requiredIter);
+        // Missing elements; elements that are not missing will be removed as we iterate. The
+        // index lets us find each one without scanning the whole list.
+        List<Object> missingList = newArrayList();
+        missingList.add(requiredElement);
+        Iterators.addAll(missingList, requiredIter);
+        HashIndexedList missing = new HashIndexedList(missingList);
 
         // Extra elements that the subject had but shouldn't have.
         Collection<Object> extra = newArrayList();
@@ -522,7 +526,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
             }
           };
         }
-        return failExactly(required, addElementsInWarning, missing, extra);
+        return failExactly(required, addElementsInWarning, missing.remaining(), extra);
       }
 
       isFirst = false;
@@ -741,12 +745,9 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
    */
   public final void containsNoneIn(Iterable<?> excluded) {
     Collection<?> actual = iterableToCollection(actual());
-    Collection<Object> present = new ArrayList<>();
-    for (Object item : Sets.newLinkedHashSet(excluded)) {
-      if (actual.contains(item)) {
-        present.add(item);
-      }
-    }
+    List<Object> present =
+        elementsContainedIn(
+            actual, newArrayList(Sets.newLinkedHashSet(excluded)), /* firstOnly= */ false);
     if (!present.isEmpty()) {
       failWithoutActual(
           fact("expected not to contain any of", annotateEmptyStrings(excluded)),
@@ -764,6 +765,67 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     containsNoneIn(asList(excluded));
   }
 
+  /**
+   * The largest number of (actual, candidate) pairs that {@link #elementsContainedIn} compares
+   * directly instead of building a hash index.
+   */
+  private static final int MAX_PAIRS_TO_COMPARE_DIRECTLY = 1024;
+
+  /**
+   * Returns the distinct {@code candidates} that {@code actual} contains, in order, or only the
+   * first one found if {@code firstOnly}. This is equivalent to testing each candidate with {@code
+   * actual.contains}, but, for large inputs, it builds a hash index over the smaller of the two
+   * lists and probes it with the elements of the other.
+   */
+  private static List<Object> elementsContainedIn(
+      Collection<?> actual, List<?> candidates, boolean firstOnly) {
+    List<Object> contained = new ArrayList<>();
+    if (actual instanceof Set
+        || (long) actual.size() * candidates.size() <= MAX_PAIRS_TO_COMPARE_DIRECTLY) {
+      // A Set may define contains() differently from equals() (e.g., TreeSet), so we always use it.
+      for (Object candidate : candidates) {
+        if (actual.contains(candidate)) {
+          contained.add(candidate);
+          if (firstOnly) {
+            break;
+          }
+        }
+      }
+      return contained;
+    }
+
+    Set<Class<?>> trustedClasses = classesWithTrustedHashCodes(concat(actual, candidates));
+    if (actual.size() <= candidates.size()) {
+      SearchableList index = new SearchableList(iterableToList(actual), trustedClasses);
+      for (Object candidate : candidates) {
+        if (index.indexOf(candidate) != -1) {
+          contained.add(candidate);
+          if (firstOnly) {
+            break;
+          }
+        }
+      }
+    } else {
+      SearchableList index = new SearchableList(candidates, trustedClasses);
+      boolean[] found = new boolean[candidates.size()];
+      for (Object element : actual) {
+        int i = index.indexOf(element);
+        if (i != -1) {
+          found[i] = true;
+          if (firstOnly) {
+            break;
+          }
+        }
+      }
+      for (int i = 0; i < found.length; i++) {
+        if (found[i]) {
+          contained.add(candidates.get(i));
+        }
+      }
+    }
+    return contained;
+  }
+
   /** Ordered implementation that does nothing because it's already known to be true. */
   private static final Ordered IN_ORDER =
       new Ordered() {
@@ -935,21 +997,29 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     private final IterableSubject subject;
     private final Correspondence<? super A, ? super E> correspondence;
     private final Optional<Pairer> pairer;
+    private final boolean comparingInParallel;
 
     UsingCorrespondence(
         IterableSubject subject, Correspondence<? super A, ? super E> correspondence) {
-      this.subject = checkNotNull(subject);
-      this.correspondence = checkNotNull(correspondence);
-      this.pairer = Optional.absent();
+      this(subject, correspondence, Optional.<Pairer>absent(), /* comparingInParallel= */ false);
     }
 
     UsingCorrespondence(
         IterableSubject subject,
         Correspondence<? super A, ? super E> correspondence,
         Pairer pairer) {
+      this(subject, correspondence, Optional.of(pairer), /* comparingInParallel= */ false);
+    }
+
+    private UsingCorrespondence(
+        IterableSubject subject,
+        Correspondence<? super A, ? super E> correspondence,
+        Optional<Pairer> pairer,
+        boolean comparingInParallel) {
       this.subject = checkNotNull(subject);
       this.correspondence = checkNotNull(correspondence);
-      this.pairer = Optional.of(pairer);
+      this.pairer = checkNotNull(pairer);
+      this.comparingInParallel = comparingInParallel;
     }
 
     /**
@@ -1038,7 +1108,35 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     public UsingCorrespondence<A, E> displayingDiffsPairedBy(
         Function<? super A, ?> actualKeyFunction, Function<? super E, ?> expectedKeyFunction) {
       return new UsingCorrespondence<>(
-          subject, correspondence, new Pairer(actualKeyFunction, expectedKeyFunction));
+          subject,
+          correspondence,
+          Optional.of(new Pairer(actualKeyFunction, expectedKeyFunction)),
+          comparingInParallel);
+    }
+
+    /**
+     * Specifies that assertions which compare every actual element with every expected element,
+     * such as {@link #containsExactlyElementsIn}, may call {@link Correspondence#compare} for
+     * different pairs of elements concurrently, on several threads. For example:
+     *
+     * <pre>{@code
+     * assertThat(actualImages)
+     *     .comparingElementsUsing(IMAGES_WITHIN_TOLERANCE)
+     *     .comparingInParallel()
+     *     .containsExactlyElementsIn(expectedImages);
+     * }</pre>
+     *
+     * <p>This can make assertions about large iterables much faster when the correspondence is
+     * expensive. The correspondence (and any key functions given to {@link
+     * #displayingDiffsPairedBy}) must be safe to call from several threads at once.
+     *
+     * <p>Note that calling this method makes no difference to whether a test passes or fails, or to
+     * the failure message. On platforms which do not support threads, such as GWT, it makes no
+     * difference at all.
+     */
+    public UsingCorrespondence<A, E> comparingInParallel() {
+      return new UsingCorrespondence<>(
+          subject, correspondence, pairer, /* comparingInParallel= */ true);
     }
 
     /**
@@ -1275,8 +1373,67 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
         List<? extends A> actual,
         List<? extends E> expected,
         Correspondence.ExceptionStore exceptions) {
+      // If the correspondence guarantees that elements with different keys don't correspond, we can
+      // skip comparing them and still get exactly the same mapping.
+      KeyedExpectedIndexes expectedIndexes =
+          correspondence.hasKeyHint() ? new KeyedExpectedIndexes(expected) : null;
+      int fromActualIndex = 0;
+      int toActualIndex = actual.size();
+      ImmutableSetMultimap<Integer, Integer> parallelMapping = null;
+      CandidateMappingTask throwingTask = null;
+      if (comparingInParallel && actual.size() > 1) {
+        List<CandidateMappingTask> tasks =
+            runCandidateMappingTasks(actual, expected, expectedIndexes);
+        ImmutableSetMultimap.Builder<Integer, Integer> mapping = ImmutableSetMultimap.builder();
+        for (CandidateMappingTask task : tasks) {
+          mapping.putAll(task.mapping);
+          if (throwingTask == null && task.exceptions.hasCompareException()) {
+            throwingTask = task;
+          }
+        }
+        parallelMapping = mapping.build();
+        if (throwingTask == null) {
+          return parallelMapping;
+        }
+        /*
+         * The first exception which comparing sequentially would have stored was thrown on another
+         * thread, so its stack trace (or its cause's) would show that thread's frames. To report
+         * exactly what comparing sequentially would have, we compare the range of actual elements
+         * that threw it again on this thread, through the same call below.
+         */
+        fromActualIndex = throwingTask.fromActualIndex;
+        toActualIndex = throwingTask.toActualIndex;
+      }
+      ImmutableSetMultimap<Integer, Integer> mapping =
+          findCandidateMappingForRange(
+              actual, expected, expectedIndexes, fromActualIndex, toActualIndex, exceptions);
+      if (parallelMapping == null) {
+        return mapping;
+      }
+      // In case compare() didn't throw again, fall back to the exception from the other thread.
+      exceptions.addAll(throwingTask.exceptions);
+      return parallelMapping;
+    }
+
+    /**
+     * Like {@link #findCandidateMapping}, but only considers the actual elements with indexes from
+     * {@code fromActualIndex} (inclusive) to {@code toActualIndex} (exclusive). If {@code
+     * expectedIndexes} is given, each of them is compared only with the expected elements that may
+     * have the same key, and otherwise with every expected element.
+     */
+    private ImmutableSetMultimap<Integer, Integer> findCandidateMappingForRange(
+        List<? extends A> actual,
+        List<? extends E> expected,
+        @NullableDecl KeyedExpectedIndexes expectedIndexes,
+        int fromActualIndex,
+        int toActualIndex,
+        Correspondence.ExceptionStore exceptions) {
+      if (expectedIndexes != null) {
+        return findCandidateMappingWithinKeys(
+            actual, expected, expectedIndexes, fromActualIndex, toActualIndex, exceptions);
+      }
       ImmutableSetMultimap.Builder<Integer, Integer> mapping = ImmutableSetMultimap.builder();
-      for (int actualIndex = 0; actualIndex < actual.size(); actualIndex++) {
+      for (int actualIndex = fromActualIndex; actualIndex < toActualIndex; actualIndex++) {
         for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
           if (correspondence.safeCompare(
               actual.get(actualIndex), expected.get(expectedIndex), exceptions)) {
@@ -1287,6 +1444,152 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
       return mapping.build();
     }
 
+    /**
+     * Runs a {@link CandidateMappingTask} for each of several ranges of the actual elements,
+     * concurrently (see {@link #comparingInParallel}), and returns the tasks in the order of their
+     * ranges. Each task compares its actual elements with the expected elements (only those that
+     * may share a key, if {@code expectedIndexes} is given) and stores exceptions in its own {@link
+     * Correspondence.ExceptionStore}. Merging the tasks' mappings in order gives exactly the
+     * mapping which comparing sequentially would have given, and the first task with an exception
+     * covers the range in which comparing sequentially would have thrown first.
+     */
+    private List<CandidateMappingTask> runCandidateMappingTasks(
+        List<? extends A> actual,
+        List<? extends E> expected,
+        @NullableDecl KeyedExpectedIndexes expectedIndexes) {
+      int rangeCount = Math.min(actual.size(), PARALLEL_RANGE_COUNT);
+      List<CandidateMappingTask> tasks = new ArrayList<>(rangeCount);
+      for (int range = 0; range < rangeCount; range++) {
+        tasks.add(
+            new CandidateMappingTask(
+                actual,
+                expected,
+                expectedIndexes,
+                (int) ((long) actual.size() * range / rangeCount),
+                (int) ((long) actual.size() * (range + 1) / rangeCount)));
+      }
+      Platform.runConcurrently(tasks);
+      return tasks;
+    }
+
+    /**
+     * The number of ranges into which {@link #runCandidateMappingTasks} splits the actual
+     * elements. This is comfortably more than the number of processors on a typical machine, so
+     * that the work can be shared out evenly even if some elements are slower to compare than
+     * others.
+     */
+    private static final int PARALLEL_RANGE_COUNT = 256;
+
+    /** A task which runs {@link #findCandidateMappingForRange} for one range of actual elements. */
+    private final class CandidateMappingTask implements Runnable {
+      private final List<? extends A> actual;
+      private final List<? extends E> expected;
+      @NullableDecl private final KeyedExpectedIndexes expectedIndexes;
+      private final int fromActualIndex;
+      private final int toActualIndex;
+      private final Correspondence.ExceptionStore exceptions =
+          Correspondence.ExceptionStore.forIterable();
+      private ImmutableSetMultimap<Integer, Integer> mapping;
+
+      CandidateMappingTask(
+          List<? extends A> actual,
+          List<? extends E> expected,
+          @NullableDecl KeyedExpectedIndexes expectedIndexes,
+          int fromActualIndex,
+          int toActualIndex) {
+        this.actual = actual;
+        this.expected = expected;
+        this.expectedIndexes = expectedIndexes;
+        this.fromActualIndex = fromActualIndex;
+        this.toActualIndex = toActualIndex;
+      }
+
+      @Override
+      public void run() {
+        mapping =
+            findCandidateMappingForRange(
+                actual, expected, expectedIndexes, fromActualIndex, toActualIndex, exceptions);
+      }
+    }
+
+    /**
+     * The indexes of the expected elements, bucketed by their keys under the correspondence's key
+     * hint. Once built, this is only read, so several {@link CandidateMappingTask}s can share it.
+     */
+    private final class KeyedExpectedIndexes {
+      /** The indexes of the expected elements with each key. Each bucket is in increasing order. */
+      private final Map<Object, List<Integer>> byKey = new HashMap<>();
+      /** The indexes of the expected elements with {@link Correspondence#NO_KEY}, in order. */
+      private final List<Integer> unkeyed = new ArrayList<>();
+
+      KeyedExpectedIndexes(List<? extends E> expected) {
+        for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
+          Object key = correspondence.safeExpectedKey(expected.get(expectedIndex));
+          if (key == Correspondence.NO_KEY) {
+            unkeyed.add(expectedIndex);
+          } else {
+            List<Integer> bucket = byKey.get(key);
+            if (bucket == null) {
+              bucket = new ArrayList<>();
+              byKey.put(key, bucket);
+            }
+            bucket.add(expectedIndex);
+          }
+        }
+      }
+    }
+
+    /**
+     * Like {@link #findCandidateMappingForRange}, but only compares pairs of elements which the
+     * correspondence's key hint gives equal keys, or where either element has {@link
+     * Correspondence#NO_KEY}. The mapping iterates in the same order as the one that would be built
+     * by comparing every pair.
+     */
+    private ImmutableSetMultimap<Integer, Integer> findCandidateMappingWithinKeys(
+        List<? extends A> actual,
+        List<? extends E> expected,
+        KeyedExpectedIndexes expectedIndexes,
+        int fromActualIndex,
+        int toActualIndex,
+        Correspondence.ExceptionStore exceptions) {
+      List<Integer> unkeyedExpectedIndexes = expectedIndexes.unkeyed;
+      ImmutableSetMultimap.Builder<Integer, Integer> mapping = ImmutableSetMultimap.builder();
+      for (int actualIndex = fromActualIndex; actualIndex < toActualIndex; actualIndex++) {
+        A actualElement = actual.get(actualIndex);
+        Object key = correspondence.safeActualKey(actualElement);
+        if (key == Correspondence.NO_KEY) {
+          for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
+            E expectedElement = expected.get(expectedIndex);
+            if (correspondence.safeCompare(actualElement, expectedElement, exceptions)) {
+              mapping.put(actualIndex, expectedIndex);
+            }
+          }
+          continue;
+        }
+        List<Integer> bucket = expectedIndexes.byKey.get(key);
+        if (bucket == null) {
+          bucket = ImmutableList.of();
+        }
+        // Merge the matching bucket with the unkeyed indexes, to visit them in increasing order.
+        int bucketPosition = 0;
+        int unkeyedPosition = 0;
+        while (bucketPosition < bucket.size() || unkeyedPosition < unkeyedExpectedIndexes.size()) {
+          int expectedIndex;
+          if (unkeyedPosition == unkeyedExpectedIndexes.size()
+              || (bucketPosition < bucket.size()
+                  && bucket.get(bucketPosition) < unkeyedExpectedIndexes.get(unkeyedPosition))) {
+            expectedIndex = bucket.get(bucketPosition++);
+          } else {
+            expectedIndex = unkeyedExpectedIndexes.get(unkeyedPosition++);
+          }
+          if (correspondence.safeCompare(actualElement, expected.get(expectedIndex), exceptions)) {
+            mapping.put(actualIndex, expectedIndex);
+          }
+        }
+      }
+      return mapping.build();
+    }
+
     /**
      * Given a list of actual elements, a list of expected elements, and a many:many mapping between
      * actual and expected elements specified as a multimap of indexes into the actual list to
@@ -1452,8 +1755,38 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
        * to the maximum cardinality matching.
        *
        * So we'll apply a standard algorithm for doing maximum cardinality bipartite matching.
+       * Since the vertices are indexes, we use the version which works on arrays of indexes, which
+       * avoids boxing and hashing in its inner loops.
        */
-      return GraphMatching.maximumCardinalityBipartiteMatching(edges);
+      int actualCount = 0;
+      int expectedCount = 0;
+      for (Map.Entry<Integer, Integer> edge : edges.entries()) {
+        actualCount = Math.max(actualCount, edge.getKey() + 1);
+        expectedCount = Math.max(expectedCount, edge.getValue() + 1);
+      }
+      // Lay the edges out in compressed sparse row form, keeping the order of each actual index's
+      // expected indexes: first count the edges from each actual index, then fill them in.
+      int[] edgeStarts = new int[actualCount + 1];
+      for (int actualIndex : edges.keys()) {
+        edgeStarts[actualIndex + 1]++;
+      }
+      for (int actualIndex = 0; actualIndex < actualCount; actualIndex++) {
+        edgeStarts[actualIndex + 1] += edgeStarts[actualIndex];
+      }
+      int[] edgeTargets = new int[edges.size()];
+      int[] nextEdges = Arrays.copyOf(edgeStarts, actualCount);
+      for (Map.Entry<Integer, Integer> edge : edges.entries()) {
+        edgeTargets[nextEdges[edge.getKey()]++] = edge.getValue();
+      }
+      int[] expectedIndexes =
+          GraphMatching.maximumCardinalityBipartiteMatching(edgeStarts, edgeTargets, expectedCount);
+      ImmutableBiMap.Builder<Integer, Integer> mapping = ImmutableBiMap.builder();
+      for (int actualIndex = 0; actualIndex < actualCount; actualIndex++) {
+        if (expectedIndexes[actualIndex] >= 0) {
+          mapping.put(actualIndex, expectedIndexes[actualIndex]);
+        }
+      }
+      return mapping.build();
     }
 
     /**
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static difflib.DiffUtils.diff;
+
+import com.google.common.annotations.GwtIncompatible;
+import difflib.Delta;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Computes line-based unified diffs of large strings without splitting and diffing the parts that
+ * the strings have in common.
+ */
+@GwtIncompatible
+final class LineDiff {
+  /**
+   * <b>Call {@link Platform#makeDiff} rather than calling this directly.</b>
+   *
+   * <p>Returns the hunks of the unified diff from {@code expected} to {@code actual}, in the format
+   * produced by {@link difflib.DiffUtils#generateUnifiedDiff} but without the "---" and "+++"
+   * header lines. Lines are separated by "\r\n" or "\n".
+   *
+   * <p>Returns an empty string if the strings consist of the same lines (that is, if they differ
+   * only in their line-break characters), and null as soon as the diff is known to be longer than
+   * {@code maxLength}.
+   */
+  @NullableDecl
+  static String unifiedDiff(String expected, String actual, int contextSize, int maxLength) {
+    return new LineDiff(expected, actual, contextSize).format(maxLength);
+  }
+
+  private final int contextSize;
+
+  /** The number of lines before {@link #expectedLines} and {@link #actualLines}. */
+  private final int linesBeforeWindow;
+
+  /**
+   * The lines of each string that the diff can refer to: the lines in which the strings differ,
+   * surrounded by up to {@code contextSize} lines of context on each side.
+   */
+  private final List<String> expectedLines = new ArrayList<>();
+
+  private final List<String> actualLines = new ArrayList<>();
+
+  /** The index in each window of the first line in which the strings may differ. */
+  private final int expectedMiddleStart;
+
+  private final int actualMiddleStart;
+
+  /** The deltas between the two windows, with positions relative to the middle of the windows. */
+  private final List<Delta<Integer>> deltas;
+
+  private LineDiff(String expected, String actual, int contextSize) {
+    this.contextSize = contextSize;
+
+    /*
+     * Find the region in which the strings differ. Everything before the start of the line that
+     * contains the first differing character is the same in both strings, as is every complete line
+     * after the last differing character.
+     */
+    int maxCommon = Math.min(expected.length(), actual.length());
+    int prefix = 0;
+    while (prefix < maxCommon && expected.charAt(prefix) == actual.charAt(prefix)) {
+      prefix++;
+    }
+    int start = expected.lastIndexOf('\n', prefix - 1) + 1;
+    int suffix = 0;
+    while (suffix < maxCommon - start
+        && expected.charAt(expected.length() - 1 - suffix)
+            == actual.charAt(actual.length() - 1 - suffix)) {
+      suffix++;
+    }
+    int lineBreakInSuffix = expected.indexOf('\n', expected.length() - suffix);
+    int suffixLength = lineBreakInSuffix < 0 ? 0 : expected.length() - lineBreakInSuffix - 1;
+    boolean hasSuffixLines = lineBreakInSuffix >= 0;
+
+    List<String> contextBefore = new ArrayList<>();
+    for (int end = start; end > 0 && contextBefore.size() < contextSize; ) {
+      int lineStart = expected.lastIndexOf('\n', end - 2) + 1;
+      contextBefore.add(0, line(expected, lineStart, end - 1));
+      end = lineStart;
+    }
+    linesBeforeWindow = countLineBreaks(expected, 0, start) - contextBefore.size();
+    List<String> contextAfter = new ArrayList<>();
+    if (hasSuffixLines) {
+      addLines(expected, expected.length() - suffixLength, contextAfter, contextSize);
+    }
+
+    expectedLines.addAll(contextBefore);
+    actualLines.addAll(contextBefore);
+    expectedMiddleStart = expectedLines.size();
+    actualMiddleStart = actualLines.size();
+    addMiddleLines(
+        expected, start, expected.length() - suffixLength, hasSuffixLines, expectedLines);
+    addMiddleLines(actual, start, actual.length() - suffixLength, hasSuffixLines, actualLines);
+
+    // Diff the lines by ID so that comparing two lines doesn't require comparing their contents.
+    Map<String, Integer> lineIds = new HashMap<>();
+    List<Integer> expectedIds =
+        lineIds(expectedLines.subList(expectedMiddleStart, expectedLines.size()), lineIds);
+    List<Integer> actualIds =
+        lineIds(actualLines.subList(actualMiddleStart, actualLines.size()), lineIds);
+    deltas = diff(expectedIds, actualIds).getDeltas();
+
+    expectedLines.addAll(contextAfter);
+    actualLines.addAll(contextAfter);
+  }
+
+  @NullableDecl
+  private String format(int maxLength) {
+    StringBuilder result = new StringBuilder();
+    int hunkStart = 0;
+    for (int i = 1; i <= deltas.size(); i++) {
+      // Like generateUnifiedDiff, merge deltas whose context would overlap into a single hunk.
+      if (i == deltas.size()
+          || originalEnd(deltas.get(i - 1)) + contextSize
+              < originalPosition(deltas.get(i)) - contextSize) {
+        appendHunk(result, deltas.subList(hunkStart, i));
+        if (result.length() > maxLength) {
+          return null;
+        }
+        hunkStart = i;
+      }
+    }
+    return result.toString();
+  }
+
+  private void appendHunk(StringBuilder result, List<Delta<Integer>> hunk) {
+    Delta<Integer> first = hunk.get(0);
+    Delta<Integer> last = hunk.get(hunk.size() - 1);
+    int contextStart = Math.max(originalPosition(first) - contextSize, 0);
+    int contextEnd = Math.min(originalEnd(last) + contextSize, expectedLines.size());
+    int originalTotal = contextEnd - contextStart;
+    int revisedTotal = originalTotal;
+    for (Delta<Integer> delta : hunk) {
+      revisedTotal += delta.getRevised().size() - delta.getOriginal().size();
+    }
+
+    if (result.length() > 0) {
+      result.append('\n');
+    }
+    result
+        .append("@@ -")
+        .append(linesBeforeWindow + Math.max(originalPosition(first) + 1 - contextSize, 1))
+        .append(',')
+        .append(originalTotal)
+        .append(" +")
+        .append(linesBeforeWindow + Math.max(revisedPosition(first) + 1 - contextSize, 1))
+        .append(',')
+        .append(revisedTotal)
+        .append(" @@");
+    int line = contextStart;
+    for (Delta<Integer> delta : hunk) {
+      for (; line < originalPosition(delta); line++) {
+        result.append("\n ").append(expectedLines.get(line));
+      }
+      for (int i = 0; i < delta.getOriginal().size(); i++) {
+        result.append("\n-").append(expectedLines.get(line++));
+      }
+      for (int i = 0; i < delta.getRevised().size(); i++) {
+        result.append("\n+").append(actualLines.get(revisedPosition(delta) + i));
+      }
+    }
+    for (; line < contextEnd; line++) {
+      result.append("\n ").append(expectedLines.get(line));
+    }
+  }
+
+  private int originalPosition(Delta<Integer> delta) {
+    return expectedMiddleStart + delta.getOriginal().getPosition();
+  }
+
+  private int originalEnd(Delta<Integer> delta) {
+    return originalPosition(delta) + delta.getOriginal().size();
+  }
+
+  private int revisedPosition(Delta<Integer> delta) {
+    return actualMiddleStart + delta.getRevised().getPosition();
+  }
+
+  /**
+   * Adds the lines of {@code s} between {@code start} and {@code end}. If {@code endsWithLineBreak}
+   * is true, the region ends with a line break that terminates its last line, so the (empty) text
+   * after it isn't a line of the region.
+   */
+  private static void addMiddleLines(
+      String s, int start, int end, boolean endsWithLineBreak, List<String> lines) {
+    int lineStart = start;
+    for (int lineBreak = s.indexOf('\n', lineStart);
+        lineBreak >= 0 && lineBreak < end;
+        lineBreak = s.indexOf('\n', lineStart)) {
+      lines.add(line(s, lineStart, lineBreak));
+      lineStart = lineBreak + 1;
+    }
+    if (!endsWithLineBreak) {
+      lines.add(s.substring(lineStart, end));
+    }
+  }
+
+  /** Adds up to {@code count} lines of {@code s}, starting at {@code start}. */
+  private static void addLines(String s, int start, List<String> lines, int count) {
+    int lineStart = start;
+    while (lines.size() < count) {
+      int lineBreak = s.indexOf('\n', lineStart);
+      if (lineBreak < 0) {
+        lines.add(s.substring(lineStart));
+        return;
+      }
+      lines.add(line(s, lineStart, lineBreak));
+      lineStart = lineBreak + 1;
+    }
+  }
+
+  /** Returns the line between {@code start} and the line break at {@code lineBreak}. */
+  private static String line(String s, int start, int lineBreak) {
+    int end = lineBreak > start && s.charAt(lineBreak - 1) == '\r' ? lineBreak - 1 : lineBreak;
+    return s.substring(start, end);
+  }
+
+  private static int countLineBreaks(String s, int start, int end) {
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      if (s.charAt(i) == '\n') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static List<Integer> lineIds(List<String> lines, Map<String, Integer> lineIds) {
+    List<Integer> ids = new ArrayList<>(lines.size());
+    for (String line : lines) {
+      Integer id = lineIds.get(line);
+      if (id == null) {
+        id = lineIds.size();
+        lineIds.put(line, id);
+      }
+      ids.add(id);
+    }
+    return ids;
+  }
+}
@@ -30,18 +30,24 @@ import static com.google.common.truth.SubjectUtils.retainMatchingToString;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.LinkedHashMultiset;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
@@ -70,7 +76,11 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
       return;
     }
 
-    boolean mapEquals = containsEntriesInAnyOrder((Map<?, ?>) other, "is equal to", false);
+    boolean mapEquals =
+        containsEntriesInAnyOrder(
+            differenceFrom((Map<?, ?>) other, /* allowUnexpected= */ false),
+            (Map<?, ?>) other,
+            "is equal to");
     if (mapEquals) {
       failWithoutActual(
           simpleFact(
@@ -238,13 +248,14 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
         return ALREADY_FAILED;
       }
     }
-    boolean containsAnyOrder =
-        containsEntriesInAnyOrder(expectedMap, "contains exactly", /* allowUnexpected= */ false);
-    if (containsAnyOrder) {
-      return new MapInOrder(expectedMap, "contains exactly these entries in order");
-    } else {
+    MapDifference<Object, Object, Object> diff =
+        differenceFrom(expectedMap, /* allowUnexpected= */ false);
+    if (!containsEntriesInAnyOrder(diff, expectedMap, "contains exactly")) {
       return ALREADY_FAILED;
     }
+    return diff.keysInSameOrder()
+        ? IN_ORDER
+        : new MapInOrder(expectedMap, "contains exactly these entries in order");
   }
 
   /** Fails if the map does not contain at least the given set of entries in the given map. */
@@ -253,20 +264,25 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
     if (expectedMap.isEmpty()) {
       return IN_ORDER;
     }
-    boolean containsAnyOrder =
-        containsEntriesInAnyOrder(expectedMap, "contains at least", /* allowUnexpected= */ true);
-    if (containsAnyOrder) {
-      return new MapInOrder(expectedMap, "contains at least these entries in order");
-    } else {
+    MapDifference<Object, Object, Object> diff =
+        differenceFrom(expectedMap, /* allowUnexpected= */ true);
+    if (!containsEntriesInAnyOrder(diff, expectedMap, "contains at least")) {
       return ALREADY_FAILED;
     }
+    return diff.keysInSameOrder()
+        ? IN_ORDER
+        : new MapInOrder(expectedMap, "contains at least these entries in order");
+  }
+
+  private MapDifference<Object, Object, Object> differenceFrom(
+      Map<?, ?> expectedMap, boolean allowUnexpected) {
+    return MapDifference.create(
+        actual(), expectedMap, allowUnexpected, EQUALITY, renderingBudget().maxElements());
   }
 
   @CanIgnoreReturnValue
   private boolean containsEntriesInAnyOrder(
-      Map<?, ?> expectedMap, String failVerb, boolean allowUnexpected) {
-    MapDifference<Object, Object, Object> diff =
-        MapDifference.create(actual(), expectedMap, allowUnexpected, EQUALITY);
+      MapDifference<Object, Object, Object> diff, Map<?, ?> expectedMap, String failVerb) {
     if (diff.isEmpty()) {
       return true;
     }
@@ -292,49 +308,192 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
 
   // This is mostly like the MapDifference code in com.google.common.collect, generalized to remove
   // the requirement that the values of the two maps are of the same type and are compared with a
-  // symmetric Equivalence.
+  // symmetric Equivalence. Unlike that code, it records only the entries that differ, and it stops
+  // recording them (but not counting them) after a limit, so it never copies a large map that
+  // (nearly) matches.
   private static class MapDifference<K, A, E> {
-    private final Map<K, E> missing;
-    private final Map<K, A> unexpected;
-    private final Map<K, ValueDifference<A, E>> wrongValues;
+    private final Map<K, E> missing = new LinkedHashMap<>();
+    private final Map<K, A> unexpected = new LinkedHashMap<>();
+    private final Map<K, ValueDifference<A, E>> wrongValues = new LinkedHashMap<>();
     private final Set<K> allKeys;
+    private final int maxDifferences;
+    private int omittedDifferences;
+    private boolean keysInSameOrder;
 
+    /**
+     * Compares the maps, recording at most {@code maxDifferences} of the differences (but at least
+     * one). If both maps are sorted by the same comparator, their entries are merged in key order.
+     * Otherwise, the entries are first matched up in iteration order, and the keys that are out of
+     * order are then looked up in the other map.
+     */
     static <K, A, E> MapDifference<K, A, E> create(
+        Map<? extends K, ? extends A> actual,
+        Map<? extends K, ? extends E> expected,
+        boolean allowUnexpected,
+        ValueTester<? super A, ? super E> valueTester,
+        int maxDifferences) {
+      Set<K> allKeys = Sets.<K>union(actual.keySet(), expected.keySet());
+      maxDifferences = Math.max(1, maxDifferences);
+      if (actual instanceof SortedMap
+          && expected instanceof SortedMap
+          && Objects.equal(
+              ((SortedMap<?, ?>) actual).comparator(), ((SortedMap<?, ?>) expected).comparator())) {
+        MapDifference<K, A, E> diff = new MapDifference<>(allKeys, maxDifferences);
+        try {
+          diff.mergeSorted(actual, expected, allowUnexpected, valueTester);
+          return diff;
+        } catch (ClassCastException e) {
+          /*
+           * The comparator can't compare an actual key with an expected key, as when one map has
+           * Long keys and the other has Integer keys under natural ordering. Start over, comparing
+           * the maps the way we compare maps that aren't sorted.
+           */
+        }
+      }
+      MapDifference<K, A, E> diff = new MapDifference<>(allKeys, maxDifferences);
+      diff.compareInIterationOrder(actual, expected, allowUnexpected, valueTester);
+      return diff;
+    }
+
+    private MapDifference(Set<K> allKeys, int maxDifferences) {
+      this.allKeys = allKeys;
+      this.maxDifferences = maxDifferences;
+    }
+
+    @SuppressWarnings("unchecked") // a null comparator means that the keys are Comparable
+    private void mergeSorted(
         Map<? extends K, ? extends A> actual,
         Map<? extends K, ? extends E> expected,
         boolean allowUnexpected,
         ValueTester<? super A, ? super E> valueTester) {
-      Map<K, A> unexpected = new LinkedHashMap<>(actual);
-      Map<K, E> missing = new LinkedHashMap<>();
-      Map<K, ValueDifference<A, E>> wrongValues = new LinkedHashMap<>();
-      for (Entry<? extends K, ? extends E> expectedEntry : expected.entrySet()) {
-        K expectedKey = expectedEntry.getKey();
-        E expectedValue = expectedEntry.getValue();
-        if (actual.containsKey(expectedKey)) {
-          A actualValue = unexpected.remove(expectedKey);
-          if (!valueTester.test(actualValue, expectedValue)) {
-            wrongValues.put(expectedKey, new ValueDifference<>(actualValue, expectedValue));
+      Comparator<Object> comparator = (Comparator<Object>) ((SortedMap<?, ?>) actual).comparator();
+      if (comparator == null) {
+        comparator = (Comparator<Object>) (Comparator<?>) Ordering.natural();
+      }
+      PeekingIterator<? extends Entry<? extends K, ? extends A>> actualEntries =
+          Iterators.peekingIterator(actual.entrySet().iterator());
+      PeekingIterator<? extends Entry<? extends K, ? extends E>> expectedEntries =
+          Iterators.peekingIterator(expected.entrySet().iterator());
+      while (actualEntries.hasNext() || expectedEntries.hasNext()) {
+        int comparison =
+            !actualEntries.hasNext()
+                ? 1
+                : !expectedEntries.hasNext()
+                    ? -1
+                    : comparator.compare(
+                        actualEntries.peek().getKey(), expectedEntries.peek().getKey());
+        if (comparison < 0) {
+          Entry<? extends K, ? extends A> actualEntry = actualEntries.next();
+          if (!allowUnexpected) {
+            addUnexpected(actualEntry.getKey(), actualEntry.getValue());
           }
+        } else if (comparison > 0) {
+          Entry<? extends K, ? extends E> expectedEntry = expectedEntries.next();
+          addMissing(expectedEntry.getKey(), expectedEntry.getValue());
         } else {
-          missing.put(expectedKey, expectedValue);
+          Entry<? extends K, ? extends E> expectedEntry = expectedEntries.next();
+          testValue(
+              expectedEntry.getKey(),
+              actualEntries.next().getValue(),
+              expectedEntry.getValue(),
+              valueTester);
         }
       }
-      if (allowUnexpected) {
-        unexpected.clear();
+      // Both maps iterate in the order of the same comparator.
+      keysInSameOrder = true;
+    }
+
+    private void compareInIterationOrder(
+        Map<? extends K, ? extends A> actual,
+        Map<? extends K, ? extends E> expected,
+        boolean allowUnexpected,
+        ValueTester<? super A, ? super E> valueTester) {
+      // First, match up entries for as long as the expected keys appear in order in the actual map.
+      PeekingIterator<? extends Entry<? extends K, ? extends E>> expectedEntries =
+          Iterators.peekingIterator(expected.entrySet().iterator());
+      int matchedKeys = 0;
+      for (Entry<? extends K, ? extends A> actualEntry : actual.entrySet()) {
+        if (!expectedEntries.hasNext()) {
+          break;
+        }
+        Entry<? extends K, ? extends E> expectedEntry = expectedEntries.peek();
+        if (Objects.equal(actualEntry.getKey(), expectedEntry.getKey())) {
+          expectedEntries.next();
+          matchedKeys++;
+          testValue(
+              expectedEntry.getKey(),
+              actualEntry.getValue(),
+              expectedEntry.getValue(),
+              valueTester);
+        } else if (!allowUnexpected) {
+          break;
+        }
+      }
+      if (!expectedEntries.hasNext() && (allowUnexpected || matchedKeys == actual.size())) {
+        keysInSameOrder = true;
+        return;
+      }
+
+      // Then look up each of the remaining expected keys in the actual map.
+      while (expectedEntries.hasNext()) {
+        Entry<? extends K, ? extends E> expectedEntry = expectedEntries.next();
+        K expectedKey = expectedEntry.getKey();
+        A actualValue = actual.get(expectedKey);
+        if (actualValue != null || actual.containsKey(expectedKey)) {
+          matchedKeys++;
+          testValue(expectedKey, actualValue, expectedEntry.getValue(), valueTester);
+        } else {
+          addMissing(expectedKey, expectedEntry.getValue());
+        }
+      }
+
+      // Finally, if not every actual key was matched, look for the unmatched ones.
+      if (!allowUnexpected && matchedKeys < actual.size()) {
+        for (Entry<? extends K, ? extends A> actualEntry : actual.entrySet()) {
+          if (!expected.containsKey(actualEntry.getKey())) {
+            addUnexpected(actualEntry.getKey(), actualEntry.getValue());
+          }
+        }
+      }
+    }
+
+    private void testValue(
+        K key,
+        @NullableDecl A actualValue,
+        @NullableDecl E expectedValue,
+        ValueTester<? super A, ? super E> valueTester) {
+      if (!valueTester.test(actualValue, expectedValue) && hasRoomForDifference()) {
+        wrongValues.put(key, new ValueDifference<A, E>(actualValue, expectedValue));
+      }
+    }
+
+    private void addMissing(K key, @NullableDecl E expectedValue) {
+      if (hasRoomForDifference()) {
+        missing.put(key, expectedValue);
       }
-      return new MapDifference<>(
-          missing, unexpected, wrongValues, Sets.union(actual.keySet(), expected.keySet()));
-    }
-
-    private MapDifference(
-        Map<K, E> missing,
-        Map<K, A> unexpected,
-        Map<K, ValueDifference<A, E>> wrongValues,
-        Set<K> allKeys) {
-      this.missing = missing;
-      this.unexpected = unexpected;
-      this.wrongValues = wrongValues;
-      this.allKeys = allKeys;
+    }
+
+    private void addUnexpected(K key, @NullableDecl A actualValue) {
+      if (hasRoomForDifference()) {
+        unexpected.put(key, actualValue);
+      }
+    }
+
+    /** Returns whether to record one more difference, counting it as omitted if not. */
+    private boolean hasRoomForDifference() {
+      if (missing.size() + unexpected.size() + wrongValues.size() < maxDifferences) {
+        return true;
+      }
+      omittedDifferences++;
+      return false;
+    }
+
+    /**
+     * Returns whether the keys that are present in both maps are known to appear in the same order
+     * in each. If this returns false, they may still be in the same order.
+     */
+    boolean keysInSameOrder() {
+      return keysInSameOrder;
     }
 
     boolean isEmpty() {
@@ -366,6 +525,12 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
             .append("has the following entries with matching keys but different values: ")
             .append(includeKeyTypes ? addKeyTypes(wrongValuesFormatted) : wrongValuesFormatted);
       }
+      if (omittedDifferences > 0) {
+        description
+            .append(" and has ")
+            .append(omittedDifferences)
+            .append(" more differences that aren't shown");
+      }
       return description.toString();
     }
 
@@ -455,11 +620,9 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
     @Override
     public void inOrder() {
       // We're using the fact that Sets.intersection keeps the order of the first set.
-      List<?> expectedKeyOrder =
-          Lists.newArrayList(Sets.intersection(expectedMap.keySet(), actual().keySet()));
-      List<?> actualKeyOrder =
-          Lists.newArrayList(Sets.intersection(actual().keySet(), expectedMap.keySet()));
-      if (!actualKeyOrder.equals(expectedKeyOrder)) {
+      Set<?> expectedKeyOrder = Sets.intersection(expectedMap.keySet(), actual().keySet());
+      Set<?> actualKeyOrder = Sets.intersection(actual().keySet(), expectedMap.keySet());
+      if (!Iterables.elementsEqual(actualKeyOrder, expectedKeyOrder)) {
         failWithoutActual(
             simpleFact(
                 lenientFormat(
@@ -574,8 +737,10 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
         // Did not find matching key. Look for the matching value with a different key.
         Set<Object> keys = new LinkedHashSet<>();
         Correspondence.ExceptionStore exceptions = Correspondence.ExceptionStore.forMapValues();
+        Object expectedValueKey = correspondence.safeExpectedKey(expectedValue);
         for (Entry<?, A> actualEntry : getCastSubject().entrySet()) {
-          if (correspondence.safeCompare(actualEntry.getValue(), expectedValue, exceptions)) {
+          if (correspondence.mayCorrespond(actualEntry.getValue(), expectedValueKey)
+              && correspondence.safeCompare(actualEntry.getValue(), expectedValue, exceptions)) {
             keys.add(actualEntry.getKey());
           }
         }
@@ -721,11 +886,15 @@ public class MapSubject extends Subject<MapSubject, Map<?, ?>> {
                 public boolean test(A actualValue, E expectedValue) {
                   return correspondence.safeCompare(actualValue, expectedValue, exceptions);
                 }
-              });
+              },
+              renderingBudget().maxElements());
       if (diff.isEmpty()) {
         // The maps correspond exactly. There's no need to check exceptions here, because if
         // Correspondence.compare() threw then safeCompare() would return false and the diff would
         // record that we had the wrong value for that key.
+        if (diff.keysInSameOrder()) {
+          return IN_ORDER;
+        }
         return new MapInOrder(
             expectedMap,
             lenientFormat(
@@ -24,6 +24,7 @@ import static com.google.common.truth.Fact.simpleFact;
 import static com.google.common.truth.Facts.facts;
 import static com.google.common.truth.SubjectUtils.HUMAN_UNDERSTANDABLE_EMPTY_STRING;
 import static com.google.common.truth.SubjectUtils.countDuplicatesAndAddTypeInfo;
+import static com.google.common.truth.SubjectUtils.hasHashCodeConsistentWithEquals;
 import static com.google.common.truth.SubjectUtils.hasMatchingToStringPair;
 import static com.google.common.truth.SubjectUtils.objectToTypeName;
 import static com.google.common.truth.SubjectUtils.retainMatchingToString;
@@ -335,12 +336,12 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
   }
 
   private static class IterableEntries extends IterableSubject {
-    private final String stringRepresentation;
+    private final Multimap<?, ?> multimap;
 
     IterableEntries(FailureMetadata metadata, MultimapSubject multimapSubject, Iterable<?> actual) {
       super(metadata, actual);
       // We want to use the multimap's toString() instead of the iterable of entries' toString():
-      this.stringRepresentation = multimapSubject.actual().toString();
+      this.multimap = multimapSubject.actual();
       // If the multimap subject is named() then this should be, too:
       if (multimapSubject.internalCustomName() != null) {
         named(multimapSubject.internalCustomName());
@@ -349,7 +350,7 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
 
     @Override
     protected String actualCustomStringRepresentation() {
-      return stringRepresentation;
+      return renderingBudget().render(multimap);
     }
   }
 
@@ -518,7 +519,7 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
    */
   public <A, E> UsingCorrespondence<A, E> comparingValuesUsing(
       Correspondence<? super A, ? super E> correspondence) {
-    return new UsingCorrespondence<>(correspondence);
+    return new UsingCorrespondence<>(correspondence, /* comparingInParallel= */ false);
   }
 
   /**
@@ -531,9 +532,27 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
   public final class UsingCorrespondence<A, E> {
 
     private final Correspondence<? super A, ? super E> correspondence;
+    private final boolean comparingInParallel;
 
-    private UsingCorrespondence(Correspondence<? super A, ? super E> correspondence) {
+    private UsingCorrespondence(
+        Correspondence<? super A, ? super E> correspondence, boolean comparingInParallel) {
       this.correspondence = checkNotNull(correspondence);
+      this.comparingInParallel = comparingInParallel;
+    }
+
+    /**
+     * Specifies that {@link #containsExactlyEntriesIn} and {@link #containsAtLeastEntriesIn} (and
+     * the methods that delegate to them) may call {@link Correspondence#compare} for different
+     * pairs of values concurrently, on several threads, as described at {@link
+     * IterableSubject.UsingCorrespondence#comparingInParallel}. The correspondence must be safe to
+     * call from several threads at once.
+     *
+     * <p>Note that calling this method makes no difference to whether a test passes or fails, or to
+     * the failure message. On platforms which do not support threads, such as GWT, it makes no
+     * difference at all.
+     */
+    public UsingCorrespondence<A, E> comparingInParallel() {
+      return new UsingCorrespondence<>(correspondence, /* comparingInParallel= */ true);
     }
 
     /**
@@ -545,8 +564,10 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
         // Found matching key.
         Collection<A> actualValues = getCastActual().asMap().get(expectedKey);
         Correspondence.ExceptionStore exceptions = Correspondence.ExceptionStore.forMapValues();
+        Object expectedValueKey = correspondence.safeExpectedKey(expectedValue);
         for (A actualValue : actualValues) {
-          if (correspondence.safeCompare(actualValue, expectedValue, exceptions)) {
+          if (correspondence.mayCorrespond(actualValue, expectedValueKey)
+              && correspondence.safeCompare(actualValue, expectedValue, exceptions)) {
             // Found matching key and value, but we still need to fail if we hit an exception along
             // the way.
             if (exceptions.hasCompareException()) {
@@ -583,8 +604,10 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
         // Did not find matching key.
         Set<Object> keys = new LinkedHashSet<>();
         Correspondence.ExceptionStore exceptions = Correspondence.ExceptionStore.forMapValues();
+        Object expectedValueKey = correspondence.safeExpectedKey(expectedValue);
         for (Entry<?, A> actualEntry : getCastActual().entries()) {
-          if (correspondence.safeCompare(actualEntry.getValue(), expectedValue, exceptions)) {
+          if (correspondence.mayCorrespond(actualEntry.getValue(), expectedValueKey)
+              && correspondence.safeCompare(actualEntry.getValue(), expectedValue, exceptions)) {
             keys.add(actualEntry.getKey());
           }
         }
@@ -679,10 +702,7 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
       // the case where inOrder() fails it says the keys and/or the values for some keys are out of
       // order. We don't bother with that here. It would be nice, but it would be a lot of added
       // complexity for little gain.
-      return check()
-          .about(iterableEntries())
-          .that(actual().entries())
-          .comparingElementsUsing(new EntryCorrespondence<K, A, V>(correspondence))
+      return comparingEntries(new EntryCorrespondence<K, A, V>(correspondence))
           .containsExactlyElementsIn(expectedMultimap.entries());
     }
 
@@ -703,10 +723,7 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
       // the case where inOrder() fails it says the keys and/or the values for some keys are out of
       // order. We don't bother with that here. It would be nice, but it would be a lot of added
       // complexity for little gain.
-      return check()
-          .about(iterableEntries())
-          .that(actual().entries())
-          .comparingElementsUsing(new EntryCorrespondence<K, A, V>(correspondence))
+      return comparingEntries(new EntryCorrespondence<K, A, V>(correspondence))
           .containsAllIn(expectedMultimap.entries());
     }
 
@@ -744,6 +761,22 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
       return MultimapSubject.this.containsExactly();
     }
 
+    /**
+     * Returns a check about the entries of the multimap which compares them using the given
+     * correspondence. Because that correspondence has a key hint, each actual entry is compared
+     * only with the expected entries that have the same key.
+     */
+    private <K, V extends E>
+        IterableSubject.UsingCorrespondence<Entry<K, A>, Entry<K, V>> comparingEntries(
+            EntryCorrespondence<K, A, V> entryCorrespondence) {
+      IterableSubject.UsingCorrespondence<Entry<K, A>, Entry<K, V>> usingCorrespondence =
+          check()
+              .about(iterableEntries())
+              .that(actual().entries())
+              .comparingElementsUsing(entryCorrespondence);
+      return comparingInParallel ? usingCorrespondence.comparingInParallel() : usingCorrespondence;
+    }
+
     @SuppressWarnings("unchecked") // throwing ClassCastException is the correct behaviour
     private Multimap<?, A> getCastActual() {
       return (Multimap<?, A>) actual();
@@ -765,6 +798,29 @@ public class MultimapSubject extends Subject<MultimapSubject, Multimap<?, ?>> {
           && valueCorrespondence.compare(actual.getValue(), expected.getValue());
     }
 
+    // Entries can only correspond if their keys are equal, so the keys serve as a key hint. We only
+    // vouch for keys that we know hash consistently, though. (A null key is left out too, since
+    // compare() throws for it, and comparing it with every entry records that exception as before.)
+
+    @Override
+    boolean hasKeyHint() {
+      return true;
+    }
+
+    @Override
+    Object actualKey(Entry<K, A> actual) {
+      return hashableOrNoKey(actual.getKey());
+    }
+
+    @Override
+    Object expectedKey(Entry<K, E> expected) {
+      return hashableOrNoKey(expected.getKey());
+    }
+
+    private static Object hashableOrNoKey(@NullableDecl Object key) {
+      return key != null && hasHashCodeConsistentWithEquals(key) ? key : NO_KEY;
+    }
+
     @Override
     public String toString() {
       return lenientFormat(
@@ -16,17 +16,17 @@
 package com.google.common.truth;
 
 import static com.google.common.truth.Fact.fact;
-import static difflib.DiffUtils.diff;
-import static difflib.DiffUtils.generateUnifiedDiff;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import difflib.Patch;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.junit.ComparisonFailure;
@@ -57,11 +57,11 @@ final class Platform {
    * returned.
    */
   static Throwable[] getSuppressed(Throwable throwable) {
-    try {
-      Method getSuppressed = throwable.getClass().getMethod("getSuppressed");
-      return (Throwable[]) getSuppressed.invoke(throwable);
-    } catch (NoSuchMethodException e) {
+    if (GET_SUPPRESSED == null) {
       return new Throwable[0];
+    }
+    try {
+      return (Throwable[]) GET_SUPPRESSED.invoke(throwable);
     } catch (IllegalAccessException e) {
       throw new RuntimeException(e);
     } catch (InvocationTargetException e) {
@@ -69,35 +69,45 @@ final class Platform {
     }
   }
 
+  /**
+   * {@code Throwable.getSuppressed()}, or null if it doesn't exist. We look it up only once because
+   * we call it for every Throwable whose stack trace we clean. It's final, so we don't need to look
+   * it up on each Throwable's own class.
+   */
+  @NullableDecl private static final Method GET_SUPPRESSED = getSuppressedMethod();
+
+  @NullableDecl
+  private static Method getSuppressedMethod() {
+    try {
+      return Throwable.class.getMethod("getSuppressed");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
   static void cleanStackTrace(Throwable throwable) {
     StackTraceCleaner.cleanStackTrace(throwable);
   }
 
   @NullableDecl
   static ImmutableList<Fact> makeDiff(String expected, String actual) {
-    ImmutableList<String> expectedLines = splitLines(expected);
-    ImmutableList<String> actualLines = splitLines(actual);
-    Patch<String> diff = diff(expectedLines, actualLines);
-    List<String> unifiedDiff =
-        generateUnifiedDiff("expected", "actual", expectedLines, diff, /* contextSize= */ 3);
-    if (unifiedDiff.isEmpty()) {
+    String result =
+        LineDiff.unifiedDiff(
+            expected,
+            actual,
+            /* contextSize= */ 3,
+            /* maxLength= */ Math.max(expected.length(), actual.length()));
+    if (result == null) {
+      return null;
+    }
+    if (result.isEmpty()) {
       return ImmutableList.of(
           fact("diff", "(line contents match, but line-break characters differ)"));
       // TODO(cpovirk): Possibly include the expected/actual value, too?
     }
-    unifiedDiff = unifiedDiff.subList(2, unifiedDiff.size()); // remove "--- expected," "+++ actual"
-    String result = Joiner.on("\n").join(unifiedDiff);
-    if (result.length() > expected.length() && result.length() > actual.length()) {
-      return null;
-    }
     return ImmutableList.of(fact("diff", result));
   }
 
-  private static ImmutableList<String> splitLines(String s) {
-    // splitToList is @Beta, so we avoid it.
-    return ImmutableList.copyOf(Splitter.onPattern("\r?\n").split(s));
-  }
-
   abstract static class PlatformComparisonFailure extends ComparisonFailure {
     private final String message;
 
@@ -149,6 +159,84 @@ final class Platform {
     return Throwables.getStackTraceAsString(throwable);
   }
 
+  /**
+   * Runs the given tasks, on several threads if more than one processor is available, and returns
+   * once they have all finished. If any of them throw, rethrows the exception from the first such
+   * task in the list.
+   */
+  static void runConcurrently(final List<? extends Runnable> tasks) {
+    int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+    if (threads <= 1) {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      return;
+    }
+    final AtomicInteger nextTask = new AtomicInteger();
+    final CountDownLatch finished = new CountDownLatch(tasks.size());
+    final Throwable[] failures = new Throwable[tasks.size()];
+    Runnable worker =
+        new Runnable() {
+          @Override
+          public void run() {
+            for (int i = nextTask.getAndIncrement();
+                i < tasks.size();
+                i = nextTask.getAndIncrement()) {
+              try {
+                tasks.get(i).run();
+              } catch (Throwable t) {
+                failures[i] = t;
+              } finally {
+                finished.countDown();
+              }
+            }
+          }
+        };
+    for (int i = 1; i < threads; i++) {
+      ConcurrentExecutorHolder.EXECUTOR.execute(worker);
+    }
+    /*
+     * The calling thread works through the tasks too, and then waits for the tasks rather than for
+     * the workers. So if the executor is busy (for example, because a task is itself running tasks
+     * concurrently), we still finish, just with less parallelism.
+     */
+    worker.run();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        finished.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    for (Throwable failure : failures) {
+      if (failure != null) {
+        Throwables.throwIfUnchecked(failure);
+        throw new RuntimeException(failure);
+      }
+    }
+  }
+
+  /** Lazily creates the executor used by {@link #runConcurrently}. */
+  private static final class ConcurrentExecutorHolder {
+    static final Executor EXECUTOR =
+        Executors.newCachedThreadPool(
+            new ThreadFactory() {
+              private final AtomicInteger threadCount = new AtomicInteger();
+
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "truth-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+  }
+
   /** Tests if current platform is Android. */
   static boolean isAndroid() {
     return System.getProperties().getProperty("java.runtime.name").contains("Android");
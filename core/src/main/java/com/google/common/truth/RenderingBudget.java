@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Limits on how much of a value Truth prints when it includes the value in a failure message. A
+ * value within the limits is printed exactly as its {@code toString()} would print it. A larger
+ * collection, map, multiset or multimap is printed only up to the limits, and the parts that are
+ * left out are marked with "...". Those parts are never converted to strings.
+ *
+ * <p>To set the budget for an assertion, call {@link StandardSubjectBuilder#withRenderingBudget}.
+ * For example:
+ *
+ * <pre>{@code
+ * assertWithMessage("contents of %s", file)
+ *     .withRenderingBudget(RenderingBudget.of(100, 10_000, 5))
+ *     .that(lines)
+ *     .isEmpty();
+ * }</pre>
+ */
+public final class RenderingBudget {
+  /** The smallest permitted character limit, which leaves room for the truncation marker. */
+  private static final int MIN_MAX_CHARACTERS = 100;
+
+  private static final RenderingBudget DEFAULT =
+      new RenderingBudget(10000, Integer.MAX_VALUE, 20);
+
+  private static final RenderingBudget UNLIMITED =
+      new RenderingBudget(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+  /**
+   * Returns the budget that Truth uses unless told otherwise: 10,000 elements and 20 levels of
+   * nesting, with no limit on characters. A long string, or an object with a long {@code
+   * toString()}, is printed in full unless a budget from {@link #of} sets a character limit, since
+   * the difference between two such values may be anywhere in them.
+   */
+  public static RenderingBudget defaultBudget() {
+    return DEFAULT;
+  }
+
+  /** Returns a budget that prints every value in full, however large. */
+  public static RenderingBudget unlimited() {
+    return UNLIMITED;
+  }
+
+  /**
+   * Returns a budget that prints at most {@code maxElements} elements or entries (counted across
+   * all levels of nesting), at most {@code maxCharacters} characters (which must be at least 100)
+   * and at most {@code maxDepth} levels of nested collections, with the value itself as the first
+   * level.
+   *
+   * <p>{@code maxElements} also limits how many differences a failed map assertion, like {@link
+   * MapSubject#containsExactlyEntriesIn}, lists: it lists at most that many missing, unexpected and
+   * wrong entries in total, and only counts the rest.
+   */
+  public static RenderingBudget of(int maxElements, int maxCharacters, int maxDepth) {
+    checkArgument(maxElements >= 0, "maxElements (%s) must be non-negative", maxElements);
+    checkArgument(
+        maxCharacters >= MIN_MAX_CHARACTERS,
+        "maxCharacters (%s) must be at least %s",
+        maxCharacters,
+        MIN_MAX_CHARACTERS);
+    checkArgument(maxDepth >= 0, "maxDepth (%s) must be non-negative", maxDepth);
+    return new RenderingBudget(maxElements, maxCharacters, maxDepth);
+  }
+
+  private final int maxElements;
+  private final int maxCharacters;
+  private final int maxDepth;
+
+  private RenderingBudget(int maxElements, int maxCharacters, int maxDepth) {
+    this.maxElements = maxElements;
+    this.maxCharacters = maxCharacters;
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Returns {@code String.valueOf(value)} if that's within the budget, and otherwise as much of it
+   * as the budget allows.
+   */
+  String render(@NullableDecl Object value) {
+    if (fitsElementLimits(value)) {
+      return truncate(String.valueOf(value));
+    }
+    Rendering rendering = new Rendering();
+    rendering.append(value, 0);
+    return rendering.finish();
+  }
+
+  /**
+   * Like {@link #render}, but prints {@code iterable} in the format of {@link
+   * com.google.common.collect.Iterables#toString}, no matter how its {@code toString()} is
+   * implemented.
+   */
+  String renderIterable(Iterable<?> iterable) {
+    return render(FluentIterable.from(iterable));
+  }
+
+  /**
+   * Returns the maximum number of elements to print. Assertions that collect elements only in order
+   * to print them can stop collecting at this limit. For example, {@link MapSubject} records at
+   * most this many differences between two maps.
+   */
+  int maxElements() {
+    return maxElements;
+  }
+
+  /** Returns whether {@link #render} prints {@code value} in full. */
+  boolean rendersInFull(@NullableDecl Object value) {
+    return fitsElementLimits(value) && String.valueOf(value).length() <= maxCharacters;
+  }
+
+  /**
+   * Returns whether {@code value} is within the element and depth limits, in which case {@link
+   * #render} prints it by calling {@code toString()}. This method itself never calls {@code
+   * toString()}.
+   */
+  boolean fitsElementLimits(@NullableDecl Object value) {
+    return fits(value, 0, new int[1]);
+  }
+
+  /**
+   * Returns {@code string} if it is within the character limit, and otherwise a prefix of it
+   * followed by a marker that gives its full length. The result is itself within the limit.
+   */
+  String truncate(String string) {
+    if (string.length() <= maxCharacters) {
+      return string;
+    }
+    String marker = "... (truncated from " + string.length() + " characters)";
+    return string.substring(0, maxCharacters - marker.length()) + marker;
+  }
+
+  /**
+   * Returns whether {@code value} and everything nested in it are within the element and depth
+   * limits. {@code elementsSeen[0]} counts the elements across all levels.
+   */
+  private boolean fits(@NullableDecl Object value, int depth, int[] elementsSeen) {
+    value = asRenderedContainer(value);
+    if (value instanceof Map) {
+      if (depth >= maxDepth) {
+        return false;
+      }
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (++elementsSeen[0] > maxElements
+            || (entry.getKey() != value && !fits(entry.getKey(), depth + 1, elementsSeen))
+            || (entry.getValue() != value && !fits(entry.getValue(), depth + 1, elementsSeen))) {
+          return false;
+        }
+      }
+    } else if (value instanceof Multiset) {
+      if (depth >= maxDepth) {
+        return false;
+      }
+      for (Multiset.Entry<?> entry : ((Multiset<?>) value).entrySet()) {
+        if (++elementsSeen[0] > maxElements || !fits(entry.getElement(), depth + 1, elementsSeen)) {
+          return false;
+        }
+      }
+    } else if (value instanceof Iterable) {
+      if (depth >= maxDepth) {
+        return false;
+      }
+      for (Object element : (Iterable<?>) value) {
+        if (++elementsSeen[0] > maxElements
+            || (element != value && !fits(element, depth + 1, elementsSeen))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the object whose elements {@link Rendering} prints for {@code value}, or {@code value}
+   * itself if Truth prints it in one piece. We print the elements only of types whose {@code
+   * toString()} format we know.
+   */
+  @NullableDecl
+  private static Object asRenderedContainer(@NullableDecl Object value) {
+    if (value instanceof Multimap) {
+      // Multimap.toString() is defined as asMap().toString().
+      return ((Multimap<?, ?>) value).asMap();
+    }
+    return value instanceof Map || value instanceof Collection || value instanceof FluentIterable
+        ? value
+        : null;
+  }
+
+  /** The state of printing one value that exceeds the budget. */
+  private final class Rendering {
+    private final StringBuilder out = new StringBuilder();
+    private int elementsLeft = maxElements;
+
+    void append(@NullableDecl Object value, int depth) {
+      Object container = asRenderedContainer(value);
+      if (container instanceof Map) {
+        appendMap((Map<?, ?>) container, depth);
+      } else if (container instanceof Multiset) {
+        appendMultiset((Multiset<?>) container, depth);
+      } else if (container instanceof Iterable) {
+        appendIterable((Iterable<?>) container, depth);
+      } else {
+        appendLeaf(String.valueOf(value));
+      }
+    }
+
+    private void appendIterable(Iterable<?> iterable, int depth) {
+      if (depth >= maxDepth) {
+        out.append("[...]");
+        return;
+      }
+      out.append('[');
+      int shown = 0;
+      for (Iterator<?> i = iterable.iterator(); i.hasNext(); shown++) {
+        if (shown > 0) {
+          out.append(", ");
+        }
+        if (exhausted()) {
+          appendMore(iterable, shown);
+          break;
+        }
+        Object element = i.next();
+        elementsLeft--;
+        if (element == iterable) {
+          out.append("(this Collection)");
+        } else {
+          append(element, depth + 1);
+        }
+      }
+      out.append(']');
+    }
+
+    private void appendMultiset(Multiset<?> multiset, int depth) {
+      if (depth >= maxDepth) {
+        out.append("[...]");
+        return;
+      }
+      out.append('[');
+      int shown = 0;
+      for (Iterator<? extends Multiset.Entry<?>> i = multiset.entrySet().iterator();
+          i.hasNext();
+          shown++) {
+        if (shown > 0) {
+          out.append(", ");
+        }
+        if (exhausted()) {
+          appendMore(multiset.entrySet(), shown);
+          break;
+        }
+        Multiset.Entry<?> entry = i.next();
+        elementsLeft--;
+        append(entry.getElement(), depth + 1);
+        if (entry.getCount() > 1) {
+          out.append(" x ").append(entry.getCount());
+        }
+      }
+      out.append(']');
+    }
+
+    private void appendMap(Map<?, ?> map, int depth) {
+      if (depth >= maxDepth) {
+        out.append("{...}");
+        return;
+      }
+      out.append('{');
+      int shown = 0;
+      for (Iterator<? extends Map.Entry<?, ?>> i = map.entrySet().iterator();
+          i.hasNext();
+          shown++) {
+        if (shown > 0) {
+          out.append(", ");
+        }
+        if (exhausted()) {
+          appendMore(map.entrySet(), shown);
+          break;
+        }
+        Map.Entry<?, ?> entry = i.next();
+        elementsLeft--;
+        appendMapPart(map, entry.getKey(), depth);
+        out.append('=');
+        appendMapPart(map, entry.getValue(), depth);
+      }
+      out.append('}');
+    }
+
+    private void appendMapPart(Map<?, ?> map, @NullableDecl Object part, int depth) {
+      if (part == map) {
+        out.append("(this Map)");
+      } else {
+        append(part, depth + 1);
+      }
+    }
+
+    private void appendMore(Iterable<?> elements, int shown) {
+      if (elements instanceof Collection) {
+        out.append("... (").append(((Collection<?>) elements).size() - shown).append(" more)");
+      } else {
+        out.append("...");
+      }
+    }
+
+    private void appendLeaf(String string) {
+      // Leave room past the limit so that finish() knows to add its marker. The room is a long
+      // because the limit may be Integer.MAX_VALUE.
+      long room = (long) maxCharacters + 1 - out.length();
+      out.append(string, 0, (int) Math.max(0, Math.min(string.length(), room)));
+    }
+
+    private boolean exhausted() {
+      return elementsLeft <= 0 || out.length() > maxCharacters;
+    }
+
+    String finish() {
+      if (out.length() <= maxCharacters) {
+        return out.toString();
+      }
+      String marker = "... (truncated)";
+      return out.substring(0, maxCharacters - marker.length()) + marker;
+    }
+  }
+}
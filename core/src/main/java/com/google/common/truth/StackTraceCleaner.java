@@ -26,6 +26,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.junit.runner.Runner;
 import org.junit.runners.model.Statement;
 
@@ -198,31 +200,105 @@ final class StackTraceCleaner {
       ImmutableSet.<Class<?>>of(StandardSubjectBuilder.class);
 
   private static boolean isTruthEntrance(StackTraceElement stackTraceElement) {
-    return isFromClassOrClassNestedInside(stackTraceElement, SUBJECT_CLASS)
-        /*
-         * Don't match classes _nested inside_ StandardSubjectBuilder because that would match
-         * Expect's Statement implementation. While we want to strip everything from there _down_, we
-         * don't want to strip everything from there _up_ (which would strip the test class itself!).
-         *
-         * (StandardSubjectBuilder is listed here only for its fail() methods, anyway, so we don't
-         * have to worry about nested classes like we do with Subject.)
-         */
-        || isFromClassDirectly(stackTraceElement, STANDARD_SUBJECT_BUILDER_CLASS);
+    return classify(stackTraceElement.getClassName()).isTruthEntrance;
   }
 
   private static final ImmutableSet<Class<?>> JUNIT_INFRASTRUCTURE_CLASSES =
       ImmutableSet.<Class<?>>of(Runner.class, Statement.class);
 
   private static boolean isJUnitIntrastructure(StackTraceElement stackTraceElement) {
-    // It's not clear whether looking at nested classes here is useful, harmful, or neutral.
-    return isFromClassOrClassNestedInside(stackTraceElement, JUNIT_INFRASTRUCTURE_CLASSES);
+    return classify(stackTraceElement.getClassName()).isJUnitInfrastructure;
+  }
+
+  /**
+   * The classes (or rather, their names) that we've already classified. Classifying a class
+   * requires loading it, which is slow and may contend on classloader locks, and a test suite that
+   * produces many failures tends to see the same classes on the stack over and over.
+   *
+   * <p>To keep the map bounded, we simply start over whenever it reaches {@link
+   * #MAX_CLASSIFICATIONS} entries, rather than evicting the least recently used one, as a bounded
+   * Guava {@code Cache} would. That's acceptable because:
+   *
+   * <ul>
+   *   <li>a classification depends only on the class name, so dropping one costs nothing but
+   *       classifying that class again
+   *   <li>the classes on the stacks of a test suite's failures are usually far fewer than the
+   *       limit, so in practice the map rarely fills up at all
+   *   <li>a {@code Cache} pays for its recency bookkeeping on every lookup, which showed up in
+   *       profiles of failing assertions, while a {@code ConcurrentHashMap} lookup is just a read
+   * </ul>
+   *
+   * <p>Threads racing to fill the map may clear it more than once or briefly exceed the limit by a
+   * few entries, which is harmless for the same reasons.
+   */
+  private static final ConcurrentMap<String, FrameClassification> CLASSIFICATIONS =
+      new ConcurrentHashMap<>();
+
+  private static final int MAX_CLASSIFICATIONS = 1000;
+
+  /**
+   * Prefixes of the names of JDK classes. Such a class can't be a subtype of (or be nested inside)
+   * any of our recognized classes, so we don't need to load it to classify it. Notably, this covers
+   * the prefixes of {@link StackFrameType#REFLECTION} frames, which appear on every stack.
+   */
+  private static final ImmutableList<String> JDK_CLASS_PREFIXES =
+      ImmutableList.of("java.", "javax.", "jdk.", "sun.", "com.sun.");
+
+  private static FrameClassification classify(String className) {
+    FrameClassification classification = CLASSIFICATIONS.get(className);
+    if (classification == null) {
+      classification = computeClassification(className);
+      if (CLASSIFICATIONS.size() >= MAX_CLASSIFICATIONS) {
+        CLASSIFICATIONS.clear();
+      }
+      CLASSIFICATIONS.put(className, classification);
+    }
+    return classification;
+  }
+
+  private static FrameClassification computeClassification(String className) {
+    StackFrameType stackFrameType = StackFrameType.forClassName(className);
+    for (String prefix : JDK_CLASS_PREFIXES) {
+      if (className.startsWith(prefix)) {
+        return new FrameClassification(stackFrameType, false, false);
+      }
+    }
+    return new FrameClassification(
+        stackFrameType,
+        isFromClassOrClassNestedInside(className, SUBJECT_CLASS)
+            /*
+             * Don't match classes _nested inside_ StandardSubjectBuilder because that would match
+             * Expect's Statement implementation. While we want to strip everything from there
+             * _down_, we don't want to strip everything from there _up_ (which would strip the test
+             * class itself!).
+             *
+             * (StandardSubjectBuilder is listed here only for its fail() methods, anyway, so we
+             * don't have to worry about nested classes like we do with Subject.)
+             */
+            || isFromClassDirectly(className, STANDARD_SUBJECT_BUILDER_CLASS),
+        // It's not clear whether looking at nested classes here is useful, harmful, or neutral.
+        isFromClassOrClassNestedInside(className, JUNIT_INFRASTRUCTURE_CLASSES));
+  }
+
+  /** Everything we need to know about the frames from a given class. */
+  private static final class FrameClassification {
+    final StackFrameType stackFrameType;
+    final boolean isTruthEntrance;
+    final boolean isJUnitInfrastructure;
+
+    FrameClassification(
+        StackFrameType stackFrameType, boolean isTruthEntrance, boolean isJUnitInfrastructure) {
+      this.stackFrameType = stackFrameType;
+      this.isTruthEntrance = isTruthEntrance;
+      this.isJUnitInfrastructure = isJUnitInfrastructure;
+    }
   }
 
   private static boolean isFromClassOrClassNestedInside(
-      StackTraceElement stackTraceElement, ImmutableSet<Class<?>> recognizedClasses) {
+      String className, ImmutableSet<Class<?>> recognizedClasses) {
     Class<?> stackClass;
     try {
-      stackClass = loadClass(stackTraceElement.getClassName());
+      stackClass = loadClass(className);
     } catch (ClassNotFoundException e) {
       return false;
     }
@@ -251,10 +327,10 @@ final class StackTraceCleaner {
   }
 
   private static boolean isFromClassDirectly(
-      StackTraceElement stackTraceElement, ImmutableSet<Class<?>> recognizedClasses) {
+      String className, ImmutableSet<Class<?>> recognizedClasses) {
     Class<?> stackClass;
     try {
-      stackClass = loadClass(stackTraceElement.getClassName());
+      stackClass = loadClass(className);
     } catch (ClassNotFoundException e) {
       return false;
     }
@@ -294,7 +370,7 @@ final class StackTraceCleaner {
 
     /** Creates a wrapper with the given frame with frame type inferred from frame's class name. */
     StackTraceElementWrapper(StackTraceElement stackTraceElement) {
-      this(stackTraceElement, StackFrameType.forClassName(stackTraceElement.getClassName()));
+      this(stackTraceElement, classify(stackTraceElement.getClassName()).stackFrameType);
     }
 
     /** Creates a wrapper with the given frame and the given frame type. */
@@ -218,6 +218,16 @@ public class StandardSubjectBuilder {
     return new StandardSubjectBuilder(metadata().withMessage(format, args));
   }
 
+  /**
+   * Returns a new instance whose failure messages print values only within the given budget,
+   * rather than within {@linkplain RenderingBudget#defaultBudget the default budget}. This can
+   * keep the message for a failed assertion about a very large value readable. The budget's element
+   * limit also caps the number of differences that a failed map assertion lists.
+   */
+  public final StandardSubjectBuilder withRenderingBudget(RenderingBudget budget) {
+    return new StandardSubjectBuilder(metadata().withRenderingBudget(budget));
+  }
+
   /**
    * Given a factory for some {@code Subject} class, returns a builder whose {@code that(actual)}
    * method creates instances of that class. Created subjects use the previously set failure
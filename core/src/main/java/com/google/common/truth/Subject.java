@@ -39,6 +39,8 @@ import com.google.common.collect.Lists;
 import com.google.common.primitives.Booleans;
 import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Chars;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Floats;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 import com.google.common.primitives.Shorts;
@@ -96,7 +98,12 @@ public class Subject<S extends Subject<S, T>, T> {
         public void fail(AssertionError failure) {}
       };
 
-  private final FailureMetadata metadata;
+  /**
+   * The metadata passed to the constructor, which doesn't include this subject yet. We add it only
+   * when an assertion fails or derives another subject, so that passing assertions don't allocate.
+   */
+  private final FailureMetadata metadataWithoutSubject;
+
   private final T actual;
   private String customName = null;
   @NullableDecl private final String typeDescriptionOverride;
@@ -124,7 +131,7 @@ public class Subject<S extends Subject<S, T>, T> {
       FailureMetadata metadata,
       @NullableDecl T actual,
       @NullableDecl String typeDescriptionOverride) {
-    this.metadata = metadata.updateForSubject(this);
+    this.metadataWithoutSubject = checkNotNull(metadata);
     this.actual = actual;
     this.typeDescriptionOverride = typeDescriptionOverride;
   }
@@ -480,18 +487,38 @@ public class Subject<S extends Subject<S, T>, T> {
     return actualCustomStringRepresentation();
   }
 
+  /**
+   * Returns the budget within which to render values for failure messages. Subjects should use it
+   * when they render potentially large values themselves.
+   */
+  final RenderingBudget renderingBudget() {
+    return metadataWithoutSubject.renderingBudget();
+  }
+
   private String formatActualOrExpected(@NullableDecl Object o) {
     if (o instanceof byte[]) {
-      return base16((byte[]) o);
+      return renderingBudget().truncate(base16((byte[]) o));
     } else if (o != null && o.getClass().isArray()) {
-      String wrapped = Iterables.toString(stringableIterable(new Object[] {o}));
-      return wrapped.substring(1, wrapped.length() - 1);
+      return renderingBudget().render(STRINGIFY.apply(o));
     } else if (o instanceof Double) {
       return doubleToString((Double) o);
     } else if (o instanceof Float) {
       return floatToString((Float) o);
     } else {
-      return String.valueOf(o);
+      return renderingBudget().render(o);
+    }
+  }
+
+  /** Returns whether {@link #formatActualOrExpected} prints {@code o} without omitting anything. */
+  private boolean formatsInFull(@NullableDecl Object o) {
+    if (o instanceof byte[]) {
+      return renderingBudget().rendersInFull(base16((byte[]) o));
+    } else if (o != null && o.getClass().isArray()) {
+      return renderingBudget().rendersInFull(STRINGIFY.apply(o));
+    } else if (o instanceof Double || o instanceof Float) {
+      return true;
+    } else {
+      return renderingBudget().rendersInFull(o);
     }
   }
 
@@ -506,36 +533,33 @@ public class Subject<S extends Subject<S, T>, T> {
 
   private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
 
-  private static Iterable<?> stringableIterable(Object[] array) {
-    return Iterables.transform(asList(array), STRINGIFY);
-  }
-
   private static final Function<Object, Object> STRINGIFY =
       new Function<Object, Object>() {
         @Override
         public Object apply(@NullableDecl Object input) {
           if (input != null && input.getClass().isArray()) {
-            Iterable<?> iterable;
+            // A lazy view, so that RenderingBudget can skip converting elements it leaves out.
+            List<?> list;
             if (input.getClass() == boolean[].class) {
-              iterable = Booleans.asList((boolean[]) input);
+              list = Booleans.asList((boolean[]) input);
             } else if (input.getClass() == int[].class) {
-              iterable = Ints.asList((int[]) input);
+              list = Ints.asList((int[]) input);
             } else if (input.getClass() == long[].class) {
-              iterable = Longs.asList((long[]) input);
+              list = Longs.asList((long[]) input);
             } else if (input.getClass() == short[].class) {
-              iterable = Shorts.asList((short[]) input);
+              list = Shorts.asList((short[]) input);
             } else if (input.getClass() == byte[].class) {
-              iterable = Bytes.asList((byte[]) input);
+              list = Bytes.asList((byte[]) input);
             } else if (input.getClass() == double[].class) {
-              iterable = doubleArrayAsString((double[]) input);
+              list = doubleArrayAsString((double[]) input);
             } else if (input.getClass() == float[].class) {
-              iterable = floatArrayAsString((float[]) input);
+              list = floatArrayAsString((float[]) input);
             } else if (input.getClass() == char[].class) {
-              iterable = Chars.asList((char[]) input);
+              list = Chars.asList((char[]) input);
             } else {
-              iterable = Arrays.asList((Object[]) input);
+              list = Arrays.asList((Object[]) input);
             }
-            return Iterables.transform(iterable, STRINGIFY);
+            return Lists.transform(list, STRINGIFY);
           }
           return input;
         }
@@ -688,19 +712,25 @@ public class Subject<S extends Subject<S, T>, T> {
   }
 
   private static List<String> doubleArrayAsString(double[] items) {
-    List<String> itemAsStrings = new ArrayList<>(items.length);
-    for (double item : items) {
-      itemAsStrings.add(doubleToString(item));
-    }
-    return itemAsStrings;
+    return Lists.transform(
+        Doubles.asList(items),
+        new Function<Double, String>() {
+          @Override
+          public String apply(Double item) {
+            return doubleToString(item);
+          }
+        });
   }
 
   private static List<String> floatArrayAsString(float[] items) {
-    List<String> itemAsStrings = new ArrayList<>(items.length);
-    for (float item : items) {
-      itemAsStrings.add(floatToString(item));
-    }
-    return itemAsStrings;
+    return Lists.transform(
+        Floats.asList(items),
+        new Function<Float, String>() {
+          @Override
+          public String apply(Float item) {
+            return floatToString(item);
+          }
+        });
   }
 
   /**
@@ -709,7 +739,7 @@ public class Subject<S extends Subject<S, T>, T> {
    * information by using {@linkplain #check(String, Object...) the other overload}.
    */
   protected final StandardSubjectBuilder check() {
-    return new StandardSubjectBuilder(metadata.updateForCheckCall());
+    return new StandardSubjectBuilder(metadata().updateForCheckCall());
   }
 
   /**
@@ -762,7 +792,7 @@ public class Subject<S extends Subject<S, T>, T> {
           }
         };
     return new StandardSubjectBuilder(
-        metadata.updateForCheckCall(valuesAreSimilar, descriptionUpdate));
+        metadata().updateForCheckCall(valuesAreSimilar, descriptionUpdate));
   }
 
   /**
@@ -893,7 +923,11 @@ public class Subject<S extends Subject<S, T>, T> {
      * What we really want here is probably to delete actualCustomStringRepresentation() and migrate
      * users to formatActualOrExpected(actual).
      */
-    boolean sameToStrings = actualString.equals(expectedString);
+    /*
+     * If the budget cut the strings short, they might be equal even though the full strings
+     * aren't, so we can't claim that the values have the same string representation.
+     */
+    boolean sameToStrings = actualString.equals(expectedString) && formatsInFull(expected);
     boolean sameClassNames = actualClass.equals(expectedClass);
     // TODO(cpovirk): Handle "same class name, different class loader."
     boolean equal = difference.valuesAreEqual(); // always false for isEqualTo; varies for isSameAs
@@ -919,7 +953,7 @@ public class Subject<S extends Subject<S, T>, T> {
       }
     } else {
       if (equalityCheck == EqualityCheck.EQUAL && actual() != null && expected != null) {
-        metadata.failEqualityCheck(
+        metadata().failEqualityCheck(
             nameAsFacts(), difference.factsOrEmpty(), expectedString, actualString);
       } else {
         failEqualityCheckNoComparisonFailure(
@@ -1105,8 +1139,12 @@ public class Subject<S extends Subject<S, T>, T> {
     return String.class.getSuperclass() == null;
   }
 
+  private FailureMetadata metadata() {
+    return metadataWithoutSubject.updateForSubject(this);
+  }
+
   private void doFail(ImmutableList<Fact> facts) {
-    metadata.fail(prependNameIfAny(facts));
+    metadata().fail(prependNameIfAny(facts));
   }
 
   private ImmutableList<Fact> prependNameIfAny(ImmutableList<Fact> facts) {
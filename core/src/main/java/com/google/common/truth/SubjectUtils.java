@@ -20,23 +20,26 @@ import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Multisets.immutableEntry;
 
-import com.google.common.base.Equivalence;
-import com.google.common.base.Equivalence.Wrapper;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.LinkedHashMultiset;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.SetMultimap;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
  * Utility methods used in {@code Subject<T>} implementors.
@@ -89,14 +92,8 @@ final class SubjectUtils {
     return (count > 1) ? item + " [" + count + " copies]" : item;
   }
 
-  private static <T> NonHashingMultiset<T> countDuplicatesToMultiset(Iterable<T> items) {
-    // We use avoid hashing in case the elements don't have a proper
-    // .hashCode() method (e.g., MessageSet from old versions of protobuf).
-    NonHashingMultiset<T> multiset = new NonHashingMultiset<>();
-    for (T item : items) {
-      multiset.add(item);
-    }
-    return multiset;
+  private static <T> GroupingMultiset<T> countDuplicatesToMultiset(Iterable<T> items) {
+    return GroupingMultiset.create(items);
   }
 
   /**
@@ -126,7 +123,7 @@ final class SubjectUtils {
       Collection<?> items = iterableToCollection(itemsIterable);
       Optional<String> homogeneousTypeName = getHomogeneousTypeName(items);
 
-      NonHashingMultiset<?> valuesWithCountsAndMaybeTypes =
+      GroupingMultiset<?> valuesWithCountsAndMaybeTypes =
           homogeneousTypeName.isPresent()
               ? countDuplicatesToMultiset(items)
               : countDuplicatesToMultiset(addTypeInfoToEveryItem(items));
@@ -138,36 +135,87 @@ final class SubjectUtils {
     }
   }
 
-  private static final class NonHashingMultiset<E> {
-    // This ought to be static, but the generics are easier when I can refer to <E>.
-    private final Function<Multiset.Entry<Wrapper<E>>, Multiset.Entry<?>> unwrapKey =
-        new Function<Multiset.Entry<Wrapper<E>>, Multiset.Entry<?>>() {
-          @Override
-          public Multiset.Entry<?> apply(Multiset.Entry<Wrapper<E>> input) {
-            return immutableEntry(input.getElement().get(), input.getCount());
-          }
-        };
+  /**
+   * A multiset whose entries are in the order in which their first copies were added, and which
+   * groups an element with the first added element that it {@code equals}.
+   *
+   * <p>Elements are grouped with a hash index when their {@code hashCode} can be trusted: when they
+   * are of a type known to implement it correctly, or when their class passes a consistency check
+   * on a sample of the elements of that class. Other elements (e.g., MessageSet from old versions
+   * of protobuf) are compared with every group by {@code equals} alone, which is slow for large
+   * inputs but correct.
+   */
+  private static final class GroupingMultiset<E> {
+    private final Set<Class<?>> trustedClasses;
+    private final List<Group<E>> groups = new ArrayList<>();
+    private final Map<E, Group<E>> hashedGroups = new HashMap<>();
+    private int totalCopies;
+
+    private GroupingMultiset(Set<Class<?>> trustedClasses) {
+      this.trustedClasses = trustedClasses;
+    }
 
-    private final Multiset<Equivalence.Wrapper<E>> contents = LinkedHashMultiset.create();
+    static <E> GroupingMultiset<E> create(Iterable<E> items) {
+      Collection<E> elements = iterableToCollection(items);
+      GroupingMultiset<E> multiset =
+          new GroupingMultiset<E>(classesWithTrustedHashCodes(elements));
+      for (E element : elements) {
+        multiset.add(element);
+      }
+      return multiset;
+    }
 
-    void add(E element) {
-      contents.add(EQUALITY_WITHOUT_USING_HASH_CODE.wrap(element));
+    private void add(@NullableDecl E element) {
+      totalCopies++;
+      if (element == null || trustedClasses.contains(element.getClass())) {
+        Group<E> group;
+        try {
+          group = hashedGroups.get(element);
+          if (group == null) {
+            group = new Group<E>(element);
+            hashedGroups.put(element, group);
+            groups.add(group);
+          }
+        } catch (RuntimeException hashCodeFailure) {
+          // The sample didn't include this element, but its hashCode() throws. Don't trust it.
+          addWithoutHashing(element);
+          return;
+        }
+        group.count++;
+      } else {
+        addWithoutHashing(element);
+      }
     }
 
-    boolean remove(E element) {
-      return contents.remove(EQUALITY_WITHOUT_USING_HASH_CODE.wrap(element));
+    private void addWithoutHashing(E element) {
+      for (Group<E> group : groups) {
+        if (Objects.equal(element, group.element)) {
+          group.count++;
+          return;
+        }
+      }
+      Group<E> group = new Group<E>(element);
+      group.count++;
+      groups.add(group);
     }
 
     int totalCopies() {
-      return contents.size();
+      return totalCopies;
     }
 
     boolean isEmpty() {
-      return contents.isEmpty();
+      return groups.isEmpty();
     }
 
     Iterable<Multiset.Entry<?>> entrySet() {
-      return transform(contents.entrySet(), unwrapKey);
+      return transform(
+          groups,
+          new Function<Group<E>, Multiset.Entry<?>>() {
+            @Override
+            public Multiset.Entry<?> apply(Group<E> group) {
+              return immutableEntry(group.element, group.count);
+            }
+          });
     }
 
     String toStringWithBrackets() {
@@ -184,18 +232,289 @@ final class SubjectUtils {
       return withBrackets.substring(1, withBrackets.length() - 1);
     }
 
-    private static final Equivalence<Object> EQUALITY_WITHOUT_USING_HASH_CODE =
-        new Equivalence<Object>() {
-          @Override
-          protected boolean doEquivalent(Object a, Object b) {
-            return Objects.equal(a, b);
+    private static final class Group<E> {
+      @NullableDecl final E element;
+      int count;
+
+      Group(@NullableDecl E element) {
+        this.element = element;
+      }
+    }
+  }
+
+  /** The number of elements of each class that {@link #hashCodeLooksConsistent} checks. */
+  private static final int SAMPLE_SIZE = 32;
+
+  /**
+   * Returns the classes of the non-null {@code elements} whose {@code hashCode} can be trusted to
+   * agree with {@code equals}: those known to implement it correctly and those that pass a
+   * consistency check on a sample of the given elements of that class.
+   */
+  static Set<Class<?>> classesWithTrustedHashCodes(Iterable<?> elements) {
+    Map<Class<?>, List<Object>> samples = new HashMap<>();
+    Set<Class<?>> trusted = new HashSet<>();
+    for (Object element : elements) {
+      if (element == null) {
+        continue;
+      }
+      Class<?> clazz = element.getClass();
+      if (trusted.contains(clazz)) {
+        continue;
+      }
+      if (hasHashCodeConsistentWithEquals(element)) {
+        trusted.add(clazz);
+        continue;
+      }
+      List<Object> sample = samples.get(clazz);
+      if (sample == null) {
+        sample = new ArrayList<>();
+        samples.put(clazz, sample);
+      }
+      if (sample.size() < SAMPLE_SIZE) {
+        sample.add(element);
+      }
+    }
+    for (Map.Entry<Class<?>, List<Object>> entry : samples.entrySet()) {
+      if (hashCodeLooksConsistent(entry.getValue())) {
+        trusted.add(entry.getKey());
+      }
+    }
+    return trusted;
+  }
+
+  /**
+   * Returns true if every element of {@code sample} hashes without throwing and to the same value
+   * each time, if not every element hashes to its identity hash code, and if every pair of equal
+   * elements in it is equal in both directions and has the same hash code.
+   *
+   * <p>The identity check catches the most common way of breaking the contract, overriding {@code
+   * equals} without overriding {@code hashCode}, even when the sample contains no equal pair. It
+   * also rejects classes that override neither, which are then compared by {@code equals} alone.
+   */
+  private static boolean hashCodeLooksConsistent(List<Object> sample) {
+    int[] hashCodes = new int[sample.size()];
+    boolean allIdentityHashCodes = true;
+    try {
+      for (int i = 0; i < sample.size(); i++) {
+        hashCodes[i] = sample.get(i).hashCode();
+        if (sample.get(i).hashCode() != hashCodes[i]) {
+          return false;
+        }
+        if (hashCodes[i] != System.identityHashCode(sample.get(i))) {
+          allIdentityHashCodes = false;
+        }
+      }
+      if (allIdentityHashCodes) {
+        return false;
+      }
+      for (int i = 0; i < sample.size(); i++) {
+        for (int j = i + 1; j < sample.size(); j++) {
+          boolean forward = sample.get(i).equals(sample.get(j));
+          boolean backward = sample.get(j).equals(sample.get(i));
+          if (forward != backward || (forward && hashCodes[i] != hashCodes[j])) {
+            return false;
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if {@code item} is null or if its {@code equals} method is known to accept only
+   * objects whose {@code hashCode} agrees with its own. For such an item, failing to find it in a
+   * hash-based collection proves that no equal element is present.
+   */
+  static boolean hasHashCodeConsistentWithEquals(@NullableDecl Object item) {
+    if (item == null || item instanceof Enum) {
+      return true;
+    }
+    Class<?> clazz = item.getClass();
+    return clazz == String.class
+        || clazz == Integer.class
+        || clazz == Long.class
+        || clazz == Short.class
+        || clazz == Byte.class
+        || clazz == Character.class
+        || clazz == Boolean.class
+        || clazz == Double.class
+        || clazz == Float.class
+        || clazz == BigInteger.class
+        || clazz == BigDecimal.class
+        || clazz == Class.class;
+  }
+
+  /**
+   * A list of elements from which the first element equal to a given object can be removed without
+   * scanning the list. {@link #remove} behaves like {@link List#remove(Object)} on a copy of the
+   * original list, and {@link #remaining} returns what that copy would then contain.
+   *
+   * <p>Matches are located with a hash index. An object that the index fails to match is looked
+   * for with a linear scan, in case its {@code hashCode} is inconsistent with {@code equals},
+   * unless {@link #hasHashCodeConsistentWithEquals} shows that the scan can't succeed. If any of
+   * the elements throws from {@code hashCode}, the index is abandoned and every lookup scans.
+   */
+  static final class HashIndexedList {
+    private final List<?> elements;
+    private final boolean[] removed;
+
+    /** For each index, the next index holding an equal element, or -1 if there is none. */
+    private final int[] nextEqualIndexes;
+
+    /**
+     * For each distinct element, a two-element array holding the first index not yet known to be
+     * removed and the last index of the chain linked through {@link #nextEqualIndexes}. Null if
+     * some element could not be hashed.
+     */
+    @NullableDecl private final Map<Object, int[]> chainsByElement;
+
+    private int removedCount;
+
+    HashIndexedList(List<?> elements) {
+      this.elements = elements;
+      this.removed = new boolean[elements.size()];
+      this.nextEqualIndexes = new int[elements.size()];
+      this.chainsByElement = buildIndex(elements, nextEqualIndexes);
+    }
+
+    @NullableDecl
+    private static Map<Object, int[]> buildIndex(List<?> elements, int[] nextEqualIndexes) {
+      Map<Object, int[]> chains = new HashMap<>();
+      try {
+        for (int i = 0; i < elements.size(); i++) {
+          nextEqualIndexes[i] = -1;
+          Object element = elements.get(i);
+          int[] chain = chains.get(element);
+          if (chain == null) {
+            chains.put(element, new int[] {i, i});
+          } else {
+            nextEqualIndexes[chain[1]] = i;
+            chain[1] = i;
           }
+        }
+      } catch (RuntimeException hashCodeFailure) {
+        // Some element doesn't support hashCode(), so fall back to scanning for everything.
+        return null;
+      }
+      return chains;
+    }
+
+    /**
+     * Removes the first remaining element equal to {@code item}, returning whether there was one.
+     */
+    boolean remove(@NullableDecl Object item) {
+      if (chainsByElement != null) {
+        int[] chain;
+        try {
+          chain = chainsByElement.get(item);
+        } catch (RuntimeException hashCodeFailure) {
+          return removeByScanning(item);
+        }
+        if (chain != null) {
+          int index = chain[0];
+          // Skip any elements that were already removed by removeByScanning.
+          while (index != -1 && removed[index]) {
+            index = nextEqualIndexes[index];
+          }
+          if (index != -1) {
+            markRemoved(index);
+            chain[0] = nextEqualIndexes[index];
+            return true;
+          }
+          chain[0] = -1;
+        }
+        if (hasHashCodeConsistentWithEquals(item)) {
+          return false;
+        }
+      }
+      return removeByScanning(item);
+    }
+
+    private boolean removeByScanning(@NullableDecl Object item) {
+      for (int i = 0; i < elements.size(); i++) {
+        if (!removed[i] && Objects.equal(item, elements.get(i))) {
+          markRemoved(i);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void markRemoved(int index) {
+      removed[index] = true;
+      removedCount++;
+    }
 
-          @Override
-          protected int doHash(Object o) {
-            return 0; // slow but hopefully not much worse than what we get with a flat list
+    boolean isEmpty() {
+      return removedCount == elements.size();
+    }
+
+    /** Returns the elements that have not been removed, in their original order. */
+    List<Object> remaining() {
+      List<Object> remaining = new ArrayList<>(elements.size() - removedCount);
+      for (int i = 0; i < elements.size(); i++) {
+        if (!removed[i]) {
+          remaining.add(elements.get(i));
+        }
+      }
+      return remaining;
+    }
+  }
+
+  /**
+   * A list of elements in which an object can be found without scanning the list. {@link #indexOf}
+   * behaves like {@link List#indexOf}.
+   *
+   * <p>An object is looked up in a hash index if {@link #hasHashCodeConsistentWithEquals} or the
+   * given trusted classes show that its {@code hashCode} agrees with {@code equals}. Any other
+   * object is looked for with a linear scan. If any of the elements throws from {@code hashCode},
+   * the index is abandoned and every lookup scans.
+   */
+  static final class SearchableList {
+    private final List<?> elements;
+    private final Set<Class<?>> trustedClasses;
+
+    /** The first index of each distinct element, or null if some element could not be hashed. */
+    @NullableDecl private final Map<Object, Integer> firstIndexes;
+
+    SearchableList(List<?> elements, Set<Class<?>> trustedClasses) {
+      this.elements = elements;
+      this.trustedClasses = trustedClasses;
+      this.firstIndexes = buildIndex(elements);
+    }
+
+    @NullableDecl
+    private static Map<Object, Integer> buildIndex(List<?> elements) {
+      Map<Object, Integer> firstIndexes = new HashMap<>();
+      try {
+        for (int i = 0; i < elements.size(); i++) {
+          Object element = elements.get(i);
+          if (!firstIndexes.containsKey(element)) {
+            firstIndexes.put(element, i);
           }
-        };
+        }
+      } catch (RuntimeException hashCodeFailure) {
+        return null;
+      }
+      return firstIndexes;
+    }
+
+    /** Returns the index of the first element equal to {@code item}, or -1 if there is none. */
+    int indexOf(@NullableDecl Object item) {
+      if (firstIndexes != null
+          && (hasHashCodeConsistentWithEquals(item)
+              || trustedClasses.contains(item.getClass()))) {
+        try {
+          Integer index = firstIndexes.get(item);
+          return index == null ? -1 : index;
+        } catch (RuntimeException hashCodeFailure) {
+          // The sample didn't include this item, but its hashCode() throws. Fall back to scanning.
+        }
+      }
+      return elements.indexOf(item);
+    }
   }
 
   /**
@@ -208,11 +527,11 @@ final class SubjectUtils {
    * elements and even to output different elements on different lines.
    */
   static final class DuplicateGroupedAndTyped {
-    final NonHashingMultiset<?> valuesAndMaybeTypes;
+    final GroupingMultiset<?> valuesAndMaybeTypes;
     final Optional<String> homogeneousTypeToDisplay;
 
     DuplicateGroupedAndTyped(
-        NonHashingMultiset<?> valuesAndMaybeTypes, Optional<String> homogeneousTypeToDisplay) {
+        GroupingMultiset<?> valuesAndMaybeTypes, Optional<String> homogeneousTypeToDisplay) {
       this.valuesAndMaybeTypes = valuesAndMaybeTypes;
       this.homogeneousTypeToDisplay = homogeneousTypeToDisplay;
     }
@@ -20,6 +20,7 @@ import static java.lang.Float.parseFloat;
 import static jsinterop.annotations.JsPackage.GLOBAL;
 
 import com.google.common.collect.ImmutableList;
+import java.util.List;
 import jsinterop.annotations.JsProperty;
 import jsinterop.annotations.JsType;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
@@ -128,6 +129,13 @@ final class Platform {
     }
   }
 
+  /** Runs the given tasks. There are no threads under GWT, so this runs them one by one. */
+  static void runConcurrently(List<? extends Runnable> tasks) {
+    for (Runnable task : tasks) {
+      task.run();
+    }
+  }
+
   /** Tests if current platform is Android which is always false. */
   static boolean isAndroid() {
     return false;
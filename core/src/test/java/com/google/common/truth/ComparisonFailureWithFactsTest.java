@@ -265,6 +265,38 @@ public class ComparisonFailureWithFactsTest {
         Joiner.on('\n').join("@@ -18,3 +18,4 @@", " a", " a", " a", "+"));
   }
 
+  @GwtIncompatible
+  @Test
+  public void formatDiffMultipleHunks() {
+    runFormatTest(
+        "a\n" + repeat("b\n", 50) + "c\n" + repeat("d\n", 50) + "e",
+        "x\n" + repeat("b\n", 50) + "c\n" + repeat("d\n", 50) + "y",
+        Joiner.on('\n')
+            .join(
+                "@@ -1,4 +1,4 @@",
+                "-a",
+                "+x",
+                " b",
+                " b",
+                " b",
+                "@@ -100,4 +100,4 @@",
+                " d",
+                " d",
+                " d",
+                "-e",
+                "+y"));
+  }
+
+  @GwtIncompatible
+  @Test
+  public void formatDiffMixedNewlineStylesInContext() {
+    runFormatTest(
+        repeat("a\r\n", 50) + "b\r\n" + repeat("c\n", 50),
+        repeat("a\n", 50) + "x\n" + repeat("c\r\n", 50),
+        Joiner.on('\n')
+            .join("@@ -48,7 +48,7 @@", " a", " a", " a", "-b", "+x", " c", " c", " c"));
+  }
+
   @GwtIncompatible
   @Test
   public void testSerialization_ComparisonFailureWithFacts() {
@@ -15,6 +15,7 @@
  */
 package com.google.common.truth;
 
+import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.TruthJUnit.assume;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
@@ -23,6 +24,8 @@ import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static org.junit.Assert.fail;
 
+import com.google.common.io.Files;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -214,6 +217,88 @@ public class ExpectTest {
     thrown.expectMessage("1000 expectations failed:");
   }
 
+  @Test
+  public void failuresFromOtherThreadsAreNumberedInArrivalOrder() throws Exception {
+    ExecutorService executor = newSingleThreadExecutor();
+    expect.fail("first");
+    executor
+        .submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                expect.fail("second");
+              }
+            })
+        .get();
+    executor.shutdown();
+    expect.fail("third");
+    thrown.expectMessage("1. first");
+    thrown.expectMessage("2. second");
+    thrown.expectMessage("3. third");
+  }
+
+  @Test
+  public void reportOmitsFailuresBeyondLimit() throws Throwable {
+    System.setProperty("com.google.common.truth.expect.max_reported_failures", "2");
+    try {
+      String message = failingTestMessage(Expect.create(), "a", "b", "c", "d", "c", "e");
+      assertThat(message).startsWith("6 expectations failed:\n  1. ");
+      assertThat(message).contains("\n  2. b\n");
+      assertThat(message)
+          .contains(
+              "\n     ... 3 more expectations failed but aren't shown. Most common messages:\n"
+                  + "     2x c\n"
+                  + "     1x d\n"
+                  + "  6. e\n");
+    } finally {
+      System.clearProperty("com.google.common.truth.expect.max_reported_failures");
+    }
+  }
+
+  @Test
+  public void fullReportIsAppendedToFile() throws Throwable {
+    File file = File.createTempFile("ExpectTest", ".txt");
+    file.deleteOnExit();
+    System.setProperty("com.google.common.truth.expect.max_reported_failures", "0");
+    System.setProperty("com.google.common.truth.expect.full_report_file", file.getPath());
+    try {
+      String message = failingTestMessage(Expect.create(), "a", "b", "c");
+      assertThat(message).contains("... 2 more expectations failed but aren't shown");
+      assertThat(message).endsWith("The full report was appended to " + file.getAbsolutePath());
+
+      String report = Files.asCharSource(file, UTF_8).read();
+      assertThat(report).contains("3 expectations failed:");
+      assertThat(report).contains("1. a");
+      assertThat(report).contains("2. b");
+      assertThat(report).contains("3. c");
+    } finally {
+      System.clearProperty("com.google.common.truth.expect.max_reported_failures");
+      System.clearProperty("com.google.common.truth.expect.full_report_file");
+    }
+  }
+
+  /** Runs a test that fails the given expectations on {@code expect}, and returns its message. */
+  private static String failingTestMessage(final Expect expect, final String... failures)
+      throws Throwable {
+    Statement test =
+        expect.apply(
+            new Statement() {
+              @Override
+              public void evaluate() {
+                for (String failure : failures) {
+                  expect.fail(failure);
+                }
+              }
+            },
+            Description.EMPTY);
+    try {
+      test.evaluate();
+    } catch (AssertionError expected) {
+      return expected.getMessage();
+    }
+    throw new AssertionError("test should have failed");
+  }
+
   @Test
   public void failWhenCallingThatAfterTest() {
     ExecutorService executor = newSingleThreadExecutor();
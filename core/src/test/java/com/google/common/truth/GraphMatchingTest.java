@@ -16,6 +16,7 @@
 package com.google.common.truth;
 
 import static com.google.common.truth.GraphMatching.maximumCardinalityBipartiteMatching;
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
 import static org.junit.Assert.fail;
 
@@ -153,6 +154,52 @@ public final class GraphMatchingTest {
     }
   }
 
+  @Test
+  public void maximumCardinalityBipartiteMatching_indexed_empty() {
+    assertThat(maximumCardinalityBipartiteMatching(new int[] {0}, new int[0], 0)).isEmpty();
+  }
+
+  @Test
+  public void maximumCardinalityBipartiteMatching_indexed_vertexWithoutEdges() {
+    // LHS vertex 0 has no edges; LHS vertex 1 has edges to RHS vertices 1 and 0.
+    assertThat(maximumCardinalityBipartiteMatching(new int[] {0, 0, 2}, new int[] {1, 0}, 2))
+        .asList()
+        .containsExactly(-1, 1)
+        .inOrder();
+  }
+
+  @Test
+  public void maximumCardinalityBipartiteMatching_indexed_sameAsMultimap() {
+    Random rng = new Random(0xba5eba11);
+    for (int i = 0; i < 200; i++) {
+      int lhsSize = 1 + rng.nextInt(20);
+      int rhsSize = 1 + rng.nextInt(20);
+      double probability = rng.nextDouble() * 0.5;
+      ImmutableListMultimap.Builder<Integer, Integer> edges = ImmutableListMultimap.builder();
+      int[] edgeStarts = new int[lhsSize + 1];
+      int[] edgeTargets = new int[lhsSize * rhsSize];
+      int edgeCount = 0;
+      for (int lhs = 0; lhs < lhsSize; lhs++) {
+        for (int rhs = 0; rhs < rhsSize; rhs++) {
+          if (rng.nextDouble() < probability) {
+            edges.put(lhs, rhs);
+            edgeTargets[edgeCount++] = rhs;
+          }
+        }
+        edgeStarts[lhs + 1] = edgeCount;
+      }
+      ImmutableBiMap<Integer, Integer> expected =
+          maximumCardinalityBipartiteMatching(edges.build());
+      int[] actual = maximumCardinalityBipartiteMatching(edgeStarts, edgeTargets, rhsSize);
+      for (int lhs = 0; lhs < lhsSize; lhs++) {
+        Integer expectedRhs = expected.get(lhs);
+        assertWithMessage("RHS vertex matched to LHS vertex %s in graph %s", lhs, edges.build())
+            .that(actual[lhs])
+            .isEqualTo(expectedRhs == null ? -1 : expectedRhs);
+      }
+    }
+  }
+
   /** Representation of a bipartite graph to be used for testing. */
   private static class TestInstance {
 
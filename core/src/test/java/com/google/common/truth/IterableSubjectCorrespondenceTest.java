@@ -16,6 +16,7 @@
 package com.google.common.truth;
 
 import static com.google.common.base.Functions.identity;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Collections2.permutations;
 import static com.google.common.truth.Correspondence.tolerance;
 import static com.google.common.truth.ExpectFailure.assertThat;
@@ -33,8 +34,10 @@ import static com.google.common.truth.TestCorrespondences.WITHIN_10_OF;
 import static com.google.common.truth.Truth.assertThat;
 import static java.util.Arrays.asList;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.truth.TestCorrespondences.Record;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
@@ -546,6 +549,129 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
         .startsWith("compare(null, ABC) threw java.lang.NullPointerException");
   }
 
+  @Test
+  public void comparingInParallel_containsExactlyElementsIn_successOutOfOrder() {
+    ImmutableList.Builder<Integer> expected = ImmutableList.builder();
+    ImmutableList.Builder<String> actual = ImmutableList.builder();
+    for (int i = 0; i < 1000; i++) {
+      expected.add(i);
+      actual.add("+" + (999 - i));
+    }
+    assertThat(actual.build())
+        .comparingElementsUsing(STRING_PARSES_TO_INTEGER_CORRESPONDENCE)
+        .comparingInParallel()
+        .containsExactlyElementsIn(expected.build());
+  }
+
+  @Test
+  public void comparingInParallel_containsExactlyElementsIn_handlesExceptions() {
+    ImmutableList<String> expected = ImmutableList.of("ABC", "DEF", "GHI", "JKL");
+    // CASE_INSENSITIVE_EQUALITY.compare throws on the null actual element.
+    List<String> actual = asList(null, "xyz", "abc", "def");
+    expectFailure
+        .whenTesting()
+        .that(actual)
+        .comparingElementsUsing(CASE_INSENSITIVE_EQUALITY)
+        .comparingInParallel()
+        .containsExactlyElementsIn(expected);
+    assertFailureKeys(
+        "Not true that <[null, xyz, abc, def]> contains exactly one element that "
+            + "equals (ignoring case) each element of <[ABC, DEF, GHI, JKL]>. "
+            + "It is missing an element that equals (ignoring case) each of <[GHI, JKL]>"
+            + " and has unexpected elements <[null, xyz]>",
+        "additionally, one or more exceptions were thrown while comparing elements",
+        "first exception");
+    assertThatFailure()
+        .factValue("first exception")
+        .startsWith("compare(null, ABC) threw java.lang.NullPointerException");
+  }
+
+  @Test
+  public void comparingInParallel_containsExactlyElementsIn_reportsFirstExceptionInOrder() {
+    // Only the first exception is reported. Even though the elements are compared concurrently,
+    // that should be the first one that comparing them in order would have found.
+    ImmutableList.Builder<Integer> elements = ImmutableList.builder();
+    for (int i = 0; i < 1000; i++) {
+      elements.add(i);
+    }
+    Correspondence<Integer, Integer> throwingOnSomeElements =
+        Correspondence.from(
+            new Correspondence.BinaryPredicate<Integer, Integer>() {
+              @Override
+              public boolean apply(Integer actual, Integer expected) {
+                if (actual % 100 == 99) {
+                  throw new IllegalStateException("actual was " + actual);
+                }
+                return actual.equals(expected);
+              }
+            },
+            "is equal to");
+    expectFailure
+        .whenTesting()
+        .that(elements.build().reverse())
+        .comparingElementsUsing(throwingOnSomeElements)
+        .comparingInParallel()
+        .containsExactlyElementsIn(elements.build());
+    assertThatFailure()
+        .factValue("first exception")
+        .startsWith("compare(999, 0) threw java.lang.IllegalStateException: actual was 999");
+  }
+
+  @Test
+  public void comparingInParallel_containsExactlyElementsIn_sameMessageAsSequential() {
+    ImmutableList.Builder<Integer> elements = ImmutableList.builder();
+    for (int i = 0; i < 1000; i++) {
+      elements.add(i);
+    }
+    // The message includes the stack trace of the first exception, and of its cause, which isn't
+    // truncated. Comparing in parallel must not take those from another thread.
+    Correspondence<Integer, Integer> throwingOnSomeElements =
+        Correspondence.from(
+            new Correspondence.BinaryPredicate<Integer, Integer>() {
+              @Override
+              public boolean apply(Integer actual, Integer expected) {
+                if (actual % 100 == 99) {
+                  throw new IllegalStateException(
+                      "actual was " + actual, new IllegalArgumentException("cause"));
+                }
+                return actual.equals(expected);
+              }
+            },
+            "is equal to");
+    List<String> messages = new ArrayList<>();
+    for (boolean inParallel : new boolean[] {false, true}) {
+      messages.add(
+          containsExactlyFailure(
+                  elements.build().reverse(), elements.build(), throwingOnSomeElements, inParallel)
+              .getMessage());
+    }
+    assertThat(messages.get(1)).isEqualTo(messages.get(0));
+  }
+
+  /**
+   * Returns the failure of a {@code containsExactlyElementsIn} assertion, comparing either
+   * sequentially or in parallel from the same line, so that the stack traces in the messages can
+   * match.
+   */
+  private static AssertionError containsExactlyFailure(
+      final List<Integer> actual,
+      final List<Integer> expected,
+      final Correspondence<Integer, Integer> correspondence,
+      final boolean inParallel) {
+    return ExpectFailure.expectFailure(
+        new ExpectFailure.StandardSubjectBuilderCallback() {
+          @Override
+          public void invokeAssertion(StandardSubjectBuilder whenTesting) {
+            IterableSubject.UsingCorrespondence<Integer, Integer> assertion =
+                whenTesting.that(actual).comparingElementsUsing(correspondence);
+            if (inParallel) {
+              assertion = assertion.comparingInParallel();
+            }
+            assertion.containsExactlyElementsIn(expected);
+          }
+        });
+  }
+
   @Test
   public void containsExactlyElementsIn_handlesExceptions_alwaysFails() {
     List<String> expected = asList("ABC", "DEF", "GHI", null);
@@ -749,6 +875,185 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
         .containsExactlyElementsIn(expected);
   }
 
+  @Test
+  public void displayingDiffsPairedBy_containsExactlyElementsIn_passingOutOfOrder() {
+    ImmutableList<Record> expected =
+        ImmutableList.of(
+            Record.create(1, 100),
+            Record.create(2, 200),
+            Record.create(3, 300),
+            Record.createWithoutId(900));
+    ImmutableList<Record> actual =
+        ImmutableList.of(
+            Record.createWithoutId(905),
+            Record.create(3, 303),
+            Record.create(2, 202),
+            Record.create(1, 101));
+    assertThat(actual)
+        .comparingElementsUsing(RECORDS_EQUAL_WITH_SCORE_TOLERANCE_10)
+        .displayingDiffsPairedBy(RECORD_ID)
+        .containsExactlyElementsIn(expected);
+    expectFailure
+        .whenTesting()
+        .that(actual)
+        .comparingElementsUsing(RECORDS_EQUAL_WITH_SCORE_TOLERANCE_10)
+        .displayingDiffsPairedBy(RECORD_ID)
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+    assertFailureKeys(
+        "contents match, but order was wrong",
+        "comparing contents by testing that each element has the same id as and a score is "
+            + "within 10 of an expected value",
+        "expected",
+        "but was");
+  }
+
+  @Test
+  public void displayingDiffsPairedBy_containsExactlyElementsIn_passingAcrossKeys() {
+    // The key function only affects the failure message, so 1.05 and 1.0 correspond even though
+    // their keys differ.
+    ImmutableList<Double> expected = ImmutableList.of(1.0, 2.0, 3.0);
+    ImmutableList<Double> actual = ImmutableList.of(3.0, 2.0, 1.05);
+    assertThat(actual)
+        .comparingElementsUsing(tolerance(0.1))
+        .displayingDiffsPairedBy(identity())
+        .containsExactlyElementsIn(expected);
+  }
+
+  @Test
+  public void withKeyHint_containsExactlyElementsIn_successOutOfOrder() {
+    ImmutableList.Builder<Record> expected = ImmutableList.builder();
+    ImmutableList.Builder<Record> actual = ImmutableList.builder();
+    for (int i = 0; i < 100; i++) {
+      expected.add(Record.create(i, 100 + i));
+      actual.add(Record.create(99 - i, 104 + 99 - i));
+    }
+    assertThat(actual.build())
+        .comparingElementsUsing(
+            RECORDS_EQUAL_WITH_SCORE_TOLERANCE_10.withKeyHint(RECORD_ID, RECORD_ID))
+        .containsExactlyElementsIn(expected.build());
+  }
+
+  @Test
+  public void withKeyHint_containsExactlyElementsIn_failure() {
+    ImmutableList<Record> expected =
+        ImmutableList.of(
+            Record.create(1, 100),
+            Record.create(2, 200),
+            Record.create(3, 300),
+            Record.createWithoutId(900));
+    ImmutableList<Record> actual =
+        ImmutableList.of(
+            Record.create(1, 100),
+            Record.create(2, 211),
+            Record.create(3, 303),
+            Record.createWithoutId(999));
+    expectFailure
+        .whenTesting()
+        .that(actual)
+        .comparingElementsUsing(
+            RECORDS_EQUAL_WITH_SCORE_TOLERANCE_10.withKeyHint(RECORD_ID, RECORD_ID))
+        .containsExactlyElementsIn(expected);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[1/100, 2/211, 3/303, none/999]> contains exactly one element that has "
+                + "the same id as and a score is within 10 of each element of "
+                + "<[1/100, 2/200, 3/300, none/900]>. It is missing an element that has the same "
+                + "id as and a score is within 10 of each of <[2/200, none/900]> and has "
+                + "unexpected elements <[2/211, none/999]>");
+  }
+
+  @Test
+  public void withKeyHint_containsExactlyElementsIn_handlesKeyFunctionExceptions() {
+    // RECORD_ID throws on null, so the null must be compared against every expected element.
+    List<Record> expected = asList(Record.create(1, 100), Record.create(2, 200), null);
+    List<Record> actual = asList(Record.create(2, 201), null, Record.create(1, 101));
+    assertThat(actual)
+        .comparingElementsUsing(
+            RECORDS_EQUAL_WITH_SCORE_TOLERANCE_10_NO_DIFF.withKeyHint(RECORD_ID, RECORD_ID))
+        .containsExactlyElementsIn(expected);
+  }
+
+  private static final Function<String, Integer> STRING_LENGTH =
+      new Function<String, Integer>() {
+        @Override
+        public Integer apply(String input) {
+          return input.length();
+        }
+      };
+
+  private static final Correspondence<String, String> CASE_INSENSITIVE_EQUALITY_OF_SAME_LENGTH =
+      Correspondence.from(
+          new Correspondence.BinaryPredicate<String, String>() {
+            @Override
+            public boolean apply(String actual, String expected) {
+              checkArgument(actual.length() == expected.length(), "lengths differ");
+              return actual.equalsIgnoreCase(expected);
+            }
+          },
+          "equals (ignoring case)");
+
+  @Test
+  public void withKeyHint_containsExactlyElementsIn_skipsComparisonsAcrossKeys() {
+    // Comparing strings of different lengths throws, but the key hint promises that they can't
+    // correspond, so they are never compared and the assertion passes.
+    ImmutableList<String> expected = ImmutableList.of("ABC", "DE", "F");
+    ImmutableList<String> actual = ImmutableList.of("f", "de", "abc");
+    assertThat(actual)
+        .comparingElementsUsing(
+            CASE_INSENSITIVE_EQUALITY_OF_SAME_LENGTH.withKeyHint(STRING_LENGTH, STRING_LENGTH))
+        .containsExactlyElementsIn(expected);
+    assertThat(actual)
+        .comparingElementsUsing(
+            CASE_INSENSITIVE_EQUALITY_OF_SAME_LENGTH.withKeyHint(STRING_LENGTH, STRING_LENGTH))
+        .containsAtLeastElementsIn(ImmutableList.of("DE", "ABC"));
+  }
+
+  @Test
+  public void displayingDiffsPairedBy_containsExactlyElementsIn_comparesAcrossKeys() {
+    // Unlike a key hint, pairing keys make no promise, so every pair is compared and the exception
+    // fails the assertion.
+    ImmutableList<String> expected = ImmutableList.of("ABC", "DE", "F");
+    ImmutableList<String> actual = ImmutableList.of("f", "de", "abc");
+    expectFailure
+        .whenTesting()
+        .that(actual)
+        .comparingElementsUsing(CASE_INSENSITIVE_EQUALITY_OF_SAME_LENGTH)
+        .displayingDiffsPairedBy(STRING_LENGTH)
+        .containsExactlyElementsIn(expected);
+    assertFailureKeys(
+        "one or more exceptions were thrown while comparing elements",
+        "first exception",
+        "comparing contents by testing that each element equals (ignoring case) an expected value",
+        "expected",
+        "but was");
+    assertThatFailure()
+        .factValue("first exception")
+        .startsWith("compare(f, ABC) threw java.lang.IllegalArgumentException: lengths differ");
+  }
+
+  @Test
+  public void transforming_containsExactlyElementsIn_successOutOfOrder() {
+    ImmutableList.Builder<Integer> expected = ImmutableList.builder();
+    ImmutableList.Builder<String> actual = ImmutableList.builder();
+    for (int i = 0; i < 100; i++) {
+      expected.add(i);
+      actual.add(Integer.toString(99 - i));
+    }
+    assertThat(actual.build())
+        .comparingElementsUsing(
+            Correspondence.<String, Integer>transforming(
+                new Function<String, Integer>() {
+                  @Override
+                  public Integer apply(String actual) {
+                    return Integer.valueOf(actual);
+                  }
+                },
+                "parses to"))
+        .containsExactlyElementsIn(expected.build());
+  }
+
   @Test
   public void displayingDiffsPairedBy_containsExactlyElementsIn_notUnique() {
     // The missing elements here are not uniquely keyed by the key function, so the key function
@@ -1204,6 +1509,32 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
                 + "corresponds to <none/999> (without matching keys)");
   }
 
+  @Test
+  public void displayingElementsPairedBy_containsAllIn_passingOutOfOrder() {
+    ImmutableList<Record> expected =
+        ImmutableList.of(Record.create(1, 100), Record.create(2, 200), Record.createWithoutId(999));
+    ImmutableList<Record> actual =
+        ImmutableList.of(
+            Record.createWithoutId(990),
+            Record.create(3, 303),
+            Record.create(2, 211),
+            Record.create(2, 202),
+            Record.create(1, 101));
+    expectFailure
+        .whenTesting()
+        .that(actual)
+        .comparingElementsUsing(RECORDS_EQUAL_WITH_SCORE_TOLERANCE_10)
+        .displayingDiffsPairedBy(RECORD_ID)
+        .containsAtLeastElementsIn(expected)
+        .inOrder();
+    assertFailureKeys(
+        "required elements were all found, but order was wrong",
+        "comparing contents by testing that each element has the same id as and a score is "
+            + "within 10 of an expected value",
+        "expected order for required elements",
+        "but was");
+  }
+
   @Test
   public void displayingElementsPairedBy_containsAllIn_notUnique() {
     ImmutableList<Record> expected =
@@ -22,7 +22,9 @@ import static org.junit.Assert.fail;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -444,6 +446,41 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
     assertThat(asList(1, 2, 3)).containsAtLeastElementsIn(asList(1, 2));
   }
 
+  @Test
+  public void iterableContainsAtLeastElementsInWithManyElements() {
+    List<Integer> actual = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      actual.add(i % 100);
+      if (i % 2 == 0) {
+        expected.add(i % 100);
+      }
+    }
+    assertThat(actual).containsAtLeastElementsIn(expected).inOrder();
+
+    Collections.reverse(expected);
+    assertThat(actual).containsAtLeastElementsIn(expected);
+    expectFailureWhenTestingThat(actual).containsAtLeastElementsIn(expected).inOrder();
+    assertFailureKeys(
+        "required elements were all found, but order was wrong",
+        "expected order for required elements",
+        "but was");
+  }
+
+  @Test
+  public void iterableContainsAtLeastElementsInWithManyElementsMissingDuplicates() {
+    List<Integer> actual = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      actual.add(i);
+      expected.add(9999 - i);
+    }
+    expected.add(5000);
+    expected.add(5000);
+    expectFailureWhenTestingThat(actual).containsAtLeastElementsIn(expected);
+    assertFailureValue("missing (2)", "5000 [2 copies]");
+  }
+
   @Test
   public void iterableContainsAllInIterable() {
     assertThat(asList(1, 2, 3)).containsAllIn(asList(1, 2));
@@ -528,6 +565,65 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
     expectFailureWhenTestingThat(asList(1, 2, 3)).containsNoneIn(new Integer[] {1, 2, 4});
   }
 
+  @Test
+  public void iterableContainsNoneInWithManyElements() {
+    List<Integer> actual = new ArrayList<>();
+    List<Integer> excluded = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      actual.add(i);
+      excluded.add(i + 1000);
+    }
+    assertThat(actual).containsNoneIn(excluded);
+
+    excluded.add(999);
+    excluded.add(0);
+    expectFailureWhenTestingThat(actual).containsNoneIn(excluded);
+    assertFailureValue("but contained", "[999, 0]");
+  }
+
+  @Test
+  public void iterableContainsNoneInWithFewerActualThanExcludedElements() {
+    List<Integer> excluded = new ArrayList<>();
+    for (int i = 1000; i > 0; i--) {
+      excluded.add(i);
+    }
+    assertThat(asList(-1, -2, -3, -4, -5)).containsNoneIn(excluded);
+
+    expectFailureWhenTestingThat(asList(-1, 1, 0, 5, 5, 1000)).containsNoneIn(excluded);
+    assertFailureValue("but contained", "[1000, 5, 1]");
+  }
+
+  @Test
+  public void iterableContainsNoneInWithManyElementsWithInconsistentHashCodes() {
+    List<InconsistentHashCode> actual = new ArrayList<>();
+    List<InconsistentHashCode> excluded = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      actual.add(new InconsistentHashCode("a" + i));
+      excluded.add(new InconsistentHashCode("b" + i));
+    }
+    assertThat(actual).containsNoneIn(excluded);
+
+    excluded.add(new InconsistentHashCode("a50"));
+    expectFailureWhenTestingThat(actual).containsNoneIn(excluded);
+    assertFailureValue("but contained", "[a50]");
+  }
+
+  @Test
+  public void iterableContainsAnyInWithManyElements() {
+    List<Integer> actual = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      actual.add(i);
+      expected.add(i + 1000);
+    }
+    expectFailureWhenTestingThat(actual).containsAnyIn(expected);
+    assertFailureKeys("expected to contain any of", "but was");
+
+    expected.add(500);
+    assertThat(actual).containsAnyIn(expected);
+    assertThat(actual.subList(490, 510)).containsAnyIn(expected);
+  }
+
   @Test
   public void iterableContainsExactlyArray() {
     String[] stringArray = {"a", "b"};
@@ -687,6 +783,84 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
     }
   }
 
+  @Test
+  public void iterableContainsExactlyWithElementsWithInconsistentHashCodes() {
+    InconsistentHashCode a1 = new InconsistentHashCode("a");
+    InconsistentHashCode a2 = new InconsistentHashCode("a");
+    InconsistentHashCode b1 = new InconsistentHashCode("b");
+    InconsistentHashCode b2 = new InconsistentHashCode("b");
+
+    assertThat(asList(a1, b1)).containsExactly(b2, a2);
+
+    expectFailureWhenTestingThat(asList(a1, b1, b2)).containsExactly(b2, a2, a1);
+    assertFailureValue("missing (1)", "a");
+    assertFailureValue("unexpected (1)", "b");
+  }
+
+  @Test
+  public void iterableContainsExactlyGroupsDuplicatesWithInconsistentHashCodes() {
+    InconsistentHashCode a1 = new InconsistentHashCode("a");
+    InconsistentHashCode a2 = new InconsistentHashCode("a");
+    InconsistentHashCode b = new InconsistentHashCode("b");
+
+    expectFailureWhenTestingThat(asList(b)).containsExactly(a1, b, a2);
+    assertFailureValue("missing (2)", "a [2 copies]");
+  }
+
+  @Test
+  public void iterableContainsExactlyGroupsManyDuplicatesInOrder() {
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      expected.add(i % 1000);
+    }
+
+    expectFailureWhenTestingThat(asList(-1)).containsExactlyElementsIn(expected);
+    assertFailureValue("#1 [100 copies]", "0");
+    assertFailureValue("#101 [100 copies]", "1");
+    assertFailureValue("#99901 [100 copies]", "999");
+  }
+
+  /** A value type whose {@code hashCode} (wrongly) differs between equal instances. */
+  private static class InconsistentHashCode {
+    private final String value;
+
+    InconsistentHashCode(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof InconsistentHashCode
+          && ((InconsistentHashCode) other).value.equals(value);
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+      return value;
+    }
+  }
+
+  @Test
+  public void iterableContainsExactlyOutOfOrderWithManyElements() {
+    List<Integer> expected = new ArrayList<>();
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      expected.add(i % 100);
+      actual.add(0, i % 100);
+    }
+    assertThat(actual).containsExactlyElementsIn(expected);
+
+    actual.set(500, -1); // replaces 499 % 100
+    expectFailureWhenTestingThat(actual).containsExactlyElementsIn(expected);
+    assertFailureValue("missing (1)", "99");
+    assertFailureValue("unexpected (1)", "-1");
+  }
+
   @Test
   public void iterableContainsExactlyElementsInInOrderPassesWithEmptyExpectedAndActual() {
     assertThat(ImmutableList.of()).containsExactlyElementsIn(ImmutableList.of()).inOrder();
@@ -16,6 +16,7 @@
 package com.google.common.truth;
 
 import static com.google.common.truth.TestCorrespondences.CASE_INSENSITIVE_EQUALITY;
+import static com.google.common.truth.TestCorrespondences.NULL_SAFE_LOWER_CASE;
 import static com.google.common.truth.TestCorrespondences.STRING_PARSES_TO_INTEGER_CORRESPONDENCE;
 import static com.google.common.truth.TestCorrespondences.WITHIN_10_OF;
 import static com.google.common.truth.Truth.assertThat;
@@ -24,6 +25,7 @@ import static org.junit.Assert.fail;
 
 import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Maps;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -274,6 +276,72 @@ public class MapSubjectTest extends BaseSubjectTestCase {
                 + "<{jan=1, march=3, feb=2}>");
   }
 
+  @Test
+  public void containsExactlySortedMaps() {
+    ImmutableSortedMap<String, Integer> actual = ImmutableSortedMap.of("a", 1, "b", 2, "d", 4);
+    assertThat(actual).containsExactlyEntriesIn(ImmutableSortedMap.copyOf(actual)).inOrder();
+
+    expectFailureWhenTestingThat(actual)
+        .containsExactlyEntriesIn(ImmutableSortedMap.of("a", 1, "b", 3, "c", 3));
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <{a=1, b=2, d=4}> contains exactly <{a=1, b=3, c=3}>. "
+                + "It is missing keys for the following entries: {c=3} "
+                + "and has the following entries with unexpected keys: {d=4} "
+                + "and has the following entries with matching keys but different values: "
+                + "{b=(expected 3 but got 2)}");
+  }
+
+  @Test
+  public void containsExactlySortedMapsWithIncomparableKeys() {
+    expectFailureWhenTestingThat(ImmutableSortedMap.of(1L, "jan"))
+        .containsExactlyEntriesIn(ImmutableSortedMap.of(1, "jan"));
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <{1=jan}> contains exactly <{1=jan}>. "
+                + "It is missing keys for the following entries: {1 (java.lang.Integer)=jan} "
+                + "and has the following entries with unexpected keys: {1 (java.lang.Long)=jan}");
+  }
+
+  @Test
+  public void containsExactlyManyDifferences_notAllShown() {
+    Map<Integer, Integer> actual = new LinkedHashMap<>();
+    Map<Integer, Integer> expected = new LinkedHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      actual.put(i, i);
+      expected.put(i + 95, i + 95);
+    }
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(RenderingBudget.of(3, 1000, 20))
+        .that(actual)
+        .containsExactlyEntriesIn(expected);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .contains(
+            "It is missing keys for the following entries: {100=100, 101=101, 102=102} "
+                + "and has 187 more differences that aren't shown");
+  }
+
+  @Test
+  public void containsAtLeastInOrderWithExtraEntries() {
+    Map<String, Integer> actual = new LinkedHashMap<>();
+    actual.put("a", 1);
+    actual.put("x", 0);
+    actual.put("b", 2);
+    actual.put("c", 3);
+    assertThat(actual).containsAtLeast("a", 1, "b", 2, "c", 3).inOrder();
+
+    expectFailureWhenTestingThat(actual).containsAtLeast("a", 1, "c", 3, "b", 2).inOrder();
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <{a=1, x=0, b=2, c=3}> contains at least these entries in order "
+                + "<{a=1, c=3, b=2}>");
+  }
+
   @Test
   @SuppressWarnings("ShouldHaveEvenArgs")
   public void containsExactlyBadNumberOfArgs() {
@@ -1203,6 +1271,22 @@ public class MapSubjectTest extends BaseSubjectTestCase {
         .startsWith("compare(null, THREE) threw java.lang.NullPointerException");
   }
 
+  @Test
+  public void comparingValuesUsing_containsEntry_withKeyHint_skipsValuesWithOtherKeys() {
+    Map<Integer, String> actual = new LinkedHashMap<>();
+    actual.put(1, null);
+    actual.put(2, "three");
+    expectFailureWhenTestingThat(actual)
+        .comparingValuesUsing(
+            CASE_INSENSITIVE_EQUALITY.withKeyHint(NULL_SAFE_LOWER_CASE, NULL_SAFE_LOWER_CASE))
+        .containsEntry(3, "THREE");
+    // The key hint rules out the null value, so compare(null, THREE) is never called.
+    assertFailureKeys(
+        "Not true that <{1=null, 2=three}> contains an entry with key <3> and a value that equals "
+            + "(ignoring case) <THREE>. However, the following keys are mapped to such values: "
+            + "<[2]>");
+  }
+
   @Test
   public void comparingValuesUsing_doesNotContainEntry_successExcludedKeyHasWrongValues() {
     ImmutableMap<String, String> actual = ImmutableMap.of("abc", "+123", "def", "+456");
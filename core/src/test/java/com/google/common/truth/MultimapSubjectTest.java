@@ -18,6 +18,7 @@ package com.google.common.truth;
 import static com.google.common.base.Strings.lenientFormat;
 import static com.google.common.truth.TestCorrespondences.CASE_INSENSITIVE_EQUALITY;
 import static com.google.common.truth.TestCorrespondences.CASE_INSENSITIVE_EQUALITY_HALF_NULL_SAFE;
+import static com.google.common.truth.TestCorrespondences.NULL_SAFE_LOWER_CASE;
 import static com.google.common.truth.TestCorrespondences.STRING_PARSES_TO_INTEGER_CORRESPONDENCE;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
@@ -1149,6 +1150,21 @@ public class MultimapSubjectTest extends BaseSubjectTestCase {
         .startsWith("compare(null, ZWEI) threw java.lang.NullPointerException");
   }
 
+  @Test
+  public void comparingValuesUsing_containsEntry_withKeyHint_skipsValuesWithOtherKeys() {
+    ListMultimap<Integer, String> actual = LinkedListMultimap.create();
+    actual.put(1, "one");
+    actual.put(2, "two");
+    actual.put(2, null);
+    actual.put(2, "zwei");
+    // Unlike in the test below, the key hint rules out the null value, so compare(null, ZWEI) is
+    // never called and the assertion passes.
+    assertThat(actual)
+        .comparingValuesUsing(
+            CASE_INSENSITIVE_EQUALITY.withKeyHint(NULL_SAFE_LOWER_CASE, NULL_SAFE_LOWER_CASE))
+        .containsEntry(2, "ZWEI");
+  }
+
   @Test
   public void comparingValuesUsing_containsEntry_handlesException_alwaysFails() {
     ListMultimap<Integer, String> actual = LinkedListMultimap.create();
@@ -1320,6 +1336,59 @@ public class MultimapSubjectTest extends BaseSubjectTestCase {
         .containsExactlyEntriesIn(expected);
   }
 
+  @Test
+  public void comparingValuesUsing_containsExactlyEntriesIn_comparesOnlyValuesOfEqualKeys() {
+    ListMultimap<String, Integer> actual = ArrayListMultimap.create();
+    ListMultimap<String, Integer> expected = ArrayListMultimap.create();
+    for (int i = 0; i < 100; i++) {
+      actual.put("key" + i, i);
+      expected.put("key" + (99 - i), 99 - i);
+    }
+    assertThat(actual)
+        .comparingValuesUsing(EQUALITY_THROWING_FOR_UNEQUAL_VALUES)
+        .containsExactlyEntriesIn(expected);
+    assertThat(actual)
+        .comparingValuesUsing(EQUALITY_THROWING_FOR_UNEQUAL_VALUES)
+        .containsAtLeastEntriesIn(expected);
+  }
+
+  /** A correspondence between equal values, which throws if it's asked to compare unequal ones. */
+  private static final Correspondence<Integer, Integer> EQUALITY_THROWING_FOR_UNEQUAL_VALUES =
+      Correspondence.from(
+          new Correspondence.BinaryPredicate<Integer, Integer>() {
+            @Override
+            public boolean apply(Integer actual, Integer expected) {
+              if (!actual.equals(expected)) {
+                throw new IllegalStateException(actual + " was compared with " + expected);
+              }
+              return true;
+            }
+          },
+          "is equal to");
+
+  @Test
+  public void comparingValuesUsing_comparingInParallel_containsExactlyEntriesIn() {
+    ImmutableListMultimap<String, String> actual =
+        ImmutableListMultimap.of("abc", "+123", "def", "+64", "def", "0x40", "def", "+128");
+    assertThat(actual)
+        .comparingValuesUsing(STRING_PARSES_TO_INTEGER_CORRESPONDENCE)
+        .comparingInParallel()
+        .containsExactlyEntriesIn(
+            ImmutableListMultimap.of("def", 64, "def", 128, "def", 64, "abc", 123));
+
+    expectFailureWhenTestingThat(actual)
+        .comparingValuesUsing(STRING_PARSES_TO_INTEGER_CORRESPONDENCE)
+        .comparingInParallel()
+        .containsExactlyEntriesIn(ImmutableListMultimap.of("def", 64, "def", 128, "def", 64));
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <{abc=[+123], def=[+64, 0x40, +128]}> contains exactly one element "
+                + "that has a key that is equal to and a value that parses to the key and value "
+                + "of each element of <[def=64, def=128, def=64]>. It has unexpected elements "
+                + "<[abc=+123]>");
+  }
+
   @Test
   public void comparingValuesUsing_containsExactlyEntriesIn_missingKey() {
     ImmutableListMultimap<String, String> actual =
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link RenderingBudget}. */
+@RunWith(JUnit4.class)
+public class RenderingBudgetTest extends BaseSubjectTestCase {
+  @Test
+  public void valueWithinBudgetUsesToString() {
+    RenderingBudget budget = RenderingBudget.of(3, 100, 2);
+    assertThat(budget.render(asList(1, 2, 3))).isEqualTo("[1, 2, 3]");
+    assertThat(budget.render(ImmutableMultiset.of("a", "a", "b"))).isEqualTo("[a x 2, b]");
+    assertThat(budget.render(null)).isEqualTo("null");
+  }
+
+  @Test
+  public void tooManyElements() {
+    RenderingBudget budget = RenderingBudget.of(3, 100, 2);
+    assertThat(budget.render(asList(1, 2, 3, 4, 5))).isEqualTo("[1, 2, 3, ... (2 more)]");
+    assertThat(budget.render(ImmutableMap.of("a", 1, "b", 2, "c", 3, "d", 4)))
+        .isEqualTo("{a=1, b=2, c=3, ... (1 more)}");
+    assertThat(budget.render(ImmutableMultiset.of("a", "a", "b", "c", "d")))
+        .isEqualTo("[a x 2, b, c, ... (1 more)]");
+    assertThat(budget.render(ImmutableListMultimap.of("a", 1, "a", 2, "b", 3, "c", 4)))
+        .isEqualTo("{a=[1, 2], ... (2 more)}");
+  }
+
+  @Test
+  public void elementsAreCountedAcrossLevels() {
+    // The nested lists count as elements of the outer list, and their contents count, too.
+    RenderingBudget budget = RenderingBudget.of(5, 100, 2);
+    assertThat(budget.render(asList(asList(1, 2), asList(3, 4))))
+        .isEqualTo("[[1, 2], [3, ... (1 more)]]");
+  }
+
+  @Test
+  public void tooDeep() {
+    RenderingBudget budget = RenderingBudget.of(100, 100, 2);
+    assertThat(budget.render(asList(asList(1), asList(asList(2)))))
+        .isEqualTo("[[1], [[...]]]");
+  }
+
+  @Test
+  public void tooManyCharacters() {
+    RenderingBudget budget = RenderingBudget.of(100, 100, 2);
+    String rendered = budget.render(Strings.repeat("x", 1000));
+    assertThat(rendered).hasLength(100);
+    assertThat(rendered).endsWith("x... (truncated from 1000 characters)");
+    assertThat(budget.truncate(rendered)).isSameAs(rendered);
+  }
+
+  @Test
+  public void tooManyCharactersInElements() {
+    RenderingBudget budget = RenderingBudget.of(100, 100, 2);
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      list.add(Strings.repeat("x", 1000));
+    }
+    String rendered = budget.render(list);
+    assertThat(rendered).hasLength(100);
+    assertThat(rendered).startsWith("[xxx");
+    assertThat(rendered).endsWith("x... (truncated)");
+  }
+
+  @Test
+  public void elidedElementsAreNotConvertedToStrings() {
+    Object unprintable =
+        new Object() {
+          @Override
+          public String toString() {
+            throw new AssertionError("should not be printed");
+          }
+        };
+    RenderingBudget budget = RenderingBudget.of(2, 100, 2);
+    assertThat(budget.render(asList(1, 2, unprintable))).isEqualTo("[1, 2, ... (1 more)]");
+  }
+
+  @Test
+  public void selfReference() {
+    List<Object> list = new ArrayList<>();
+    list.add(1);
+    list.add(list);
+    list.add(2);
+    assertThat(RenderingBudget.of(2, 100, 5).render(list))
+        .isEqualTo("[1, (this Collection), ... (1 more)]");
+  }
+
+  @Test
+  public void unlimited() {
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      list.add(i);
+    }
+    assertThat(RenderingBudget.unlimited().render(list)).isEqualTo(list.toString());
+  }
+
+  @Test
+  public void tooSmallCharacterLimit() {
+    try {
+      RenderingBudget.of(10, 10, 10);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void budgetAppliesToActualValueInFailure() {
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(RenderingBudget.of(3, 100, 2))
+        .that(asList(1, 2, 3, 4, 5))
+        .isEmpty();
+    assertFailureValue("but was", "[1, 2, 3, ... (2 more)]");
+  }
+
+  @Test
+  public void defaultBudgetAppliesToLargeActualValue() {
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < 1000000; i++) {
+      list.add(i);
+    }
+    expectFailure.whenTesting().that(list).isEmpty();
+    assertThat(expectFailure.getFailure().getMessage().length()).isLessThan(200000);
+    assertThatFailure().factValue("but was").endsWith("9999, ... (990000 more)]");
+  }
+
+  @Test
+  public void defaultBudgetHasNoCharacterLimit() {
+    String longString = Strings.repeat("x", 200000);
+    expectFailure.whenTesting().that(longString).isEmpty();
+    assertFailureValue("but was", longString);
+  }
+
+  @Test
+  public void defaultBudgetPrintsLongElementsUpToElementLimit() {
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      list.add(Strings.repeat("x", 20));
+    }
+    String rendered = RenderingBudget.defaultBudget().render(list);
+    assertThat(rendered.length()).isGreaterThan(200000);
+    assertThat(rendered).endsWith("x, ... (10000 more)]");
+  }
+
+  @Test
+  public void budgetAppliesToArrays() {
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(RenderingBudget.of(2, 100, 2))
+        .that(new int[] {1, 2, 3})
+        .isEqualTo(new int[] {1, 2});
+    assertFailureValueIndexed("but was", 0, "[1, 2, ... (1 more)]");
+  }
+
+  @Test
+  public void truncatedEqualStringsAreNotReportedAsSameStringRepresentation() {
+    Object a = new ObjectWithLongToString("a");
+    Object b = new ObjectWithLongToString("b");
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(RenderingBudget.of(10, 100, 2))
+        .that(a)
+        .isEqualTo(b);
+    assertThat(expectFailure.getFailure().getMessage())
+        .doesNotContain("same string representation");
+  }
+
+  private static final class ObjectWithLongToString {
+    private final String suffix;
+
+    ObjectWithLongToString(String suffix) {
+      this.suffix = suffix;
+    }
+
+    @Override
+    public String toString() {
+      return Strings.repeat("x", 1000) + suffix;
+    }
+  }
+}
@@ -175,6 +175,26 @@ public class StackTraceCleanerTest extends BaseSubjectTestCase {
             });
   }
 
+  @Test
+  public void framesAreClassifiedTheSameWayEveryTime() {
+    for (int i = 0; i < 2; i++) {
+      Throwable throwable =
+          createThrowableWithStackTrace(
+              "com.google.common.truth.StringSubject",
+              "com.example.MyTest",
+              "org.junit.runners.ParentRunner",
+              "com.example.Main");
+
+      StackTraceCleaner.cleanStackTrace(throwable);
+
+      assertThat(throwable.getStackTrace())
+          .isEqualTo(
+              new StackTraceElement[] {
+                createStackTraceElement("com.example.MyTest"),
+              });
+    }
+  }
+
   @Test
   public void removesTestingAndReflectiveFramesOnBottom() {
     Throwable throwable =
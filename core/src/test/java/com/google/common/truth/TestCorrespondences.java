@@ -17,6 +17,7 @@ package com.google.common.truth;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.base.Ascii;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
@@ -351,6 +352,20 @@ final class TestCorrespondences {
         }
       };
 
+  /**
+   * A key function for {@link String} instances that keys them by their lower-case form, for use
+   * with {@link #CASE_INSENSITIVE_EQUALITY}. The key of a null string is null.
+   */
+  static final Function<String, String> NULL_SAFE_LOWER_CASE =
+      new Function<String, String>() {
+
+        @Override
+        @NullableDecl
+        public String apply(@NullableDecl String str) {
+          return str == null ? null : Ascii.toLowerCase(str);
+        }
+      };
+
   static final Correspondence<Object, Object> EQUALITY =
       Correspondence.from(
           // If we were allowed to use method references, this would be Objects::equal.
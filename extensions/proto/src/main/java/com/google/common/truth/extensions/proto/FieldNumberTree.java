@@ -16,60 +16,76 @@
 
 package com.google.common.truth.extensions.proto;
 
-import com.google.auto.value.AutoValue;
-import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
 import com.google.protobuf.UnknownFieldSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
  * Tree representation of all set field numbers in a message, merging across repeated elements.
  *
- * <p>Sub messages are represented by child {@link FieldNumberTree} objects.
+ * <p>Sub messages are represented by child {@link FieldNumberTree} objects. Trees are immutable,
+ * and all trees without children are the same {@link #empty()} instance.
  *
  * @see FieldScopeImpl#partialScope
  */
 final class FieldNumberTree {
 
-  private static final FieldNumberTree EMPTY = new FieldNumberTree();
+  private static final FieldNumberTree EMPTY =
+      new FieldNumberTree(
+          new int[0],
+          new FieldNumberTree[0],
+          ImmutableMap.<UnknownFieldDescriptor, FieldNumberTree>of());
 
   /** A {@code FieldNumberTree} with no children. */
   static FieldNumberTree empty() {
     return EMPTY;
   }
 
-  @AutoValue
-  abstract static class Key {
-    abstract Optional<Integer> knownFieldNumber();
-
-    abstract Optional<UnknownFieldDescriptor> unknownFieldDescriptor();
-
-    static Key fromFieldDescriptorOrUnknown(FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
-      return fieldDescriptorOrUnknown.fieldDescriptor().isPresent()
-          ? known(fieldDescriptorOrUnknown.fieldDescriptor().get().getNumber())
-          : unknown(fieldDescriptorOrUnknown.unknownFieldDescriptor().get());
-    }
-
-    static Key known(int fieldNumber) {
-      return new AutoValue_FieldNumberTree_Key(
-          Optional.of(fieldNumber), Optional.<UnknownFieldDescriptor>absent());
-    }
-
-    static Key unknown(UnknownFieldDescriptor unknownFieldDescriptor) {
-      return new AutoValue_FieldNumberTree_Key(
-          Optional.<Integer>absent(), Optional.of(unknownFieldDescriptor));
-    }
+  // With comparingExpectedFieldsOnly(), every comparison against an expected message builds a tree
+  // from it, and a correspondence compares each expected message many times, so we remember the
+  // tree of each message for as long as the message itself is around.
+  private static final LoadingCache<Message, FieldNumberTree> messageTrees =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(
+              new CacheLoader<Message, FieldNumberTree>() {
+                @Override
+                public FieldNumberTree load(Message message) {
+                  Node root = new Node();
+                  root.addMessage(message);
+                  return root.build();
+                }
+              });
+
+  // Known fields are looked up by binary search in fieldNumbers, which is sorted, and the child of
+  // fieldNumbers[i] is fieldChildren[i].
+  private final int[] fieldNumbers;
+  private final FieldNumberTree[] fieldChildren;
+  private final ImmutableMap<UnknownFieldDescriptor, FieldNumberTree> unknownFieldChildren;
+
+  private FieldNumberTree(
+      int[] fieldNumbers,
+      FieldNumberTree[] fieldChildren,
+      ImmutableMap<UnknownFieldDescriptor, FieldNumberTree> unknownFieldChildren) {
+    this.fieldNumbers = fieldNumbers;
+    this.fieldChildren = fieldChildren;
+    this.unknownFieldChildren = unknownFieldChildren;
   }
 
-  // Modified only during [factory] construction, never changed afterwards.
-  private final Map<Key, FieldNumberTree> children = Maps.newHashMap();
-
   /** Returns whether this {@code FieldNumberTree} has no children. */
   boolean isEmpty() {
-    return children.isEmpty();
+    return fieldNumbers.length == 0 && unknownFieldChildren.isEmpty();
   }
 
   /**
@@ -78,75 +94,155 @@ final class FieldNumberTree {
    * <p>{@code empty()} if there is none.
    */
   FieldNumberTree child(FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
-    FieldNumberTree child =
-        children.get(Key.fromFieldDescriptorOrUnknown(fieldDescriptorOrUnknown));
+    FieldNumberTree child = childOrNull(fieldDescriptorOrUnknown);
     return child == null ? EMPTY : child;
   }
 
   /** Returns whether this tree has a child for this node. */
   boolean hasChild(FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
-    return children.containsKey(Key.fromFieldDescriptorOrUnknown(fieldDescriptorOrUnknown));
+    return childOrNull(fieldDescriptorOrUnknown) != null;
+  }
+
+  @NullableDecl
+  private FieldNumberTree childOrNull(FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
+    if (fieldDescriptorOrUnknown.fieldDescriptor().isPresent()) {
+      int index =
+          Arrays.binarySearch(
+              fieldNumbers, fieldDescriptorOrUnknown.fieldDescriptor().get().getNumber());
+      return index >= 0 ? fieldChildren[index] : null;
+    }
+    return unknownFieldChildren.get(fieldDescriptorOrUnknown.unknownFieldDescriptor().get());
   }
 
   static FieldNumberTree fromMessage(Message message) {
-    FieldNumberTree tree = new FieldNumberTree();
+    return messageTrees.getUnchecked(message);
+  }
 
-    // Known fields.
-    Map<FieldDescriptor, Object> knownFieldValues = message.getAllFields();
-    for (FieldDescriptor field : knownFieldValues.keySet()) {
-      Key key = Key.known(field.getNumber());
-      FieldNumberTree childTree = new FieldNumberTree();
-      tree.children.put(key, childTree);
+  /**
+   * Returns the tree of all field numbers set in any of the given messages, which is the same as
+   * the tree of their merge.
+   */
+  static FieldNumberTree fromMessages(List<? extends Message> messages) {
+    if (messages.size() == 1) {
+      return fromMessage(messages.get(0));
+    }
+
+    // Rather than merging a tree per message, we add every message to a single tree, so that each
+    // set field costs one lookup no matter how many messages set it.
+    Node root = new Node();
+    for (Message message : messages) {
+      root.addMessage(message);
+    }
+    return root.build();
+  }
 
-      Object fieldValue = knownFieldValues.get(field);
+  /** A node of a {@code FieldNumberTree} under construction. */
+  private static final class Node {
+    // Allocated only once the node has a child of that kind, since most nodes are leaves.
+    @NullableDecl private Map<Integer, Node> fieldChildren;
+    @NullableDecl private Map<UnknownFieldDescriptor, Node> unknownFieldChildren;
+
+    void addMessage(Message message) {
+      // Known fields.
+      Descriptor descriptor = message.getDescriptorForType();
+      if (descriptor.isExtendable()) {
+        // Set extensions aren't among the descriptor's fields, so we ask the message for them.
+        for (FieldDescriptor field : message.getAllFields().keySet()) {
+          addField(message, field);
+        }
+      } else {
+        for (FieldDescriptor field : descriptor.getFields()) {
+          if (field.isRepeated()
+              ? message.getRepeatedFieldCount(field) > 0
+              : message.hasField(field)) {
+            addField(message, field);
+          }
+        }
+      }
+
+      // Unknown fields.
+      addUnknownFieldSet(message.getUnknownFields());
+    }
+
+    private void addField(Message message, FieldDescriptor field) {
+      Node child = fieldChild(field.getNumber());
       if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
         if (field.isRepeated()) {
-          List<?> valueList = (List<?>) fieldValue;
-          for (Object value : valueList) {
-            childTree.merge(fromMessage((Message) value));
+          int count = message.getRepeatedFieldCount(field);
+          for (int i = 0; i < count; i++) {
+            child.addMessage((Message) message.getRepeatedField(field, i));
           }
         } else {
-          childTree.merge(fromMessage((Message) fieldValue));
+          child.addMessage((Message) message.getField(field));
         }
       }
     }
 
-    // Unknown fields.
-    tree.merge(fromUnknownFieldSet(message.getUnknownFields()));
-
-    return tree;
-  }
-
-  private static FieldNumberTree fromUnknownFieldSet(UnknownFieldSet unknownFieldSet) {
-    FieldNumberTree tree = new FieldNumberTree();
-    for (int fieldNumber : unknownFieldSet.asMap().keySet()) {
-      UnknownFieldSet.Field unknownField = unknownFieldSet.asMap().get(fieldNumber);
-      for (UnknownFieldDescriptor unknownFieldDescriptor :
-          UnknownFieldDescriptor.descriptors(fieldNumber, unknownField)) {
-        Key key = Key.unknown(unknownFieldDescriptor);
-        FieldNumberTree childTree = new FieldNumberTree();
-        tree.children.put(key, childTree);
-
-        if (unknownFieldDescriptor.type() == UnknownFieldDescriptor.Type.GROUP) {
-          for (Object group : unknownFieldDescriptor.type().getValues(unknownField)) {
-            childTree.merge(fromUnknownFieldSet((UnknownFieldSet) group));
+    private void addUnknownFieldSet(UnknownFieldSet unknownFieldSet) {
+      for (Map.Entry<Integer, UnknownFieldSet.Field> entry : unknownFieldSet.asMap().entrySet()) {
+        UnknownFieldSet.Field unknownField = entry.getValue();
+        for (UnknownFieldDescriptor unknownFieldDescriptor :
+            UnknownFieldDescriptor.descriptors(entry.getKey(), unknownField)) {
+          Node child = unknownFieldChild(unknownFieldDescriptor);
+          if (unknownFieldDescriptor.type() == UnknownFieldDescriptor.Type.GROUP) {
+            for (Object group : unknownFieldDescriptor.type().getValues(unknownField)) {
+              child.addUnknownFieldSet((UnknownFieldSet) group);
+            }
           }
         }
       }
     }
 
-    return tree;
-  }
+    private Node fieldChild(int fieldNumber) {
+      if (fieldChildren == null) {
+        fieldChildren = Maps.newHashMap();
+      }
+      Node child = fieldChildren.get(fieldNumber);
+      if (child == null) {
+        child = new Node();
+        fieldChildren.put(fieldNumber, child);
+      }
+      return child;
+    }
 
-  /** Adds the other tree onto this one. May destroy {@code other} in the process. */
-  private void merge(FieldNumberTree other) {
-    for (Key key : other.children.keySet()) {
-      FieldNumberTree value = other.children.get(key);
-      if (!this.children.containsKey(key)) {
-        this.children.put(key, value);
-      } else {
-        this.children.get(key).merge(value);
+    private Node unknownFieldChild(UnknownFieldDescriptor unknownFieldDescriptor) {
+      if (unknownFieldChildren == null) {
+        unknownFieldChildren = Maps.newHashMap();
       }
+      Node child = unknownFieldChildren.get(unknownFieldDescriptor);
+      if (child == null) {
+        child = new Node();
+        unknownFieldChildren.put(unknownFieldDescriptor, child);
+      }
+      return child;
+    }
+
+    FieldNumberTree build() {
+      if (fieldChildren == null && unknownFieldChildren == null) {
+        return EMPTY;
+      }
+
+      int[] fieldNumbers = EMPTY.fieldNumbers;
+      FieldNumberTree[] builtFieldChildren = EMPTY.fieldChildren;
+      if (fieldChildren != null) {
+        fieldNumbers = Ints.toArray(fieldChildren.keySet());
+        Arrays.sort(fieldNumbers);
+        builtFieldChildren = new FieldNumberTree[fieldNumbers.length];
+        for (int i = 0; i < fieldNumbers.length; i++) {
+          builtFieldChildren[i] = fieldChildren.get(fieldNumbers[i]).build();
+        }
+      }
+
+      ImmutableMap.Builder<UnknownFieldDescriptor, FieldNumberTree> builtUnknownFieldChildren =
+          ImmutableMap.builder();
+      if (unknownFieldChildren != null) {
+        for (Map.Entry<UnknownFieldDescriptor, Node> entry : unknownFieldChildren.entrySet()) {
+          builtUnknownFieldChildren.put(entry.getKey(), entry.getValue().build());
+        }
+      }
+
+      return new FieldNumberTree(
+          fieldNumbers, builtFieldChildren, builtUnknownFieldChildren.build());
     }
   }
 }
@@ -25,6 +25,7 @@ import com.google.auto.value.AutoValue;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
@@ -62,10 +63,15 @@ abstract class FieldScopeImpl extends FieldScope {
   // Instantiation methods.
   //////////////////////////////////////////////////////////////////////////////////////////////////
 
-  static FieldScope createFromSetFields(Message message) {
+  static FieldScope createFromSetFields(final Message message) {
     return create(
         FieldScopeLogic.partialScope(message),
-        Functions.constant(String.format("FieldScopes.fromSetFields({%s})", message.toString())));
+        new Function<Optional<Descriptor>, String>() {
+          @Override
+          public String apply(Optional<Descriptor> optDescriptor) {
+            return String.format("FieldScopes.fromSetFields({%s})", message);
+          }
+        });
   }
 
   static FieldScope createFromSetFields(Iterable<? extends Message> messages) {
@@ -81,23 +87,23 @@ abstract class FieldScopeImpl extends FieldScope {
         "Cannot create scope from messages with different descriptors: %s",
         getDescriptors(messages));
 
-    Message.Builder builder = null;
+    ImmutableList.Builder<Message> nonNullMessages = ImmutableList.builder();
     for (Message message : messages) {
-      if (message == null) {
-        continue;
-      }
-
-      if (builder != null) {
-        builder.mergeFrom(message);
-      } else {
-        builder = message.toBuilder();
+      if (message != null) {
+        nonNullMessages.add(message);
       }
     }
 
-    Message aggregateMessage = builder.build();
+    // Formatting every message is expensive, and only needed if an assertion fails.
+    final List<Message> messagesToFormat = Lists.newArrayList(messages);
     return create(
-        FieldScopeLogic.partialScope(aggregateMessage),
-        Functions.constant(String.format("FieldScopes.fromSetFields(%s)", formatList(messages))));
+        FieldScopeLogic.partialScope(nonNullMessages.build(), optDescriptor.get()),
+        new Function<Optional<Descriptor>, String>() {
+          @Override
+          public String apply(Optional<Descriptor> optDescriptor) {
+            return String.format("FieldScopes.fromSetFields(%s)", formatList(messagesToFormat));
+          }
+        });
   }
 
   static FieldScope createIgnoringFields(Iterable<Integer> fieldNumbers) {
@@ -169,6 +169,11 @@ abstract class FieldScopeLogic implements FieldScopeLogicContainer<FieldScopeLog
     return false;
   }
 
+  /** Returns whether this is equivalent to {@code FieldScopeLogic.none()}. */
+  boolean isNone() {
+    return false;
+  }
+
   private static final FieldScopeLogic ALL =
       new FieldScopeLogic() {
         @Override
@@ -200,6 +205,11 @@ abstract class FieldScopeLogic implements FieldScopeLogicContainer<FieldScopeLog
             Descriptor rootDescriptor, FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
           return FieldScopeResult.EXCLUDED_RECURSIVELY;
         }
+
+        @Override
+        final boolean isNone() {
+          return true;
+        }
       };
 
   static FieldScopeLogic all() {
@@ -244,13 +254,13 @@ abstract class FieldScopeLogic implements FieldScopeLogicContainer<FieldScopeLog
   }
 
   private static final class RootPartialScopeLogic extends PartialScopeLogic {
-    private final Message message;
+    private final ImmutableList<Message> messages;
     private final Descriptor expectedDescriptor;
 
-    RootPartialScopeLogic(Message message) {
-      super(FieldNumberTree.fromMessage(message));
-      this.message = message;
-      this.expectedDescriptor = message.getDescriptorForType();
+    RootPartialScopeLogic(ImmutableList<Message> messages, Descriptor expectedDescriptor) {
+      super(FieldNumberTree.fromMessages(messages));
+      this.messages = messages;
+      this.expectedDescriptor = expectedDescriptor;
     }
 
     @Override
@@ -270,12 +280,21 @@ abstract class FieldScopeLogic implements FieldScopeLogicContainer<FieldScopeLog
 
     @Override
     public String toString() {
-      return String.format("FieldScopes.fromSetFields(%s)", message);
+      return String.format(
+          "FieldScopes.fromSetFields(%s)", messages.size() == 1 ? messages.get(0) : messages);
     }
   }
 
   static FieldScopeLogic partialScope(Message message) {
-    return new RootPartialScopeLogic(message);
+    return new RootPartialScopeLogic(ImmutableList.of(message), message.getDescriptorForType());
+  }
+
+  /**
+   * Returns the scope of all fields set in any of the given non-null messages, which must all have
+   * the given descriptor.
+   */
+  static FieldScopeLogic partialScope(ImmutableList<Message> messages, Descriptor descriptor) {
+    return new RootPartialScopeLogic(messages, descriptor);
   }
 
   // TODO(user): Performance: Optimize FieldNumbersLogic and FieldDescriptorsLogic for
@@ -29,6 +29,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.truth.Correspondence;
+import com.google.common.truth.extensions.proto.ProtoTruthMessageDifferencer.MessagePlan;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.google.protobuf.Descriptors.Descriptor;
@@ -63,15 +64,81 @@ abstract class FluentEqualityConfig implements FieldScopeLogicContainer<FluentEq
     return DEFAULT_INSTANCE;
   }
 
-  private final LoadingCache<Descriptor, ProtoTruthMessageDifferencer> messageDifferencers =
-      CacheBuilder.newBuilder()
-          .build(
-              new CacheLoader<Descriptor, ProtoTruthMessageDifferencer>() {
-                @Override
-                public ProtoTruthMessageDifferencer load(Descriptor descriptor) {
-                  return ProtoTruthMessageDifferencer.create(FluentEqualityConfig.this, descriptor);
-                }
-              });
+  // The caches of the work done to diff messages under this config. Many configs never diff any
+  // messages, like the intermediate results of chained calls such as ignoringFields(...), so the
+  // caches are only created when they're first used.
+  @NullableDecl private volatile Caches caches;
+
+  private Caches caches() {
+    Caches result = caches;
+    if (result == null) {
+      synchronized (this) {
+        result = caches;
+        if (result == null) {
+          result = new Caches();
+          caches = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /** The caches for a {@link FluentEqualityConfig}. See {@link #caches()}. */
+  private final class Caches {
+    final LoadingCache<Descriptor, ProtoTruthMessageDifferencer> messageDifferencers =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<Descriptor, ProtoTruthMessageDifferencer>() {
+                  @Override
+                  public ProtoTruthMessageDifferencer load(Descriptor descriptor) {
+                    return ProtoTruthMessageDifferencer.create(
+                        FluentEqualityConfig.this, descriptor);
+                  }
+                });
+
+    // Diffing a message calls subScope() for every sub-message field it recurses into, with the
+    // same few arguments over and over again, so we remember the results.
+    final LoadingCache<SubScopeId, FluentEqualityConfig> subScopes =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<SubScopeId, FluentEqualityConfig>() {
+                  @Override
+                  public FluentEqualityConfig load(SubScopeId subScopeId) {
+                    return computeSubScope(
+                        subScopeId.rootDescriptor(), subScopeId.fieldDescriptorOrUnknown());
+                  }
+                });
+
+    // Diffing a message decides how to compare each of its fields under this config, which depends
+    // only on the message type, so we remember the decisions for each type.
+    final LoadingCache<MessagePlanId, MessagePlan> messagePlans =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<MessagePlanId, MessagePlan>() {
+                  @Override
+                  public MessagePlan load(MessagePlanId messagePlanId) {
+                    return new MessagePlan(
+                        FluentEqualityConfig.this,
+                        messagePlanId.rootDescriptor(),
+                        messagePlanId.descriptor());
+                  }
+                });
+
+    // A correspondence compares each expected message with many actual messages, each time through
+    // a config made for just that expected message, so we remember those configs while they're in
+    // use. The values are weak too, since each config refers to its expected message.
+    final LoadingCache<Message, FluentEqualityConfig> expectedMessageConfigs =
+        CacheBuilder.newBuilder()
+            .weakKeys()
+            .weakValues()
+            .build(
+                new CacheLoader<Message, FluentEqualityConfig>() {
+                  @Override
+                  public FluentEqualityConfig load(Message message) {
+                    return withExpectedMessages(ImmutableList.of(message));
+                  }
+                });
+  }
 
   //////////////////////////////////////////////////////////////////////////////////////////////////
   // Storage of AbstractProtoFluentEquals configuration data.
@@ -108,6 +175,27 @@ abstract class FluentEqualityConfig implements FieldScopeLogicContainer<FluentEq
     return usingCorrespondenceStringFunction().apply(descriptor);
   }
 
+  /**
+   * Returns whether messages that are {@linkplain Message#equals equal} always match under this
+   * config, without it first having to be validated against their descriptor.
+   *
+   * <p>Every setting except a tolerance only relaxes the comparison, but a tolerance never matches
+   * NaN or infinite values, not even with themselves. Settings that name specific fields must still
+   * be validated, so that a bad field number fails the assertion even when the messages are equal.
+   */
+  final boolean equalMessagesAlwaysMatch() {
+    return isAllOrNone(ignoreFieldAbsenceScope())
+        && isAllOrNone(ignoreRepeatedFieldOrderScope())
+        && isAllOrNone(ignoreExtraRepeatedFieldElementsScope())
+        && isAllOrNone(compareFieldsScope())
+        && doubleCorrespondenceMap().isEmpty()
+        && floatCorrespondenceMap().isEmpty();
+  }
+
+  private static boolean isAllOrNone(FieldScopeLogic fieldScopeLogic) {
+    return fieldScopeLogic.isAll() || fieldScopeLogic.isNone();
+  }
+
   //////////////////////////////////////////////////////////////////////////////////////////////////
   // Mutators of FluentEqualityConfig configuration data.
   //////////////////////////////////////////////////////////////////////////////////////////////////
@@ -280,6 +368,11 @@ abstract class FluentEqualityConfig implements FieldScopeLogicContainer<FluentEq
     return builder.build();
   }
 
+  /** Same as {@code withExpectedMessages(ImmutableList.of(message))}, but possibly memoized. */
+  final FluentEqualityConfig withExpectedMessage(Message message) {
+    return caches().expectedMessageConfigs.getUnchecked(message);
+  }
+
   final FluentEqualityConfig withPartialScope(FieldScope partialScope) {
     return toBuilder()
         .setCompareFieldsScope(FieldScopeLogic.and(compareFieldsScope(), partialScope.logic()))
@@ -320,6 +413,13 @@ abstract class FluentEqualityConfig implements FieldScopeLogicContainer<FluentEq
   @Override
   public final FluentEqualityConfig subScope(
       Descriptor rootDescriptor, FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
+    return caches()
+        .subScopes
+        .getUnchecked(SubScopeId.of(rootDescriptor, fieldDescriptorOrUnknown));
+  }
+
+  private FluentEqualityConfig computeSubScope(
+      Descriptor rootDescriptor, FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
     return toBuilder()
         .setIgnoreFieldAbsenceScope(
             ignoreFieldAbsenceScope().subScope(rootDescriptor, fieldDescriptorOrUnknown))
@@ -337,6 +437,40 @@ abstract class FluentEqualityConfig implements FieldScopeLogicContainer<FluentEq
         .build();
   }
 
+  /** The arguments to a {@link #subScope} call, for use as a cache key. */
+  @AutoValue
+  abstract static class SubScopeId {
+    static SubScopeId of(
+        Descriptor rootDescriptor, FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
+      return new AutoValue_FluentEqualityConfig_SubScopeId(
+          rootDescriptor, fieldDescriptorOrUnknown);
+    }
+
+    abstract Descriptor rootDescriptor();
+
+    abstract FieldDescriptorOrUnknown fieldDescriptorOrUnknown();
+  }
+
+  /**
+   * Returns the plan for comparing messages of the given type under this config, as part of
+   * comparing messages of type {@code rootDescriptor}.
+   */
+  final MessagePlan messagePlan(Descriptor rootDescriptor, Descriptor descriptor) {
+    return caches().messagePlans.getUnchecked(MessagePlanId.of(rootDescriptor, descriptor));
+  }
+
+  /** The arguments to a {@link #messagePlan} call, for use as a cache key. */
+  @AutoValue
+  abstract static class MessagePlanId {
+    static MessagePlanId of(Descriptor rootDescriptor, Descriptor descriptor) {
+      return new AutoValue_FluentEqualityConfig_MessagePlanId(rootDescriptor, descriptor);
+    }
+
+    abstract Descriptor rootDescriptor();
+
+    abstract Descriptor descriptor();
+  }
+
   @Override
   public final void validate(
       Descriptor rootDescriptor, FieldDescriptorValidator fieldDescriptorValidator) {
@@ -360,35 +494,66 @@ abstract class FluentEqualityConfig implements FieldScopeLogicContainer<FluentEq
 
   final ProtoTruthMessageDifferencer toMessageDifferencer(Descriptor descriptor) {
     checkState(expectedMessages().isPresent(), "expectedMessages() not set");
-    return messageDifferencers.getUnchecked(descriptor);
+    return caches().messageDifferencers.getUnchecked(descriptor);
   }
 
   final <M extends Message> Correspondence<M, M> toCorrespondence(
       final Optional<Descriptor> optDescriptor) {
     checkState(expectedMessages().isPresent(), "expectedMessages() not set");
-    return Correspondence.from(
-            // If we were allowed lambdas, this would be:
-            // (M a, M e) ->
-            //     ProtoTruth.assertThat(a).usingConfig(FluentEqualityConfig.this).testIsEqualTo(e),
-            new Correspondence.BinaryPredicate<M, M>() {
-              @Override
-              public boolean apply(@NullableDecl M actual, @NullableDecl M expected) {
-                return ProtoTruth.assertThat(actual)
-                    .usingConfig(FluentEqualityConfig.this)
-                    .testIsEqualTo(expected);
-              }
-            },
-            "is equivalent according to assertThat(proto)"
-                + usingCorrespondenceString(optDescriptor)
-                + ".isEqualTo(target) to")
-        .formattingDiffsUsing(
-            // If we were allowed method references, this would be this::formatDiff.
-            new Correspondence.DiffFormatter<M, M>() {
-              @Override
-              public String formatDiff(@NullableDecl M actual, @NullableDecl M expected) {
-                return FluentEqualityConfig.this.formatDiff(actual, expected);
-              }
-            });
+    Correspondence<M, M> correspondence =
+        Correspondence.from(
+                // If we were allowed lambdas, this would be:
+                // (M a, M e) ->
+                //     ProtoTruth.assertThat(a)
+                //         .usingConfig(FluentEqualityConfig.this)
+                //         .testIsEqualTo(e),
+                new Correspondence.BinaryPredicate<M, M>() {
+                  @Override
+                  public boolean apply(@NullableDecl M actual, @NullableDecl M expected) {
+                    return ProtoTruth.assertThat(actual)
+                        .usingConfig(FluentEqualityConfig.this)
+                        .testIsEqualTo(expected);
+                  }
+                },
+                "is equivalent according to assertThat(proto)"
+                    + usingCorrespondenceString(optDescriptor)
+                    + ".isEqualTo(target) to")
+            .formattingDiffsUsing(
+                // If we were allowed method references, this would be this::formatDiff.
+                new Correspondence.DiffFormatter<M, M>() {
+                  @Override
+                  public String formatDiff(@NullableDecl M actual, @NullableDecl M expected) {
+                    return FluentEqualityConfig.this.formatDiff(actual, expected);
+                  }
+                });
+    if (compareExpectedFieldsOnly()) {
+      // Each pair of messages is compared using only the fields set in that pair's expected
+      // message, so no single key per message is consistent with every comparison.
+      return correspondence;
+    }
+    // If we were allowed method references, this would be this::messageKey.
+    Function<M, Object> keyFunction =
+        new Function<M, Object>() {
+          @Override
+          @NullableDecl
+          public Object apply(@NullableDecl M message) {
+            return messageKey(message);
+          }
+        };
+    return correspondence.withKeyHint(keyFunction, keyFunction);
+  }
+
+  /**
+   * Returns a key for the given message such that, if two messages are equal according to this
+   * config, their keys are equal too. Messages with different descriptors are never equal.
+   */
+  @NullableDecl
+  private Object messageKey(@NullableDecl Message message) {
+    if (message == null) {
+      return null;
+    }
+    Descriptor descriptor = message.getDescriptorForType();
+    return ImmutableList.of(descriptor, toMessageDifferencer(descriptor).hashMessage(message));
   }
 
   private <M extends Message> String formatDiff(@NullableDecl M actual, @NullableDecl M expected) {
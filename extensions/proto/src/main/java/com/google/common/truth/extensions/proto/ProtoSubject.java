@@ -27,7 +27,6 @@ import com.google.common.truth.FailureMetadata;
 import com.google.common.truth.Subject;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
-import java.util.Arrays;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
@@ -282,10 +281,11 @@ public class ProtoSubject<S extends ProtoSubject<S, M>, M extends Message>
   public void isEqualTo(@NullableDecl Object expected) {
     if (notMessagesWithSameDescriptor(actual(), expected)) {
       super.isEqualTo(expected);
-    } else {
-      DiffResult diffResult =
-          makeDifferencer((Message) expected).diffMessages(actual(), (Message) expected);
-      if (!diffResult.isMatched()) {
+    } else if (!equalByMessageEquals((Message) expected)) {
+      ProtoTruthMessageDifferencer differencer = makeDifferencer((Message) expected);
+      if (!differencer.messagesMatch(actual(), (Message) expected)) {
+        // Only build the full diff when we need it for the failure message.
+        DiffResult diffResult = differencer.diffMessages(actual(), (Message) expected);
         failWithoutActual(
             simpleFact(
                 failureMessage(/* expectedEqual = */ true)
@@ -303,9 +303,8 @@ public class ProtoSubject<S extends ProtoSubject<S, M>, M extends Message>
     if (notMessagesWithSameDescriptor(actual(), expected)) {
       return Objects.equal(actual(), expected);
     } else {
-      return makeDifferencer((Message) expected)
-          .diffMessages(actual(), (Message) expected)
-          .isMatched();
+      return equalByMessageEquals((Message) expected)
+          || makeDifferencer((Message) expected).messagesMatch(actual(), (Message) expected);
     }
   }
 
@@ -314,9 +313,9 @@ public class ProtoSubject<S extends ProtoSubject<S, M>, M extends Message>
     if (notMessagesWithSameDescriptor(actual(), expected)) {
       super.isNotEqualTo(expected);
     } else {
-      DiffResult diffResult =
-          makeDifferencer((Message) expected).diffMessages(actual(), (Message) expected);
-      if (diffResult.isMatched()) {
+      ProtoTruthMessageDifferencer differencer = makeDifferencer((Message) expected);
+      if (differencer.messagesMatch(actual(), (Message) expected)) {
+        DiffResult diffResult = differencer.diffMessages(actual(), (Message) expected);
         failWithoutActual(
             simpleFact(
                 failureMessage(/* expectedEqual= */ false)
@@ -337,9 +336,18 @@ public class ProtoSubject<S extends ProtoSubject<S, M>, M extends Message>
     }
   }
 
+  /**
+   * Returns whether the messages are {@linkplain Message#equals equal} and so match without a trip
+   * through the differencer, which would otherwise need a new config and caches for every
+   * assertion. Unequal messages may still match, so callers consult the differencer otherwise.
+   */
+  private boolean equalByMessageEquals(Message expected) {
+    return config.equalMessagesAlwaysMatch() && actual().equals(expected);
+  }
+
   private ProtoTruthMessageDifferencer makeDifferencer(Message expected) {
     return config
-        .withExpectedMessages(Arrays.asList(expected))
+        .withExpectedMessage(expected)
         .toMessageDifferencer(actual().getDescriptorForType());
   }
 
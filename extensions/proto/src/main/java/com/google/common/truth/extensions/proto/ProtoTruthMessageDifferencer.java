@@ -24,9 +24,10 @@ import static com.google.common.base.Preconditions.checkState;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import com.google.common.truth.Correspondence;
 import com.google.common.truth.extensions.proto.DiffResult.RepeatedField;
 import com.google.common.truth.extensions.proto.DiffResult.SingularField;
@@ -41,13 +42,14 @@ import com.google.protobuf.TextFormat;
 import com.google.protobuf.UnknownFieldSet;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
@@ -61,12 +63,14 @@ final class ProtoTruthMessageDifferencer {
 
   private final FluentEqualityConfig rootConfig;
   private final Descriptor rootDescriptor;
+  private final ProtoTruthMessageHasher hasher;
 
   private ProtoTruthMessageDifferencer(FluentEqualityConfig rootConfig, Descriptor descriptor) {
     rootConfig.validate(descriptor, FieldDescriptorValidator.ALLOW_ALL);
 
     this.rootConfig = rootConfig;
     this.rootDescriptor = descriptor;
+    this.hasher = new ProtoTruthMessageHasher(descriptor);
   }
 
   /** Create a new {@link ProtoTruthMessageDifferencer} for the given config and descriptor. */
@@ -75,6 +79,37 @@ final class ProtoTruthMessageDifferencer {
     return new ProtoTruthMessageDifferencer(rootConfig, descriptor);
   }
 
+  /**
+   * Returns a hash of the given non-null message, such that if {@link #diffMessages} finds that two
+   * messages match, their hashes are equal.
+   */
+  int hashMessage(Message message) {
+    checkNotNull(message);
+    checkArgument(
+        message.getDescriptorForType() == rootDescriptor,
+        "The message [%s] and differencer [%s] descriptors do not match.",
+        message.getDescriptorForType(),
+        rootDescriptor);
+    return hasher.hashMessage(message, rootConfig);
+  }
+
+  /**
+   * Returns whether the two non-null messages match. This is equivalent to {@code
+   * diffMessages(actual, expected).isMatched()}, but stops at the first mismatch and doesn't build
+   * a comparison report.
+   */
+  boolean messagesMatch(Message actual, Message expected) {
+    checkNotNull(actual);
+    checkNotNull(expected);
+    checkArgument(
+        actual.getDescriptorForType() == expected.getDescriptorForType(),
+        "The actual [%s] and expected [%s] message descriptors do not match.",
+        actual.getDescriptorForType(),
+        expected.getDescriptorForType());
+
+    return isMatched(compareMessages(actual, expected, rootConfig, MATCHING));
+  }
+
   /** Compare the two non-null messages, and return a detailed comparison report. */
   DiffResult diffMessages(Message actual, Message expected) {
     checkNotNull(actual);
@@ -85,274 +120,456 @@ final class ProtoTruthMessageDifferencer {
         actual.getDescriptorForType(),
         expected.getDescriptorForType());
 
-    return diffMessages(actual, expected, rootConfig);
+    ReportSink sink = ReportSink.of(actual, expected);
+    compareMessages(actual, expected, rootConfig, sink);
+    return sink.buildDiffResult();
   }
 
-  private DiffResult diffMessages(Message actual, Message expected, FluentEqualityConfig config) {
-    DiffResult.Builder builder = DiffResult.newBuilder().setActual(actual).setExpected(expected);
+  // The compare*() methods below report the result of each comparison they make to a ResultSink,
+  // and return the Result that the corresponding entity of a DiffResult would have. When the sink
+  // doesn't keep details, they return as soon as they find a mismatch.
+
+  private static boolean isMatched(Result result) {
+    return result == Result.MATCHED || result == Result.IGNORED;
+  }
+
+  /**
+   * Combines the results of two sibling entities into the result of their parent, the same way
+   * {@link RecursableDiffEntity.WithoutResultCode} does: the parent is ignored if all of its
+   * children are (or if it has none), and matched if all of its children are.
+   */
+  private static Result combine(Result first, Result second) {
+    if (!isMatched(first) || !isMatched(second)) {
+      return Result.MODIFIED;
+    } else if (first == Result.IGNORED) {
+      return second;
+    } else {
+      return first;
+    }
+  }
+
+  /** Returns whether the traversal can stop, having found the given result so far. */
+  private static boolean canStop(Result result, ResultSink sink) {
+    return !isMatched(result) && !sink.keepsDetails();
+  }
+
+  private Result compareMessages(
+      Message actual, Message expected, FluentEqualityConfig config, ResultSink sink) {
+    Result result = Result.IGNORED;
 
     // Compare known fields.
-    Map<FieldDescriptor, Object> actualFields = actual.getAllFields();
-    Map<FieldDescriptor, Object> expectedFields = expected.getAllFields();
-    for (FieldDescriptor fieldDescriptor :
-        Sets.union(actualFields.keySet(), expectedFields.keySet())) {
+    MessagePlan plan = config.messagePlan(rootDescriptor, actual.getDescriptorForType());
+    for (FieldDescriptor fieldDescriptor : plan.fieldsSetIn(actual, expected)) {
       // Check if we should ignore this field.  If the result is nonrecursive, proceed anyway, but
       // the field will be considered ignored in the final diff report if no sub-fields get compared
       // (i.e., the sub-DiffResult winds up empty). This allows us support FieldScopeLogic
       // disjunctions without repeating recursive work.
-      FieldDescriptorOrUnknown fieldDescriptorOrUnknown =
-          FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor);
-      FieldScopeResult shouldCompare =
-          config.compareFieldsScope().policyFor(rootDescriptor, fieldDescriptorOrUnknown);
-      if (shouldCompare == FieldScopeResult.EXCLUDED_RECURSIVELY) {
-        builder.addSingularField(
-            fieldDescriptor.getNumber(), SingularField.ignored(name(fieldDescriptor)));
+      FieldPlan field = plan.fieldPlan(fieldDescriptor);
+      if (field.shouldCompare == FieldScopeResult.EXCLUDED_RECURSIVELY) {
+        sink.addIgnoredField(fieldDescriptor.getNumber(), field.name);
         continue;
       }
 
-      if (fieldDescriptor.isRepeated()) {
-        if (fieldDescriptor.isMapField()) {
-          Map<Object, Object> actualMap = toProtoMap(actualFields.get(fieldDescriptor));
-          Map<Object, Object> expectedMap = toProtoMap(expectedFields.get(fieldDescriptor));
-
-          ImmutableSet<Object> keyOrder =
-              Sets.union(actualMap.keySet(), expectedMap.keySet()).immutableCopy();
-          builder.addAllSingularFields(
-              fieldDescriptor.getNumber(),
-              compareMapFieldsByKey(
-                  actualMap,
-                  expectedMap,
-                  keyOrder,
-                  fieldDescriptor,
-                  config.subScope(rootDescriptor, fieldDescriptorOrUnknown)));
+      Result fieldResult;
+      if (fieldDescriptor.isMapField()) {
+        fieldResult =
+            compareMapFieldsByKey(
+                toProtoMap(actual, fieldDescriptor),
+                toProtoMap(expected, fieldDescriptor),
+                field,
+                sink);
+      } else if (fieldDescriptor.isRepeated()) {
+        List<?> actualList = (List<?>) actual.getField(fieldDescriptor);
+        List<?> expectedList = (List<?>) expected.getField(fieldDescriptor);
+
+        if (field.ignoreRepeatedFieldOrder
+            || (field.ignoreExtraRepeatedFieldElements && !expectedList.isEmpty())) {
+          ResultSink elements = sink.forRepeatedField(fieldDescriptor, actualList, expectedList);
+          fieldResult =
+              field.ignoreRepeatedFieldOrder
+                  ? compareRepeatedFieldIgnoringOrder(actualList, expectedList, field, elements)
+                  : compareRepeatedFieldExpectingSubsequence(
+                      actualList, expectedList, field, elements);
+          sink.addRepeatedField(fieldDescriptor.getNumber(), elements);
         } else {
-          List<?> actualList = toProtoList(actualFields.get(fieldDescriptor));
-          List<?> expectedList = toProtoList(expectedFields.get(fieldDescriptor));
-
-          boolean ignoreRepeatedFieldOrder =
-              config
-                  .ignoreRepeatedFieldOrderScope()
-                  .contains(rootDescriptor, fieldDescriptorOrUnknown);
-          boolean ignoreExtraRepeatedFieldElements =
-              config
-                  .ignoreExtraRepeatedFieldElementsScope()
-                  .contains(rootDescriptor, fieldDescriptorOrUnknown);
-          if (ignoreRepeatedFieldOrder) {
-            builder.addRepeatedField(
-                fieldDescriptor.getNumber(),
-                compareRepeatedFieldIgnoringOrder(
-                    actualList,
-                    expectedList,
-                    shouldCompare == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
-                    fieldDescriptor,
-                    ignoreExtraRepeatedFieldElements,
-                    config.subScope(rootDescriptor, fieldDescriptorOrUnknown)));
-          } else if (ignoreExtraRepeatedFieldElements && !expectedList.isEmpty()) {
-            builder.addRepeatedField(
-                fieldDescriptor.getNumber(),
-                compareRepeatedFieldExpectingSubsequence(
-                    actualList,
-                    expectedList,
-                    shouldCompare == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
-                    fieldDescriptor,
-                    config.subScope(rootDescriptor, fieldDescriptorOrUnknown)));
-          } else {
-            builder.addAllSingularFields(
-                fieldDescriptor.getNumber(),
-                compareRepeatedFieldByIndices(
-                    actualList,
-                    expectedList,
-                    shouldCompare == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
-                    fieldDescriptor,
-                    config.subScope(rootDescriptor, fieldDescriptorOrUnknown)));
-          }
+          fieldResult = compareRepeatedFieldByIndices(actualList, expectedList, field, sink);
         }
       } else {
-        builder.addSingularField(
-            fieldDescriptor.getNumber(),
+        fieldResult =
             compareSingularValue(
-                actualFields.get(fieldDescriptor),
-                expectedFields.get(fieldDescriptor),
+                singularFieldValue(actual, fieldDescriptor),
+                singularFieldValue(expected, fieldDescriptor),
                 actual.getDefaultInstanceForType().getField(fieldDescriptor),
-                shouldCompare == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
-                fieldDescriptor,
-                name(fieldDescriptor),
-                config.subScope(rootDescriptor, fieldDescriptorOrUnknown)));
+                field,
+                fieldDescriptor.getNumber(),
+                field.name,
+                sink);
+      }
+
+      result = combine(result, fieldResult);
+      if (canStop(result, sink)) {
+        return result;
       }
     }
 
     // Compare unknown fields.
     if (!config.ignoreFieldAbsenceScope().isAll()) {
-      UnknownFieldSetDiff diff =
-          diffUnknowns(actual.getUnknownFields(), expected.getUnknownFields(), config);
-      builder.setUnknownFields(diff);
+      ResultSink unknowns = sink.forUnknowns();
+      result =
+          combine(
+              result,
+              compareUnknowns(
+                  actual.getUnknownFields(), expected.getUnknownFields(), config, unknowns));
+      sink.setUnknownFields(unknowns);
     }
 
-    return builder.build();
+    return result;
   }
 
-  // Helper which takes a proto map in List<Message> form, and converts it to a Map<Object, Object>
-  // by extracting the keys and values from the generated map-entry submessages.  Returns an empty
-  // map if null is passed in.
-  private static Map<Object, Object> toProtoMap(@NullableDecl Object container) {
-    if (container == null) {
+  // Returns the value of the given singular field of the message, or null if it isn't set.
+  @NullableDecl
+  private static Object singularFieldValue(Message message, FieldDescriptor fieldDescriptor) {
+    return message.hasField(fieldDescriptor) ? message.getField(fieldDescriptor) : null;
+  }
+
+  // Helper which takes a proto map field, and converts it to a Map<Object, Object> by extracting
+  // the keys and values from the generated map-entry submessages, in the order of the entries. An
+  // unset key or value is mapped from or to null. If several entries have the same key, as they
+  // can in a DynamicMessage, the last one wins.
+  static Map<Object, Object> toProtoMap(
+      Message message, FieldDescriptor mapFieldDescriptor) {
+    List<?> entryMessages = (List<?>) message.getField(mapFieldDescriptor);
+    if (entryMessages.isEmpty()) {
       return Collections.emptyMap();
     }
-    List<?> entryMessages = (List<?>) container;
+    FieldDescriptor keyFieldDescriptor = mapFieldDescriptor.getMessageType().findFieldByNumber(1);
+    FieldDescriptor valueFieldDescriptor = mapFieldDescriptor.getMessageType().findFieldByNumber(2);
 
-    Map<Object, Object> retVal = Maps.newHashMap();
+    Map<Object, Object> retVal = Maps.newLinkedHashMapWithExpectedSize(entryMessages.size());
     for (Object entry : entryMessages) {
-      Message message = (Message) entry;
-      Object key = message.getAllFields().get(message.getDescriptorForType().findFieldByNumber(1));
-      Object value =
-          message.getAllFields().get(message.getDescriptorForType().findFieldByNumber(2));
-      retVal.put(key, value);
+      Message entryMessage = (Message) entry;
+      retVal.put(
+          singularFieldValue(entryMessage, keyFieldDescriptor),
+          singularFieldValue(entryMessage, valueFieldDescriptor));
     }
     return retVal;
   }
 
-  // Takes a List<Object> or null, and returns the casted list in the first case, an empty list in
-  // the latter case.
-  private static List<?> toProtoList(@NullableDecl Object container) {
-    if (container == null) {
-      return Collections.emptyList();
-    }
-    return (List<?>) container;
-  }
-
-  private List<SingularField> compareMapFieldsByKey(
+  // Joins the two maps on their keys: the entries of actualMap come first, followed by the entries
+  // only in expectedMap.
+  private Result compareMapFieldsByKey(
       Map<Object, Object> actualMap,
       Map<Object, Object> expectedMap,
-      Set<Object> keyOrder,
-      FieldDescriptor mapFieldDescriptor,
-      FluentEqualityConfig mapConfig) {
+      FieldPlan mapField,
+      ResultSink sink) {
+    FieldDescriptor mapFieldDescriptor = mapField.fieldDescriptor;
     FieldDescriptor keyFieldDescriptor = mapFieldDescriptor.getMessageType().findFieldByNumber(1);
-    FieldDescriptor valueFieldDescriptor = mapFieldDescriptor.getMessageType().findFieldByNumber(2);
-    FieldDescriptorOrUnknown valueFieldDescriptorOrUnknown =
-        FieldDescriptorOrUnknown.fromFieldDescriptor(valueFieldDescriptor);
+    int fieldNumber = mapFieldDescriptor.getNumber();
 
     // We never ignore the key, no matter what the logic dictates.
-    FieldScopeResult compareValues =
-        mapConfig.compareFieldsScope().policyFor(rootDescriptor, valueFieldDescriptorOrUnknown);
-    if (compareValues == FieldScopeResult.EXCLUDED_RECURSIVELY) {
-      return ImmutableList.of(SingularField.ignored(name(mapFieldDescriptor)));
+    FieldPlan values = mapValuePlan(mapField);
+    if (values.shouldCompare == FieldScopeResult.EXCLUDED_RECURSIVELY) {
+      sink.addIgnoredField(fieldNumber, mapField.name);
+      return Result.IGNORED;
     }
 
-    boolean ignoreExtraRepeatedFieldElements =
-        mapConfig
-            .ignoreExtraRepeatedFieldElementsScope()
-            .contains(
-                rootDescriptor, FieldDescriptorOrUnknown.fromFieldDescriptor(mapFieldDescriptor));
+    // A report of mismatches only won't print matched or ignored entries, so we don't build them.
+    // Those are usually nearly all of the entries of a large map.
+    boolean reportMatches = sink.keepsDetails() && !mapField.config.reportMismatchesOnly();
 
-    FluentEqualityConfig valuesConfig =
-        mapConfig.subScope(rootDescriptor, valueFieldDescriptorOrUnknown);
-
-    ImmutableList.Builder<SingularField> builder =
-        ImmutableList.builderWithExpectedSize(keyOrder.size());
-    for (Object key : keyOrder) {
+    Result result = Result.IGNORED;
+    for (Object key : Sets.union(actualMap.keySet(), expectedMap.keySet())) {
       @NullableDecl Object actualValue = actualMap.get(key);
       @NullableDecl Object expectedValue = expectedMap.get(key);
-      if (ignoreExtraRepeatedFieldElements && !expectedMap.isEmpty() && expectedValue == null) {
-        builder.add(
-            SingularField.ignored(indexedName(mapFieldDescriptor, key, keyFieldDescriptor)));
-      } else {
-        builder.add(
+      if (mapField.ignoreExtraMapEntries && !expectedMap.isEmpty() && expectedValue == null) {
+        if (reportMatches) {
+          sink.addIgnoredField(
+              fieldNumber, indexedName(mapFieldDescriptor, key, keyFieldDescriptor));
+        }
+        continue;
+      }
+
+      Result entryResult;
+      if (reportMatches) {
+        entryResult =
             compareSingularValue(
                 actualValue,
                 expectedValue,
                 /*defaultValue=*/ null,
-                compareValues == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
-                valueFieldDescriptor,
+                values,
+                fieldNumber,
                 indexedName(mapFieldDescriptor, key, keyFieldDescriptor),
-                valuesConfig));
+                sink);
+      } else {
+        entryResult =
+            identicalMessages(actualValue, expectedValue, values)
+                ? Result.MATCHED
+                : matchSingularValue(actualValue, expectedValue, values);
+        if (!isMatched(entryResult) && sink.keepsDetails()) {
+          compareSingularValue(
+              actualValue,
+              expectedValue,
+              /*defaultValue=*/ null,
+              values,
+              fieldNumber,
+              indexedName(mapFieldDescriptor, key, keyFieldDescriptor),
+              sink);
+        }
+      }
+
+      result = combine(result, entryResult);
+      if (canStop(result, sink)) {
+        return result;
       }
     }
 
-    return builder.build();
+    return result;
   }
 
-  private RepeatedField compareRepeatedFieldIgnoringOrder(
-      List<?> actualList,
-      List<?> expectedList,
-      boolean excludeNonRecursive,
-      FieldDescriptor fieldDescriptor,
-      boolean ignoreExtraRepeatedFieldElements,
-      FluentEqualityConfig config) {
-    RepeatedField.Builder builder =
-        RepeatedField.newBuilder()
-            .setFieldDescriptor(fieldDescriptor)
-            .setActual(actualList)
-            .setExpected(expectedList);
-
-    // TODO(user): Use maximum bipartite matching here, instead of greedy matching.
-    Set<Integer> unmatchedActual = setForRange(actualList.size());
-    Set<Integer> unmatchedExpected = setForRange(expectedList.size());
+  // Returns the plan for the values of the given map field, which are the value fields of its
+  // entries.
+  private FieldPlan mapValuePlan(FieldPlan mapField) {
+    Descriptor entryDescriptor = mapField.fieldDescriptor.getMessageType();
+    return mapField
+        .config
+        .messagePlan(rootDescriptor, entryDescriptor)
+        .fieldPlan(entryDescriptor.findFieldByNumber(2));
+  }
+
+  /**
+   * Returns whether the two values are message values of the given field which are sure to match,
+   * because they're the same message or serialize to the same bytes. That saves comparing them
+   * field by field, for example when the expected map was copied from the actual one.
+   */
+  private static boolean identicalMessages(
+      @NullableDecl Object actualValue, @NullableDecl Object expectedValue, FieldPlan field) {
+    if (!field.identicalMessagesMatch || actualValue == null || expectedValue == null) {
+      return false;
+    }
+    return actualValue == expectedValue
+        || ((Message) actualValue).toByteString().equals(((Message) expectedValue).toByteString());
+  }
+
+  private Result compareRepeatedFieldIgnoringOrder(
+      List<?> actualList, List<?> expectedList, FieldPlan field, ResultSink sink) {
+    Result[] pairResults = new Result[actualList.size()];
+    int[] matching = findRepeatedFieldMatching(actualList, expectedList, field, pairResults);
+
+    Result result = Result.IGNORED;
+    boolean[] expectedMatched = new boolean[expectedList.size()];
     for (int i = 0; i < actualList.size(); i++) {
-      Object actual = actualList.get(i);
-      for (int j : unmatchedExpected) {
-        Object expected = expectedList.get(j);
-        RepeatedField.PairResult pairResult =
-            compareRepeatedFieldElementPair(
-                actual, expected, excludeNonRecursive, fieldDescriptor, i, j, config);
-        if (pairResult.isMatched()) {
-          // Found a match - remove both these elements from the candidate pools.
-          builder.addPairResult(pairResult);
-          unmatchedActual.remove(i);
-          unmatchedExpected.remove(j);
-          break;
-        }
+      int j = matching[i];
+      if (j >= 0) {
+        expectedMatched[j] = true;
+        result =
+            combine(
+                result,
+                reportComparedPair(
+                    pairResults[i], actualList.get(i), expectedList.get(j), field, i, j, sink));
       }
     }
 
     // Record remaining unmatched elements.
-    for (int i : unmatchedActual) {
-      if (ignoreExtraRepeatedFieldElements && !expectedList.isEmpty()) {
-        builder.addPairResult(
-            RepeatedField.PairResult.newBuilder()
-                .setResult(Result.IGNORED)
-                .setActual(actualList.get(i))
-                .setActualFieldIndex(i)
-                .setFieldDescriptor(fieldDescriptor)
-                .build());
+    for (int i = 0; i < actualList.size(); i++) {
+      if (matching[i] >= 0) {
+        continue;
+      }
+      if (field.ignoreExtraRepeatedFieldElements && !expectedList.isEmpty()) {
+        sink.addPairResult(
+            Result.IGNORED,
+            field.fieldDescriptor,
+            i,
+            /*expectedFieldIndex=*/ null,
+            actualList.get(i),
+            /*expected=*/ null,
+            /*breakdown=*/ null);
       } else {
-        builder.addPairResult(
-            compareRepeatedFieldElementPair(
-                actualList.get(i),
-                /*expected=*/ null,
-                excludeNonRecursive,
-                fieldDescriptor,
-                i,
-                /*expectedFieldIndex=*/ null,
-                config));
+        result =
+            combine(
+                result,
+                compareRepeatedFieldElementPair(
+                    actualList.get(i),
+                    /*expected=*/ null,
+                    field,
+                    i,
+                    /*expectedFieldIndex=*/ null,
+                    /*movedOutOfOrder=*/ false,
+                    sink));
+        if (canStop(result, sink)) {
+          return result;
+        }
       }
     }
-    for (int j : unmatchedExpected) {
-      builder.addPairResult(
-          compareRepeatedFieldElementPair(
-              /*actual=*/ null,
-              expectedList.get(j),
-              excludeNonRecursive,
-              fieldDescriptor,
-              /*actualFieldIndex=*/ null,
-              j,
-              config));
+    for (int j = 0; j < expectedList.size(); j++) {
+      if (expectedMatched[j]) {
+        continue;
+      }
+      result =
+          combine(
+              result,
+              compareRepeatedFieldElementPair(
+                  /*actual=*/ null,
+                  expectedList.get(j),
+                  field,
+                  /*actualFieldIndex=*/ null,
+                  j,
+                  /*movedOutOfOrder=*/ false,
+                  sink));
+      if (canStop(result, sink)) {
+        return result;
+      }
     }
 
-    return builder.build();
+    return result;
   }
 
-  private RepeatedField compareRepeatedFieldExpectingSubsequence(
+  /**
+   * Pairs up as many elements of {@code actualList} with matching elements of {@code expectedList}
+   * as possible. Returns, for each actual element, the index of the expected element it's paired
+   * with, or -1 if it isn't paired. Stores the result of comparing each paired actual element in
+   * {@code pairResults}.
+   */
+  private int[] findRepeatedFieldMatching(
       List<?> actualList,
       List<?> expectedList,
-      boolean excludeNonRecursive,
-      FieldDescriptor fieldDescriptor,
-      FluentEqualityConfig config) {
-    RepeatedField.Builder builder =
-        RepeatedField.newBuilder()
-            .setFieldDescriptor(fieldDescriptor)
-            .setActual(actualList)
-            .setExpected(expectedList);
+      FieldPlan field,
+      Result[] pairResults) {
+    // Only elements with equal hashes can match, so bucket the elements by hash, and only compare
+    // elements in the same bucket.
+    Map<Integer, List<Integer>> actualIndexesByHash = new LinkedHashMap<>();
+    for (int i = 0; i < actualList.size(); i++) {
+      int hash =
+          hasher.hashValue(
+              actualList.get(i), field.fieldDescriptor, field.excludeNonRecursive, field.config);
+      bucketFor(actualIndexesByHash, hash).add(i);
+    }
+    Map<Integer, List<Integer>> expectedIndexesByHash = new LinkedHashMap<>();
+    for (int j = 0; j < expectedList.size(); j++) {
+      int hash =
+          hasher.hashValue(
+              expectedList.get(j), field.fieldDescriptor, field.excludeNonRecursive, field.config);
+      bucketFor(expectedIndexesByHash, hash).add(j);
+    }
 
+    int[] matching = new int[actualList.size()];
+    Arrays.fill(matching, -1);
+    boolean[] expectedMatched = new boolean[expectedList.size()];
+    for (Map.Entry<Integer, List<Integer>> actualBucket : actualIndexesByHash.entrySet()) {
+      List<Integer> expectedBucket = expectedIndexesByHash.get(actualBucket.getKey());
+      if (expectedBucket != null) {
+        matchBucket(
+            actualList,
+            expectedList,
+            actualBucket.getValue(),
+            expectedBucket,
+            field,
+            matching,
+            expectedMatched,
+            pairResults);
+      }
+    }
+    return matching;
+  }
+
+  /**
+   * Pairs up the actual and expected elements with the given indexes, all of which have the same
+   * hash, so that as many as possible are matched. Records the pairs in {@code matching}, {@code
+   * expectedMatched} and {@code pairResults}, as described in {@link #findRepeatedFieldMatching}.
+   */
+  private void matchBucket(
+      List<?> actualList,
+      List<?> expectedList,
+      List<Integer> actualIndexes,
+      List<Integer> expectedIndexes,
+      FieldPlan field,
+      int[] matching,
+      boolean[] expectedMatched,
+      Result[] pairResults) {
+    // First, pair each actual element with the first unmatched expected element which it matches.
+    // Usually that pairs up every element on one side or the other, in which case no pairing could
+    // pair up more, and we're done.
+    int unmatchedActualCount = 0;
+    int unmatchedExpectedCount = expectedIndexes.size();
+    for (int i : actualIndexes) {
+      for (int j : expectedIndexes) {
+        if (expectedMatched[j]) {
+          continue;
+        }
+        Result pairResult = matchSingularValue(actualList.get(i), expectedList.get(j), field);
+        if (isMatched(pairResult)) {
+          matching[i] = j;
+          expectedMatched[j] = true;
+          pairResults[i] = pairResult;
+          unmatchedExpectedCount--;
+          break;
+        }
+      }
+      if (matching[i] < 0) {
+        unmatchedActualCount++;
+      }
+    }
+    if (unmatchedActualCount == 0 || unmatchedExpectedCount == 0) {
+      return;
+    }
+
+    // Otherwise, a better pairing may exist, so compare every pair and find a maximum matching.
+    int[] edgeStarts = new int[actualIndexes.size() + 1];
+    List<Integer> edgeTargets = new ArrayList<>();
+    List<Result> edgeResults = new ArrayList<>();
+    for (int a = 0; a < actualIndexes.size(); a++) {
+      int i = actualIndexes.get(a);
+      for (int b = 0; b < expectedIndexes.size(); b++) {
+        int j = expectedIndexes.get(b);
+        Result pairResult =
+            matching[i] == j
+                ? pairResults[i]
+                : matchSingularValue(actualList.get(i), expectedList.get(j), field);
+        if (isMatched(pairResult)) {
+          edgeTargets.add(b);
+          edgeResults.add(pairResult);
+        }
+      }
+      edgeStarts[a + 1] = edgeTargets.size();
+    }
+    int[] bucketMatching =
+        BipartiteMatching.maximumCardinalityBipartiteMatching(
+            edgeStarts, Ints.toArray(edgeTargets), expectedIndexes.size());
+
+    for (int i : actualIndexes) {
+      matching[i] = -1;
+      pairResults[i] = null;
+    }
+    for (int j : expectedIndexes) {
+      expectedMatched[j] = false;
+    }
+    for (int a = 0; a < actualIndexes.size(); a++) {
+      if (bucketMatching[a] < 0) {
+        continue;
+      }
+      for (int edge = edgeStarts[a]; edge < edgeStarts[a + 1]; edge++) {
+        if (edgeTargets.get(edge) == bucketMatching[a]) {
+          int i = actualIndexes.get(a);
+          int j = expectedIndexes.get(bucketMatching[a]);
+          matching[i] = j;
+          expectedMatched[j] = true;
+          pairResults[i] = edgeResults.get(edge);
+          break;
+        }
+      }
+    }
+  }
+
+  private static List<Integer> bucketFor(Map<Integer, List<Integer>> buckets, int hash) {
+    List<Integer> bucket = buckets.get(hash);
+    if (bucket == null) {
+      bucket = new ArrayList<>();
+      buckets.put(hash, bucket);
+    }
+    return bucket;
+  }
+
+  private Result compareRepeatedFieldExpectingSubsequence(
+      List<?> actualList, List<?> expectedList, FieldPlan field, ResultSink sink) {
     // Search for expectedList as a subsequence of actualList.
     //
     // This mostly replicates the algorithm used by IterableSubject.containsAll().inOrder(), but
@@ -363,202 +580,226 @@ final class ProtoTruthMessageDifferencer {
     }
     Deque<Integer> actualNotInOrder = new ArrayDeque<>();
 
+    Result result = Result.IGNORED;
+    Result[] pairResult = new Result[1];
     for (int expectedIndex = 0; expectedIndex < expectedList.size(); expectedIndex++) {
       Object expected = expectedList.get(expectedIndex);
 
       // Find the first actual element which matches.
-      @NullableDecl
-      RepeatedField.PairResult matchingResult =
-          findMatchingPairResult(
-              actualIndices,
-              actualList,
-              expectedIndex,
-              expected,
-              excludeNonRecursive,
-              fieldDescriptor,
-              config);
-
-      if (matchingResult != null) {
+      int actualIndex = removeFirstMatch(actualIndices, actualList, expected, field, pairResult);
+      if (actualIndex >= 0) {
         // Move all prior elements to actualNotInOrder.
-        while (!actualIndices.isEmpty()
-            && actualIndices.getFirst() < matchingResult.actualFieldIndex().get()) {
+        while (!actualIndices.isEmpty() && actualIndices.getFirst() < actualIndex) {
           actualNotInOrder.add(actualIndices.removeFirst());
         }
-        builder.addPairResult(matchingResult);
+        result =
+            combine(
+                result,
+                reportComparedPair(
+                    pairResult[0],
+                    actualList.get(actualIndex),
+                    expected,
+                    field,
+                    actualIndex,
+                    expectedIndex,
+                    sink));
+        continue;
+      }
+
+      // The expected element is missing or out of order, either of which is a mismatch.
+      result = Result.MODIFIED;
+      if (canStop(result, sink)) {
+        return result;
+      }
+
+      // See if a previous element matches, so we can improve the diff.
+      actualIndex = removeFirstMatch(actualNotInOrder, actualList, expected, field, pairResult);
+      if (actualIndex >= 0) {
+        // Report an out-of-order match, which is treated as not-matched.
+        compareRepeatedFieldElementPair(
+            actualList.get(actualIndex),
+            expected,
+            field,
+            actualIndex,
+            expectedIndex,
+            /*movedOutOfOrder=*/ true,
+            sink);
       } else {
-        // Otherwise, see if a previous element matches, so we can improve the diff.
-        matchingResult =
-            findMatchingPairResult(
-                actualNotInOrder,
-                actualList,
-                expectedIndex,
-                expected,
-                excludeNonRecursive,
-                fieldDescriptor,
-                config);
-        if (matchingResult != null) {
-          // Report an out-of-order match, which is treated as not-matched.
-          matchingResult = matchingResult.toBuilder().setResult(Result.MOVED_OUT_OF_ORDER).build();
-          builder.addPairResult(matchingResult);
-        } else {
-          // Report a missing expected element.
-          builder.addPairResult(
-              RepeatedField.PairResult.newBuilder()
-                  .setResult(Result.REMOVED)
-                  .setFieldDescriptor(fieldDescriptor)
-                  .setExpected(expected)
-                  .setExpectedFieldIndex(expectedIndex)
-                  .build());
-        }
+        // Report a missing expected element.
+        sink.addPairResult(
+            Result.REMOVED,
+            field.fieldDescriptor,
+            /*actualFieldIndex=*/ null,
+            expectedIndex,
+            /*actual=*/ null,
+            expected,
+            /*breakdown=*/ null);
       }
     }
 
     // Report any remaining not-in-order elements as ignored.
     for (int index : actualNotInOrder) {
-      builder.addPairResult(
-          RepeatedField.PairResult.newBuilder()
-              .setResult(Result.IGNORED)
-              .setFieldDescriptor(fieldDescriptor)
-              .setActual(actualList.get(index))
-              .setActualFieldIndex(index)
-              .build());
+      sink.addPairResult(
+          Result.IGNORED,
+          field.fieldDescriptor,
+          index,
+          /*expectedFieldIndex=*/ null,
+          actualList.get(index),
+          /*expected=*/ null,
+          /*breakdown=*/ null);
     }
 
-    return builder.build();
+    return result;
   }
 
   // Given a list of values, a list of indexes into that list, and an expected value, find the first
-  // actual value that compares equal to the expected value, and return the PairResult for it.
-  // Also removes the index for the matching value from actualIndicies.
+  // actual value that matches the expected value, remove its index from actualIndices, and return
+  // it. The result of comparing them is stored in pairResult[0].
   //
-  // If there is no match, returns null.
-  @NullableDecl
-  private RepeatedField.PairResult findMatchingPairResult(
+  // If there is no match, returns -1.
+  private int removeFirstMatch(
       Deque<Integer> actualIndices,
       List<?> actualValues,
-      int expectedIndex,
       Object expectedValue,
-      boolean excludeNonRecursive,
-      FieldDescriptor fieldDescriptor,
-      FluentEqualityConfig config) {
+      FieldPlan field,
+      Result[] pairResult) {
     Iterator<Integer> actualIndexIter = actualIndices.iterator();
     while (actualIndexIter.hasNext()) {
       int actualIndex = actualIndexIter.next();
-      RepeatedField.PairResult pairResult =
-          compareRepeatedFieldElementPair(
-              actualValues.get(actualIndex),
-              expectedValue,
-              excludeNonRecursive,
-              fieldDescriptor,
-              actualIndex,
-              expectedIndex,
-              config);
-      if (pairResult.isMatched()) {
+      pairResult[0] = matchSingularValue(actualValues.get(actualIndex), expectedValue, field);
+      if (isMatched(pairResult[0])) {
         actualIndexIter.remove();
-        return pairResult;
+        return actualIndex;
       }
     }
 
-    return null;
+    return -1;
+  }
+
+  /**
+   * Reports a pair of elements which were already compared while pairing up the elements, with the
+   * given result. Only a sink which keeps details needs them compared again, to describe them.
+   */
+  private Result reportComparedPair(
+      Result pairResult,
+      Object actual,
+      Object expected,
+      FieldPlan field,
+      int actualFieldIndex,
+      int expectedFieldIndex,
+      ResultSink sink) {
+    if (!sink.keepsDetails()) {
+      return pairResult;
+    }
+    return compareRepeatedFieldElementPair(
+        actual,
+        expected,
+        field,
+        actualFieldIndex,
+        expectedFieldIndex,
+        /*movedOutOfOrder=*/ false,
+        sink);
   }
 
-  private RepeatedField.PairResult compareRepeatedFieldElementPair(
+  private Result compareRepeatedFieldElementPair(
       @NullableDecl Object actual,
       @NullableDecl Object expected,
-      boolean excludeNonRecursive,
-      FieldDescriptor fieldDescriptor,
+      FieldPlan field,
       @NullableDecl Integer actualFieldIndex,
       @NullableDecl Integer expectedFieldIndex,
-      FluentEqualityConfig config) {
-    SingularField comparison =
+      boolean movedOutOfOrder,
+      ResultSink sink) {
+    ResultSink comparison = sink.forPair();
+    Result result =
         compareSingularValue(
             actual,
             expected,
             /*defaultValue=*/ null,
-            excludeNonRecursive,
-            fieldDescriptor,
+            field,
+            field.fieldDescriptor.getNumber(),
             "<no field path>",
-            config);
-
-    RepeatedField.PairResult.Builder pairResultBuilder =
-        RepeatedField.PairResult.newBuilder()
-            .setResult(comparison.result())
-            .setFieldDescriptor(fieldDescriptor);
-    if (actual != null) {
-      pairResultBuilder.setActual(actual).setActualFieldIndex(actualFieldIndex);
-    }
-    if (expected != null) {
-      pairResultBuilder.setExpected(expected).setExpectedFieldIndex(expectedFieldIndex);
-    }
-    if (comparison.breakdown().isPresent()) {
-      pairResultBuilder.setBreakdown(comparison.breakdown().get());
-    }
-    return pairResultBuilder.build();
-  }
-
-  /** Returns a {@link LinkedHashSet} containing the integers in {@code [0, max)}, in order. */
-  private static Set<Integer> setForRange(int max) {
-    Set<Integer> set = Sets.newLinkedHashSet();
-    for (int i = 0; i < max; i++) {
-      set.add(i);
-    }
-    return set;
+            comparison);
+    sink.addPairResult(
+        movedOutOfOrder ? Result.MOVED_OUT_OF_ORDER : result,
+        field.fieldDescriptor,
+        actualFieldIndex,
+        expectedFieldIndex,
+        actual,
+        expected,
+        comparison);
+    return result;
   }
 
   /**
-   * Compares {@code actualList} and {@code expectedList}, two submessages corresponding to {@code
-   * fieldDescriptor}. Uses {@code excludeNonRecursive}, {@code parentFieldPath}, and {@code
-   * fieldScopeLogic} to compare the messages.
-   *
-   * @return A list in index order, containing the diff results for each message.
+   * Compares {@code actualList} and {@code expectedList}, two lists of values of the repeated field
+   * planned by {@code field}, index by index, and reports each pair to the sink as a singular
+   * field.
    */
-  private List<SingularField> compareRepeatedFieldByIndices(
-      List<?> actualList,
-      List<?> expectedList,
-      boolean excludeNonRecursive,
-      FieldDescriptor fieldDescriptor,
-      FluentEqualityConfig config) {
+  private Result compareRepeatedFieldByIndices(
+      List<?> actualList, List<?> expectedList, FieldPlan field, ResultSink sink) {
+    Result result = Result.IGNORED;
     int maxSize = Math.max(actualList.size(), expectedList.size());
-    ImmutableList.Builder<SingularField> builder = ImmutableList.builderWithExpectedSize(maxSize);
     for (int i = 0; i < maxSize; i++) {
       @NullableDecl Object actual = actualList.size() > i ? actualList.get(i) : null;
       @NullableDecl Object expected = expectedList.size() > i ? expectedList.get(i) : null;
-      builder.add(
-          compareSingularValue(
-              actual,
-              expected,
-              /*defaultValue=*/ null,
-              excludeNonRecursive,
-              fieldDescriptor,
-              indexedName(fieldDescriptor, i),
-              config));
+      result =
+          combine(
+              result,
+              compareSingularValue(
+                  actual,
+                  expected,
+                  /*defaultValue=*/ null,
+                  field,
+                  field.fieldDescriptor.getNumber(),
+                  sink.keepsDetails() ? indexedName(field.fieldDescriptor, i) : null,
+                  sink));
+      if (canStop(result, sink)) {
+        return result;
+      }
     }
 
-    return builder.build();
+    return result;
+  }
+
+  /** Returns the result of comparing the two values, without reporting it. */
+  private Result matchSingularValue(
+      @NullableDecl Object actual, @NullableDecl Object expected, FieldPlan field) {
+    return compareSingularValue(
+        actual,
+        expected,
+        /*defaultValue=*/ null,
+        field,
+        field.fieldDescriptor.getNumber(),
+        /*fieldName=*/ null,
+        MATCHING);
   }
 
-  private SingularField compareSingularValue(
+  // Compares two values of the field planned by field, and reports them to the sink as a singular
+  // field with the given number and name. The name may only be null if the sink doesn't keep
+  // details.
+  private Result compareSingularValue(
       @NullableDecl Object actual,
       @NullableDecl Object expected,
       @NullableDecl Object defaultValue,
-      boolean excludeNonRecursive,
-      FieldDescriptor fieldDescriptor,
-      String fieldName,
-      FluentEqualityConfig config) {
-    if (fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
+      FieldPlan field,
+      int fieldNumber,
+      @NullableDecl String fieldName,
+      ResultSink sink) {
+    if (field.fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
       return compareSingularMessage(
           (Message) actual,
           (Message) expected,
           (Message) defaultValue,
-          excludeNonRecursive,
-          fieldDescriptor,
+          field,
+          fieldNumber,
           fieldName,
-          config);
-    } else if (excludeNonRecursive) {
-      return SingularField.ignored(fieldName);
+          sink);
+    } else if (field.excludeNonRecursive) {
+      sink.addIgnoredField(fieldNumber, fieldName);
+      return Result.IGNORED;
     } else {
       return compareSingularPrimitive(
-          actual, expected, defaultValue, fieldDescriptor, fieldName, config);
+          actual, expected, defaultValue, field, fieldNumber, fieldName, sink);
     }
   }
 
@@ -576,85 +817,67 @@ final class ProtoTruthMessageDifferencer {
     return (input != null) ? input : other.getDefaultInstanceForType();
   }
 
-  private SingularField compareSingularMessage(
+  private Result compareSingularMessage(
       @NullableDecl Message actual,
       @NullableDecl Message expected,
       @NullableDecl Message defaultValue,
-      boolean excludeNonRecursive,
-      FieldDescriptor fieldDescriptor,
-      String fieldName,
-      FluentEqualityConfig config) {
+      FieldPlan field,
+      int fieldNumber,
+      @NullableDecl String fieldName,
+      ResultSink sink) {
     Result.Builder result = Result.builder();
 
     // Use the default if it's set and we're ignoring field absence.
-    boolean ignoreFieldAbsence =
-        config
-            .ignoreFieldAbsenceScope()
-            .contains(
-                rootDescriptor, FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor));
-    actual = orIfIgnoringFieldAbsence(actual, defaultValue, ignoreFieldAbsence);
-    expected = orIfIgnoringFieldAbsence(expected, defaultValue, ignoreFieldAbsence);
+    actual = orIfIgnoringFieldAbsence(actual, defaultValue, field.ignoreFieldAbsence);
+    expected = orIfIgnoringFieldAbsence(expected, defaultValue, field.ignoreFieldAbsence);
 
     // If actual or expected is missing here, we know our result so long as it's not ignored.
     result.markRemovedIf(actual == null);
     result.markAddedIf(expected == null);
 
     // Perform the detailed breakdown only if necessary.
-    @NullableDecl DiffResult breakdown = null;
-    if (result.build() == Result.MATCHED || excludeNonRecursive) {
+    @NullableDecl ResultSink breakdown = null;
+    if (result.build() == Result.MATCHED || field.excludeNonRecursive) {
       actual = orDefaultForType(actual, expected);
       expected = orDefaultForType(expected, actual);
 
-      breakdown = diffMessages(actual, expected, config);
-      if (breakdown.isIgnored() && excludeNonRecursive) {
+      breakdown = sink.forMessages(actual, expected);
+      Result breakdownResult = compareMessages(actual, expected, field.config, breakdown);
+      if (breakdownResult == Result.IGNORED && field.excludeNonRecursive) {
         // Ignore this field entirely, report nothing.
-        return SingularField.ignored(fieldName);
+        sink.addIgnoredField(fieldNumber, fieldName);
+        return Result.IGNORED;
       }
 
-      result.markModifiedIf(!breakdown.isMatched());
+      result.markModifiedIf(!isMatched(breakdownResult));
     }
 
     // Report the full breakdown.
-    SingularField.Builder singularFieldBuilder =
-        SingularField.newBuilder()
-            .setFieldDescriptorOrUnknown(
-                FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor))
-            .setFieldName(fieldName)
-            .setResult(result.build());
-    if (actual != null) {
-      singularFieldBuilder.setActual(actual);
-    }
-    if (expected != null) {
-      singularFieldBuilder.setExpected(expected);
-    }
-    if (breakdown != null) {
-      singularFieldBuilder.setBreakdown(breakdown);
-    }
-    return singularFieldBuilder.build();
+    sink.addSingularField(
+        fieldNumber,
+        result.build(),
+        field.fieldDescriptorOrUnknown,
+        fieldName,
+        actual,
+        expected,
+        breakdown);
+    return result.build();
   }
 
-  private SingularField compareSingularPrimitive(
+  private Result compareSingularPrimitive(
       @NullableDecl Object actual,
       @NullableDecl Object expected,
       @NullableDecl Object defaultValue,
-      FieldDescriptor fieldDescriptor,
-      String fieldName,
-      FluentEqualityConfig config) {
+      FieldPlan field,
+      int fieldNumber,
+      @NullableDecl String fieldName,
+      ResultSink sink) {
     Result.Builder result = Result.builder();
 
     // Use the default if it's set and we're ignoring field absence, or if it's a Proto3 primitive
     // for which default is indistinguishable from unset.
-    FieldDescriptorOrUnknown fieldDescriptorOrUnknown =
-        FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor);
-    boolean isNonRepeatedProto3 =
-        !fieldDescriptor.isRepeated()
-            && fieldDescriptor.getContainingOneof() == null
-            && fieldDescriptor.getFile().getSyntax() == Syntax.PROTO3;
-    boolean ignoreFieldAbsence =
-        isNonRepeatedProto3
-            || config.ignoreFieldAbsenceScope().contains(rootDescriptor, fieldDescriptorOrUnknown);
-    actual = orIfIgnoringFieldAbsence(actual, defaultValue, ignoreFieldAbsence);
-    expected = orIfIgnoringFieldAbsence(expected, defaultValue, ignoreFieldAbsence);
+    actual = orIfIgnoringFieldAbsence(actual, defaultValue, field.ignoreFieldAbsence);
+    expected = orIfIgnoringFieldAbsence(expected, defaultValue, field.ignoreFieldAbsence);
 
     // If actual or expected is missing here, we know our result.
     result.markRemovedIf(actual == null);
@@ -662,37 +885,23 @@ final class ProtoTruthMessageDifferencer {
 
     if (actual != null && expected != null) {
       if (actual instanceof Double) {
-        result.markModifiedIf(
-            !doublesEqual(
-                (double) actual,
-                (double) expected,
-                config.doubleCorrespondenceMap().get(rootDescriptor, fieldDescriptorOrUnknown)
-                ));
+        result.markModifiedIf(!doublesEqual((double) actual, (double) expected, field.tolerance));
       } else if (actual instanceof Float) {
-        result.markModifiedIf(
-            !floatsEqual(
-                (float) actual,
-                (float) expected,
-                config.floatCorrespondenceMap().get(rootDescriptor, fieldDescriptorOrUnknown)
-                ));
+        result.markModifiedIf(!floatsEqual((float) actual, (float) expected, field.tolerance));
       } else {
         result.markModifiedIf(!Objects.equal(actual, expected));
       }
     }
 
-    SingularField.Builder singularFieldBuilder =
-        SingularField.newBuilder()
-            .setFieldDescriptorOrUnknown(
-                FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor))
-            .setFieldName(fieldName)
-            .setResult(result.build());
-    if (actual != null) {
-      singularFieldBuilder.setActual(actual);
-    }
-    if (expected != null) {
-      singularFieldBuilder.setExpected(expected);
-    }
-    return singularFieldBuilder.build();
+    sink.addSingularField(
+        fieldNumber,
+        result.build(),
+        field.fieldDescriptorOrUnknown,
+        fieldName,
+        actual,
+        expected,
+        /*breakdown=*/ null);
+    return result.build();
   }
 
   private boolean doublesEqual(
@@ -719,9 +928,12 @@ final class ProtoTruthMessageDifferencer {
     }
   }
 
-  private UnknownFieldSetDiff diffUnknowns(
-      UnknownFieldSet actual, UnknownFieldSet expected, FluentEqualityConfig config) {
-    UnknownFieldSetDiff.Builder builder = UnknownFieldSetDiff.newBuilder();
+  private Result compareUnknowns(
+      UnknownFieldSet actual,
+      UnknownFieldSet expected,
+      FluentEqualityConfig config,
+      ResultSink sink) {
+    Result result = Result.IGNORED;
 
     Map<Integer, UnknownFieldSet.Field> actualFields = actual.asMap();
     Map<Integer, UnknownFieldSet.Field> expectedFields = expected.asMap();
@@ -744,56 +956,68 @@ final class ProtoTruthMessageDifferencer {
         FieldScopeResult compareFields =
             config.compareFieldsScope().policyFor(rootDescriptor, fieldDescriptorOrUnknown);
         if (compareFields == FieldScopeResult.EXCLUDED_RECURSIVELY) {
-          builder.addSingularField(
-              fieldNumber, SingularField.ignored(name(unknownFieldDescriptor)));
+          sink.addIgnoredField(fieldNumber, name(unknownFieldDescriptor));
           continue;
         }
 
-        builder.addAllSingularFields(
-            fieldNumber,
-            compareUnknownFieldList(
-                actualValues,
-                expectedValues,
-                compareFields == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
-                unknownFieldDescriptor,
-                config.subScope(rootDescriptor, fieldDescriptorOrUnknown)));
+        result =
+            combine(
+                result,
+                compareUnknownFieldList(
+                    actualValues,
+                    expectedValues,
+                    compareFields == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
+                    unknownFieldDescriptor,
+                    config.subScope(rootDescriptor, fieldDescriptorOrUnknown),
+                    sink));
+        if (canStop(result, sink)) {
+          return result;
+        }
       }
     }
 
-    return builder.build();
+    return result;
   }
 
-  private List<SingularField> compareUnknownFieldList(
+  private Result compareUnknownFieldList(
       List<?> actualValues,
       List<?> expectedValues,
       boolean excludeNonRecursive,
       UnknownFieldDescriptor unknownFieldDescriptor,
-      FluentEqualityConfig config) {
+      FluentEqualityConfig config,
+      ResultSink sink) {
+    Result result = Result.IGNORED;
     int maxSize = Math.max(actualValues.size(), expectedValues.size());
-    ImmutableList.Builder<SingularField> builder = ImmutableList.builderWithExpectedSize(maxSize);
     for (int i = 0; i < maxSize; i++) {
       @NullableDecl Object actual = actualValues.size() > i ? actualValues.get(i) : null;
       @NullableDecl Object expected = expectedValues.size() > i ? expectedValues.get(i) : null;
-      builder.add(
-          compareUnknownFieldValue(
-              actual,
-              expected,
-              excludeNonRecursive,
-              unknownFieldDescriptor,
-              indexedName(unknownFieldDescriptor, i),
-              config));
+      result =
+          combine(
+              result,
+              compareUnknownFieldValue(
+                  actual,
+                  expected,
+                  excludeNonRecursive,
+                  unknownFieldDescriptor,
+                  sink.keepsDetails() ? indexedName(unknownFieldDescriptor, i) : null,
+                  config,
+                  sink));
+      if (canStop(result, sink)) {
+        return result;
+      }
     }
 
-    return builder.build();
+    return result;
   }
 
-  private SingularField compareUnknownFieldValue(
+  private Result compareUnknownFieldValue(
       @NullableDecl Object actual,
       @NullableDecl Object expected,
       boolean excludeNonRecursive,
       UnknownFieldDescriptor unknownFieldDescriptor,
-      String fieldName,
-      FluentEqualityConfig config) {
+      @NullableDecl String fieldName,
+      FluentEqualityConfig config,
+      ResultSink sink) {
     if (unknownFieldDescriptor.type() == UnknownFieldDescriptor.Type.GROUP) {
       return compareUnknownFieldSet(
           (UnknownFieldSet) actual,
@@ -801,20 +1025,22 @@ final class ProtoTruthMessageDifferencer {
           excludeNonRecursive,
           unknownFieldDescriptor,
           fieldName,
-          config);
+          config,
+          sink);
     } else {
       checkState(!excludeNonRecursive, "excludeNonRecursive is not a valid for primitives.");
-      return compareUnknownPrimitive(actual, expected, unknownFieldDescriptor, fieldName);
+      return compareUnknownPrimitive(actual, expected, unknownFieldDescriptor, fieldName, sink);
     }
   }
 
-  private SingularField compareUnknownFieldSet(
+  private Result compareUnknownFieldSet(
       @NullableDecl UnknownFieldSet actual,
       @NullableDecl UnknownFieldSet expected,
       boolean excludeNonRecursive,
       UnknownFieldDescriptor unknownFieldDescriptor,
-      String fieldName,
-      FluentEqualityConfig config) {
+      @NullableDecl String fieldName,
+      FluentEqualityConfig config,
+      ResultSink sink) {
     Result.Builder result = Result.builder();
 
     // If actual or expected is missing, we know the result as long as it's not ignored.
@@ -822,62 +1048,495 @@ final class ProtoTruthMessageDifferencer {
     result.markAddedIf(expected == null);
 
     // Perform the detailed breakdown only if necessary.
-    @NullableDecl UnknownFieldSetDiff unknownsBreakdown = null;
+    @NullableDecl ResultSink unknownsBreakdown = null;
     if (result.build() == Result.MATCHED || excludeNonRecursive) {
       actual = firstNonNull(actual, UnknownFieldSet.getDefaultInstance());
       expected = firstNonNull(expected, UnknownFieldSet.getDefaultInstance());
 
-      unknownsBreakdown = diffUnknowns(actual, expected, config);
-      if (unknownsBreakdown.isIgnored() && excludeNonRecursive) {
+      unknownsBreakdown = sink.forUnknowns();
+      Result breakdownResult = compareUnknowns(actual, expected, config, unknownsBreakdown);
+      if (breakdownResult == Result.IGNORED && excludeNonRecursive) {
         // Ignore this field entirely, report nothing.
-        return SingularField.ignored(fieldName);
+        sink.addIgnoredField(unknownFieldDescriptor.fieldNumber(), fieldName);
+        return Result.IGNORED;
       }
-      result.markModifiedIf(!unknownsBreakdown.isMatched());
+      result.markModifiedIf(!isMatched(breakdownResult));
     }
 
     // Report the full breakdown.
-    SingularField.Builder singularFieldBuilder =
-        SingularField.newBuilder()
-            .setFieldDescriptorOrUnknown(
-                FieldDescriptorOrUnknown.fromUnknown(unknownFieldDescriptor))
-            .setFieldName(fieldName)
-            .setResult(result.build());
-    if (actual != null) {
-      singularFieldBuilder.setActual(actual);
-    }
-    if (expected != null) {
-      singularFieldBuilder.setExpected(expected);
-    }
-    if (unknownsBreakdown != null) {
-      singularFieldBuilder.setUnknownsBreakdown(unknownsBreakdown);
-    }
-    return singularFieldBuilder.build();
+    sink.addSingularField(
+        unknownFieldDescriptor.fieldNumber(),
+        result.build(),
+        FieldDescriptorOrUnknown.fromUnknown(unknownFieldDescriptor),
+        fieldName,
+        actual,
+        expected,
+        unknownsBreakdown);
+    return result.build();
   }
 
-  private SingularField compareUnknownPrimitive(
+  private Result compareUnknownPrimitive(
       @NullableDecl Object actual,
       @NullableDecl Object expected,
       UnknownFieldDescriptor unknownFieldDescriptor,
-      String fieldName) {
+      @NullableDecl String fieldName,
+      ResultSink sink) {
     Result.Builder result = Result.builder();
 
     result.markRemovedIf(actual == null);
     result.markAddedIf(expected == null);
     result.markModifiedIf(!Objects.equal(actual, expected));
 
-    SingularField.Builder singularFieldBuilder =
-        SingularField.newBuilder()
-            .setFieldDescriptorOrUnknown(
-                FieldDescriptorOrUnknown.fromUnknown(unknownFieldDescriptor))
-            .setFieldName(fieldName)
-            .setResult(result.build());
-    if (actual != null) {
-      singularFieldBuilder.setActual(actual);
+    sink.addSingularField(
+        unknownFieldDescriptor.fieldNumber(),
+        result.build(),
+        FieldDescriptorOrUnknown.fromUnknown(unknownFieldDescriptor),
+        fieldName,
+        actual,
+        expected,
+        /*breakdown=*/ null);
+    return result.build();
+  }
+
+  /**
+   * Receives the results of the comparisons that the compare*() methods make, on behalf of one
+   * entity of a {@link DiffResult}: a pair of messages, a pair of unknown field sets, the elements
+   * of a repeated field, or a single pair of elements of a repeated field.
+   */
+  private abstract static class ResultSink {
+    /**
+     * Whether this sink keeps the details of the comparisons, rather than just needing to know
+     * whether they all match. If not, the comparison may stop at the first mismatch.
+     */
+    abstract boolean keepsDetails();
+
+    /** Returns a sink for the breakdown of a pair of messages which are field values. */
+    abstract ResultSink forMessages(Message actual, Message expected);
+
+    /** Returns a sink for the breakdown of a pair of unknown field sets. */
+    abstract ResultSink forUnknowns();
+
+    /** Returns a sink for the elements of a repeated field, whose order may not match. */
+    abstract ResultSink forRepeatedField(
+        FieldDescriptor fieldDescriptor, List<?> actual, List<?> expected);
+
+    /** Returns a sink for the comparison of a single pair of elements of a repeated field. */
+    abstract ResultSink forPair();
+
+    /**
+     * Reports the result of comparing two values of a field. {@code breakdown} is the sink that
+     * the comparison of their fields was reported to, if any.
+     */
+    abstract void addSingularField(
+        int fieldNumber,
+        Result result,
+        FieldDescriptorOrUnknown fieldDescriptorOrUnknown,
+        @NullableDecl String fieldName,
+        @NullableDecl Object actual,
+        @NullableDecl Object expected,
+        @NullableDecl ResultSink breakdown);
+
+    /** Reports that the values of a field were ignored. */
+    abstract void addIgnoredField(int fieldNumber, @NullableDecl String fieldName);
+
+    /** Reports the results of a repeated field, which were reported to the given sink. */
+    abstract void addRepeatedField(int fieldNumber, ResultSink repeatedField);
+
+    /** Reports the results of the unknown fields, which were reported to the given sink. */
+    abstract void setUnknownFields(ResultSink unknownFields);
+
+    /**
+     * Reports the result of pairing up two elements of a repeated field, or of leaving one of them
+     * unpaired. {@code breakdown} is the sink that the comparison of the pair was reported to, if
+     * they were compared.
+     */
+    abstract void addPairResult(
+        Result result,
+        FieldDescriptor fieldDescriptor,
+        @NullableDecl Integer actualFieldIndex,
+        @NullableDecl Integer expectedFieldIndex,
+        @NullableDecl Object actual,
+        @NullableDecl Object expected,
+        @NullableDecl ResultSink breakdown);
+  }
+
+  /**
+   * A sink which keeps nothing, for checks which only need to know whether two messages match. The
+   * compare*() methods return their results, so this is all that such a check needs.
+   */
+  private static final ResultSink MATCHING =
+      new ResultSink() {
+        @Override
+        boolean keepsDetails() {
+          return false;
+        }
+
+        @Override
+        ResultSink forMessages(Message actual, Message expected) {
+          return this;
+        }
+
+        @Override
+        ResultSink forUnknowns() {
+          return this;
+        }
+
+        @Override
+        ResultSink forRepeatedField(
+            FieldDescriptor fieldDescriptor, List<?> actual, List<?> expected) {
+          return this;
+        }
+
+        @Override
+        ResultSink forPair() {
+          return this;
+        }
+
+        @Override
+        void addSingularField(
+            int fieldNumber,
+            Result result,
+            FieldDescriptorOrUnknown fieldDescriptorOrUnknown,
+            @NullableDecl String fieldName,
+            @NullableDecl Object actual,
+            @NullableDecl Object expected,
+            @NullableDecl ResultSink breakdown) {}
+
+        @Override
+        void addIgnoredField(int fieldNumber, @NullableDecl String fieldName) {}
+
+        @Override
+        void addRepeatedField(int fieldNumber, ResultSink repeatedField) {}
+
+        @Override
+        void setUnknownFields(ResultSink unknownFields) {}
+
+        @Override
+        void addPairResult(
+            Result result,
+            FieldDescriptor fieldDescriptor,
+            @NullableDecl Integer actualFieldIndex,
+            @NullableDecl Integer expectedFieldIndex,
+            @NullableDecl Object actual,
+            @NullableDecl Object expected,
+            @NullableDecl ResultSink breakdown) {}
+      };
+
+  /** A sink which builds the reported results into the corresponding entity of a report. */
+  private static final class ReportSink extends ResultSink {
+    // The builder of the entity this sink reports on. At most one of these is set: a sink for a
+    // pair of elements keeps the single field it's given in singularField instead.
+    @NullableDecl private final DiffResult.Builder diffResult;
+    @NullableDecl private final UnknownFieldSetDiff.Builder unknownFieldSetDiff;
+    @NullableDecl private final RepeatedField.Builder repeatedField;
+    @NullableDecl private SingularField singularField;
+
+    private ReportSink(
+        @NullableDecl DiffResult.Builder diffResult,
+        @NullableDecl UnknownFieldSetDiff.Builder unknownFieldSetDiff,
+        @NullableDecl RepeatedField.Builder repeatedField) {
+      this.diffResult = diffResult;
+      this.unknownFieldSetDiff = unknownFieldSetDiff;
+      this.repeatedField = repeatedField;
+    }
+
+    static ReportSink of(Message actual, Message expected) {
+      return new ReportSink(
+          DiffResult.newBuilder().setActual(actual).setExpected(expected),
+          /*unknownFieldSetDiff=*/ null,
+          /*repeatedField=*/ null);
+    }
+
+    DiffResult buildDiffResult() {
+      return diffResult.build();
+    }
+
+    @Override
+    boolean keepsDetails() {
+      return true;
+    }
+
+    @Override
+    ResultSink forMessages(Message actual, Message expected) {
+      return ReportSink.of(actual, expected);
     }
-    if (expected != null) {
-      singularFieldBuilder.setExpected(expected);
+
+    @Override
+    ResultSink forUnknowns() {
+      return new ReportSink(
+          /*diffResult=*/ null, UnknownFieldSetDiff.newBuilder(), /*repeatedField=*/ null);
+    }
+
+    @Override
+    ResultSink forRepeatedField(
+        FieldDescriptor fieldDescriptor, List<?> actual, List<?> expected) {
+      return new ReportSink(
+          /*diffResult=*/ null,
+          /*unknownFieldSetDiff=*/ null,
+          RepeatedField.newBuilder()
+              .setFieldDescriptor(fieldDescriptor)
+              .setActual(actual)
+              .setExpected(expected));
+    }
+
+    @Override
+    ResultSink forPair() {
+      return new ReportSink(
+          /*diffResult=*/ null, /*unknownFieldSetDiff=*/ null, /*repeatedField=*/ null);
+    }
+
+    @Override
+    void addSingularField(
+        int fieldNumber,
+        Result result,
+        FieldDescriptorOrUnknown fieldDescriptorOrUnknown,
+        @NullableDecl String fieldName,
+        @NullableDecl Object actual,
+        @NullableDecl Object expected,
+        @NullableDecl ResultSink breakdown) {
+      SingularField.Builder singularFieldBuilder =
+          SingularField.newBuilder()
+              .setFieldDescriptorOrUnknown(fieldDescriptorOrUnknown)
+              .setFieldName(fieldName)
+              .setResult(result);
+      if (actual != null) {
+        singularFieldBuilder.setActual(actual);
+      }
+      if (expected != null) {
+        singularFieldBuilder.setExpected(expected);
+      }
+      if (breakdown != null) {
+        ReportSink breakdownReport = (ReportSink) breakdown;
+        if (breakdownReport.diffResult != null) {
+          singularFieldBuilder.setBreakdown(breakdownReport.diffResult.build());
+        } else {
+          singularFieldBuilder.setUnknownsBreakdown(breakdownReport.unknownFieldSetDiff.build());
+        }
+      }
+      add(fieldNumber, singularFieldBuilder.build());
+    }
+
+    @Override
+    void addIgnoredField(int fieldNumber, @NullableDecl String fieldName) {
+      add(fieldNumber, SingularField.ignored(fieldName));
+    }
+
+    private void add(int fieldNumber, SingularField singularField) {
+      if (diffResult != null) {
+        diffResult.addSingularField(fieldNumber, singularField);
+      } else if (unknownFieldSetDiff != null) {
+        unknownFieldSetDiff.addSingularField(fieldNumber, singularField);
+      } else {
+        checkState(repeatedField == null, "A repeated field has no singular fields.");
+        this.singularField = singularField;
+      }
+    }
+
+    @Override
+    void addRepeatedField(int fieldNumber, ResultSink repeatedField) {
+      diffResult.addRepeatedField(fieldNumber, ((ReportSink) repeatedField).repeatedField.build());
+    }
+
+    @Override
+    void setUnknownFields(ResultSink unknownFields) {
+      diffResult.setUnknownFields(((ReportSink) unknownFields).unknownFieldSetDiff.build());
+    }
+
+    @Override
+    void addPairResult(
+        Result result,
+        FieldDescriptor fieldDescriptor,
+        @NullableDecl Integer actualFieldIndex,
+        @NullableDecl Integer expectedFieldIndex,
+        @NullableDecl Object actual,
+        @NullableDecl Object expected,
+        @NullableDecl ResultSink breakdown) {
+      RepeatedField.PairResult.Builder pairResultBuilder =
+          RepeatedField.PairResult.newBuilder()
+              .setResult(result)
+              .setFieldDescriptor(fieldDescriptor);
+      if (actual != null) {
+        pairResultBuilder.setActual(actual).setActualFieldIndex(actualFieldIndex);
+      }
+      if (expected != null) {
+        pairResultBuilder.setExpected(expected).setExpectedFieldIndex(expectedFieldIndex);
+      }
+      if (breakdown != null) {
+        SingularField comparison = ((ReportSink) breakdown).singularField;
+        if (comparison.breakdown().isPresent()) {
+          pairResultBuilder.setBreakdown(comparison.breakdown().get());
+        }
+      }
+      repeatedField.addPairResult(pairResultBuilder.build());
+    }
+  }
+
+  /**
+   * How to compare the fields of messages of one type under one {@link FluentEqualityConfig}. The
+   * decisions for each field only depend on the config and the field, so a plan makes them the
+   * first time it compares the field, and reuses them for every later message of the same type.
+   *
+   * <p>Plans are cached by {@link FluentEqualityConfig#messagePlan}. Like the differencer, they're
+   * thread-safe: threads racing to plan the same field plan it identically, and {@link FieldPlan}s
+   * are immutable.
+   */
+  static final class MessagePlan {
+    private final FluentEqualityConfig config;
+    private final Descriptor rootDescriptor;
+    private final Descriptor descriptor;
+    private final ImmutableList<FieldDescriptor> fieldsInNumberOrder;
+    // Indexed by FieldDescriptor.getIndex().
+    private final FieldPlan[] fieldPlans;
+
+    MessagePlan(FluentEqualityConfig config, Descriptor rootDescriptor, Descriptor descriptor) {
+      this.config = config;
+      this.rootDescriptor = rootDescriptor;
+      this.descriptor = descriptor;
+      this.fieldsInNumberOrder = FIELD_NUMBER_ORDER.immutableSortedCopy(descriptor.getFields());
+      this.fieldPlans = new FieldPlan[descriptor.getFields().size()];
+    }
+
+    /**
+     * Returns the fields set in either message, in the same order as {@code
+     * Sets.union(actual.getAllFields().keySet(), expected.getAllFields().keySet())}: first the
+     * fields set in {@code actual}, then the fields set only in {@code expected}, each in field
+     * number order. Unlike {@link Message#getAllFields}, this doesn't copy the fields' values.
+     */
+    List<FieldDescriptor> fieldsSetIn(Message actual, Message expected) {
+      if (descriptor.isExtendable()) {
+        // Only the messages know which extensions they have.
+        return ImmutableList.copyOf(
+            Sets.union(actual.getAllFields().keySet(), expected.getAllFields().keySet()));
+      }
+      List<FieldDescriptor> fields = new ArrayList<>();
+      @NullableDecl List<FieldDescriptor> expectedOnlyFields = null;
+      for (FieldDescriptor fieldDescriptor : fieldsInNumberOrder) {
+        if (isSet(actual, fieldDescriptor)) {
+          fields.add(fieldDescriptor);
+        } else if (isSet(expected, fieldDescriptor)) {
+          if (expectedOnlyFields == null) {
+            expectedOnlyFields = new ArrayList<>();
+          }
+          expectedOnlyFields.add(fieldDescriptor);
+        }
+      }
+      if (expectedOnlyFields != null) {
+        fields.addAll(expectedOnlyFields);
+      }
+      return fields;
+    }
+
+    private static boolean isSet(Message message, FieldDescriptor fieldDescriptor) {
+      return fieldDescriptor.isRepeated()
+          ? message.getRepeatedFieldCount(fieldDescriptor) > 0
+          : message.hasField(fieldDescriptor);
+    }
+
+    /** Returns the plan for the given field of this plan's message type. */
+    FieldPlan fieldPlan(FieldDescriptor fieldDescriptor) {
+      if (fieldDescriptor.isExtension()) {
+        return new FieldPlan(config, rootDescriptor, fieldDescriptor);
+      }
+      FieldPlan fieldPlan = fieldPlans[fieldDescriptor.getIndex()];
+      if (fieldPlan == null) {
+        fieldPlan = new FieldPlan(config, rootDescriptor, fieldDescriptor);
+        fieldPlans[fieldDescriptor.getIndex()] = fieldPlan;
+      }
+      return fieldPlan;
+    }
+
+    private static final Ordering<FieldDescriptor> FIELD_NUMBER_ORDER =
+        new Ordering<FieldDescriptor>() {
+          @Override
+          public int compare(FieldDescriptor left, FieldDescriptor right) {
+            return Ints.compare(left.getNumber(), right.getNumber());
+          }
+        };
+  }
+
+  /**
+   * How to compare the values of one field, as decided by the {@link FluentEqualityConfig} of the
+   * message containing it.
+   */
+  static final class FieldPlan {
+    final FieldDescriptor fieldDescriptor;
+    final FieldDescriptorOrUnknown fieldDescriptorOrUnknown;
+    final String name;
+    final FieldScopeResult shouldCompare;
+    final boolean excludeNonRecursive;
+    /** The config for the field's values, scoped to the field. */
+    final FluentEqualityConfig config;
+
+    final boolean ignoreRepeatedFieldOrder;
+    final boolean ignoreExtraRepeatedFieldElements;
+    final boolean ignoreExtraMapEntries;
+    /** Whether an absent value compares as the default value. */
+    final boolean ignoreFieldAbsence;
+    /** The correspondence to compare floating point values with, if not exact equality. */
+    final Optional<Correspondence<Number, Number>> tolerance;
+    /**
+     * Whether two equal message values are sure to match. They needn't if the field is excluded,
+     * which makes them ignored instead, or if a tolerance applies within them, since a tolerance
+     * doesn't match NaN with itself.
+     */
+    final boolean identicalMessagesMatch;
+
+    private FieldPlan(
+        FluentEqualityConfig config, Descriptor rootDescriptor, FieldDescriptor fieldDescriptor) {
+      FieldDescriptorOrUnknown fieldDescriptorOrUnknown =
+          FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor);
+      this.fieldDescriptor = fieldDescriptor;
+      this.fieldDescriptorOrUnknown = fieldDescriptorOrUnknown;
+      this.name = name(fieldDescriptor);
+      this.shouldCompare =
+          config.compareFieldsScope().policyFor(rootDescriptor, fieldDescriptorOrUnknown);
+      this.excludeNonRecursive = shouldCompare == FieldScopeResult.EXCLUDED_NONRECURSIVELY;
+      this.config = config.subScope(rootDescriptor, fieldDescriptorOrUnknown);
+
+      this.ignoreRepeatedFieldOrder =
+          config.ignoreRepeatedFieldOrderScope().contains(rootDescriptor, fieldDescriptorOrUnknown);
+      this.ignoreExtraRepeatedFieldElements =
+          config
+              .ignoreExtraRepeatedFieldElementsScope()
+              .contains(rootDescriptor, fieldDescriptorOrUnknown);
+      // Map fields ask the config scoped to the map field itself.
+      this.ignoreExtraMapEntries =
+          fieldDescriptor.isMapField()
+              && this.config
+                  .ignoreExtraRepeatedFieldElementsScope()
+                  .contains(rootDescriptor, fieldDescriptorOrUnknown);
+
+      // Proto3 primitives which aren't repeated or in a oneof are indistinguishable from their
+      // defaults when unset.
+      boolean isNonRepeatedProto3 =
+          fieldDescriptor.getJavaType() != JavaType.MESSAGE
+              && !fieldDescriptor.isRepeated()
+              && fieldDescriptor.getContainingOneof() == null
+              && fieldDescriptor.getFile().getSyntax() == Syntax.PROTO3;
+      this.ignoreFieldAbsence =
+          isNonRepeatedProto3
+              || this.config
+                  .ignoreFieldAbsenceScope()
+                  .contains(rootDescriptor, fieldDescriptorOrUnknown);
+
+      switch (fieldDescriptor.getJavaType()) {
+        case DOUBLE:
+          this.tolerance =
+              this.config.doubleCorrespondenceMap().get(rootDescriptor, fieldDescriptorOrUnknown);
+          break;
+        case FLOAT:
+          this.tolerance =
+              this.config.floatCorrespondenceMap().get(rootDescriptor, fieldDescriptorOrUnknown);
+          break;
+        default:
+          this.tolerance = Optional.absent();
+      }
+      this.identicalMessagesMatch =
+          fieldDescriptor.getJavaType() == JavaType.MESSAGE
+              && shouldCompare.included()
+              && this.config.doubleCorrespondenceMap().isEmpty()
+              && this.config.floatCorrespondenceMap().isEmpty();
     }
-    return singularFieldBuilder.build();
   }
 
   private static String name(FieldDescriptor fieldDescriptor) {
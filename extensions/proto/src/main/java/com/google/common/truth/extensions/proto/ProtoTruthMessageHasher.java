@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2019 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth.extensions.proto;
+
+import com.google.common.base.Objects;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor.JavaType;
+import com.google.protobuf.Message;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes hashes of messages which are consistent with a {@link ProtoTruthMessageDifferencer} for
+ * the same root {@link Descriptor}: if the differencer would find that two messages match under a
+ * {@link FluentEqualityConfig}, then their hashes under that config are equal. This lets callers
+ * with many messages to compare skip the pairs whose hashes differ.
+ *
+ * <p>The hashes only cover what the config compares, so they are coarse: fields outside the {@link
+ * FluentEqualityConfig#compareFieldsScope}, floating point fields compared with a tolerance,
+ * repeated fields which may contain extra elements and unknown fields don't contribute at all. An
+ * absent field hashes the same as a field set to its default value, which keeps the hashes
+ * consistent whether or not field absence is ignored. Repeated fields whose order is ignored hash
+ * independently of the order of their elements.
+ */
+final class ProtoTruthMessageHasher {
+
+  private final Descriptor rootDescriptor;
+
+  ProtoTruthMessageHasher(Descriptor rootDescriptor) {
+    this.rootDescriptor = rootDescriptor;
+  }
+
+  /**
+   * Returns the hash of a message which {@link ProtoTruthMessageDifferencer} would compare using
+   * the given config.
+   */
+  int hashMessage(Message message, FluentEqualityConfig config) {
+    // A message hashes to the sum of the contributions of its fields. An unset field contributes
+    // nothing, so each set field contributes the difference between the hash of its value and the
+    // hash of its default value. That way, a field set to its default value contributes nothing
+    // too.
+    int hash = 0;
+    for (Map.Entry<FieldDescriptor, Object> entry : message.getAllFields().entrySet()) {
+      FieldDescriptor fieldDescriptor = entry.getKey();
+      FieldDescriptorOrUnknown fieldDescriptorOrUnknown =
+          FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor);
+      FieldScopeResult shouldCompare =
+          config.compareFieldsScope().policyFor(rootDescriptor, fieldDescriptorOrUnknown);
+      if (shouldCompare == FieldScopeResult.EXCLUDED_RECURSIVELY) {
+        continue;
+      }
+      boolean excludeNonRecursive = shouldCompare == FieldScopeResult.EXCLUDED_NONRECURSIVELY;
+      FluentEqualityConfig fieldConfig = config.subScope(rootDescriptor, fieldDescriptorOrUnknown);
+
+      int valueHash;
+      int defaultHash;
+      if (fieldDescriptor.isMapField()) {
+        valueHash = hashMap(message, fieldDescriptor, fieldConfig);
+        defaultHash = 0;
+      } else if (fieldDescriptor.isRepeated()) {
+        if (config
+            .ignoreExtraRepeatedFieldElementsScope()
+            .contains(rootDescriptor, fieldDescriptorOrUnknown)) {
+          continue;
+        }
+        boolean ignoreRepeatedFieldOrder =
+            config
+                .ignoreRepeatedFieldOrderScope()
+                .contains(rootDescriptor, fieldDescriptorOrUnknown);
+        valueHash =
+            hashList(
+                (List<?>) entry.getValue(),
+                ignoreRepeatedFieldOrder,
+                fieldDescriptor,
+                excludeNonRecursive,
+                fieldConfig);
+        defaultHash = ignoreRepeatedFieldOrder ? 0 : 1;
+      } else {
+        valueHash = hashValue(entry.getValue(), fieldDescriptor, excludeNonRecursive, fieldConfig);
+        defaultHash =
+            fieldDescriptor.getJavaType() == JavaType.MESSAGE
+                ? 0
+                : hashValue(
+                    fieldDescriptor.getDefaultValue(),
+                    fieldDescriptor,
+                    excludeNonRecursive,
+                    fieldConfig);
+      }
+      hash +=
+          mix(fieldDescriptor.getNumber(), valueHash)
+              - mix(fieldDescriptor.getNumber(), defaultHash);
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the hash of a single non-null value of the given field (or, for a repeated field, of
+   * one of its elements), which {@link ProtoTruthMessageDifferencer} would compare with the given
+   * {@code excludeNonRecursive} flag and the given config (which is already scoped to the field).
+   */
+  int hashValue(
+      Object value,
+      FieldDescriptor fieldDescriptor,
+      boolean excludeNonRecursive,
+      FluentEqualityConfig config) {
+    FieldDescriptorOrUnknown fieldDescriptorOrUnknown =
+        FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor);
+    switch (fieldDescriptor.getJavaType()) {
+      case MESSAGE:
+        return hashMessage((Message) value, config);
+      case DOUBLE:
+        if (excludeNonRecursive
+            || config
+                .doubleCorrespondenceMap()
+                .get(rootDescriptor, fieldDescriptorOrUnknown)
+                .isPresent()) {
+          return 0;
+        }
+        return value.hashCode();
+      case FLOAT:
+        if (excludeNonRecursive
+            || config
+                .floatCorrespondenceMap()
+                .get(rootDescriptor, fieldDescriptorOrUnknown)
+                .isPresent()) {
+          return 0;
+        }
+        return value.hashCode();
+      default:
+        return excludeNonRecursive ? 0 : value.hashCode();
+    }
+  }
+
+  private int hashList(
+      List<?> values,
+      boolean ignoreRepeatedFieldOrder,
+      FieldDescriptor fieldDescriptor,
+      boolean excludeNonRecursive,
+      FluentEqualityConfig config) {
+    int hash = ignoreRepeatedFieldOrder ? 0 : 1;
+    for (Object value : values) {
+      int valueHash = hashValue(value, fieldDescriptor, excludeNonRecursive, config);
+      hash = ignoreRepeatedFieldOrder ? hash + mix(0, valueHash) : 31 * hash + valueHash;
+    }
+    return hash;
+  }
+
+  private int hashMap(
+      Message message, FieldDescriptor mapFieldDescriptor, FluentEqualityConfig mapConfig) {
+    FieldDescriptor valueFieldDescriptor = mapFieldDescriptor.getMessageType().findFieldByNumber(2);
+    FieldDescriptorOrUnknown valueFieldDescriptorOrUnknown =
+        FieldDescriptorOrUnknown.fromFieldDescriptor(valueFieldDescriptor);
+    FieldScopeResult compareValues =
+        mapConfig.compareFieldsScope().policyFor(rootDescriptor, valueFieldDescriptorOrUnknown);
+    if (compareValues == FieldScopeResult.EXCLUDED_RECURSIVELY
+        || mapConfig
+            .ignoreExtraRepeatedFieldElementsScope()
+            .contains(
+                rootDescriptor, FieldDescriptorOrUnknown.fromFieldDescriptor(mapFieldDescriptor))) {
+      return 0;
+    }
+    FluentEqualityConfig valuesConfig =
+        mapConfig.subScope(rootDescriptor, valueFieldDescriptorOrUnknown);
+
+    // Map entries are compared by key, so their order doesn't matter. We hash the same map that
+    // the differencer compares, so that of several entries with the same key, only the last one
+    // counts.
+    int hash = 0;
+    for (Map.Entry<Object, Object> entry :
+        ProtoTruthMessageDifferencer.toProtoMap(message, mapFieldDescriptor).entrySet()) {
+      // An unset value hashes like its default, as an unset field does.
+      int valueHash;
+      if (entry.getValue() != null) {
+        valueHash =
+            hashValue(
+                entry.getValue(),
+                valueFieldDescriptor,
+                compareValues == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
+                valuesConfig);
+      } else if (valueFieldDescriptor.getJavaType() == JavaType.MESSAGE) {
+        valueHash = 0;
+      } else {
+        valueHash =
+            hashValue(
+                valueFieldDescriptor.getDefaultValue(),
+                valueFieldDescriptor,
+                compareValues == FieldScopeResult.EXCLUDED_NONRECURSIVELY,
+                valuesConfig);
+      }
+      hash += mix(Objects.hashCode(entry.getKey()), valueHash);
+    }
+    return hash;
+  }
+
+  /** Combines two hashes, such that sums of the results are unlikely to collide. */
+  private static int mix(int first, int second) {
+    int hash = first * 0x9E3779B9 + second;
+    hash ^= hash >>> 16;
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+    return hash;
+  }
+}
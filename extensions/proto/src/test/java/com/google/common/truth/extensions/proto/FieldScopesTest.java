@@ -870,6 +870,36 @@ public class FieldScopesTest extends ProtoSubjectTestBase {
     expectThatFailure().isNotNull();
   }
 
+  @Test
+  public void testFromSetFields_iterables_unionsSubMessages() {
+    FieldScope scope =
+        FieldScopes.fromSetFields(
+            parse("o_test_message { o_int: 1 }"),
+            parse("o_test_message { r_string: \"foo\" } r_test_message { o_enum: TWO }"),
+            parse("r_test_message { o_int: 2 } r_test_message { o_test_message { o_int: 3 } }"));
+    Message message =
+        parse(
+            "o_test_message { o_int: 1 r_string: \"foo\" o_enum: TWO } "
+                + "r_test_message { o_int: 2 o_enum: TWO o_test_message { o_int: 3 } }");
+    Message eqMessage =
+        parse(
+            "o_test_message { o_int: 1 r_string: \"foo\" o_enum: ONE } "
+                + "r_test_message { o_int: 2 o_enum: TWO "
+                + "o_test_message { o_int: 3 o_enum: ONE } }");
+    Message diffMessage1 =
+        parse(
+            "o_test_message { o_int: 1 r_string: \"bar\" o_enum: TWO } "
+                + "r_test_message { o_int: 2 o_enum: TWO o_test_message { o_int: 3 } }");
+    Message diffMessage2 =
+        parse(
+            "o_test_message { o_int: 1 r_string: \"foo\" o_enum: TWO } "
+                + "r_test_message { o_int: 2 o_enum: TWO o_test_message { o_int: 4 } }");
+
+    expectThat(eqMessage).withPartialScope(scope).isEqualTo(message);
+    expectThat(diffMessage1).withPartialScope(scope).isNotEqualTo(message);
+    expectThat(diffMessage2).withPartialScope(scope).isNotEqualTo(message);
+  }
+
   @Test
   public void testIterableFieldScopeMethodVariants_protoSubject() {
     Message message = parse("o_int: 1 r_string: \"foo\"");
@@ -17,6 +17,8 @@
 package com.google.common.truth.extensions.proto;
 
 import com.google.common.base.Function;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import java.util.Collection;
 import java.util.Collections;
@@ -359,6 +361,48 @@ public class IterableOfProtosSubjectTest extends ProtoSubjectTestBase {
     expectThatFailure().isNotNull();
   }
 
+  @Test
+  public void testFluent_containsExactly_outOfOrder() {
+    // Out of order, every message has to be compared against messages other than the one at the
+    // same index, so these make sure that no matching pair is skipped.
+    expectThat(listOf(message1, message2))
+        .ignoringRepeatedFieldOrder()
+        .containsExactly(eqRepeatedMessage2, eqRepeatedMessage1);
+    expectThat(listOf(parse("o_int: 1 o_double: 1.0"), parse("o_int: 2 o_double: 2.0")))
+        .usingDoubleTolerance(0.5)
+        .containsExactly(parse("o_int: 2 o_double: 2.1"), parse("o_int: 1 o_double: 0.9"));
+    expectThat(listOf(parse("o_int: 1 o_enum: DEFAULT"), parse("o_int: 2")))
+        .ignoringFieldAbsence()
+        .containsExactly(parse("o_int: 2 o_enum: DEFAULT"), parse("o_int: 1"));
+    expectThat(listOf(parse("o_int: 1 r_string: 'foo'"), parse("o_int: 2 r_string: 'bar'")))
+        .comparingExpectedFieldsOnly()
+        .containsExactly(parse("r_string: 'bar'"), parse("o_int: 1"));
+
+    expectFailureWhenTesting()
+        .that(listOf(parse("o_int: 1 o_double: 1.0"), parse("o_int: 2 o_double: 2.0")))
+        .usingDoubleTolerance(0.05)
+        .containsExactly(parse("o_int: 2 o_double: 2.1"), parse("o_int: 1 o_double: 0.9"));
+    expectThatFailure().isNotNull();
+  }
+
+  @Test
+  public void testFluent_containsExactly_duplicateMapKeys() throws InvalidProtocolBufferException {
+    // A DynamicMessage can hold several entries with the same map key. Only the last one counts
+    // when comparing, so it must be the only one that counts when bucketing messages by hash too.
+    Message eqMessage = parse("test_message_map { key: 'foo' value { o_int: 2 } }");
+    Message message =
+        DynamicMessage.parseFrom(
+            eqMessage.getDescriptorForType(),
+            parse("test_message_map { key: 'foo' value { o_int: 1 } }")
+                .toByteString()
+                .concat(eqMessage.toByteString()));
+
+    expectThat(message).ignoringFieldAbsence().isEqualTo(eqMessage);
+    expectThat(listOf(message, parse("o_int: 3")))
+        .ignoringFieldAbsence()
+        .containsExactly(parse("o_int: 3"), eqMessage);
+  }
+
   @Test
   public void testFluent_containsNone() {
     expectThat(listOf(message1))
@@ -68,6 +68,30 @@ public class ProtoSubjectTest extends ProtoSubjectTestBase {
     expectThatFailure().hasMessageThat().contains("Full diff");
   }
 
+  @Test
+  public void testFailureReportsAllMismatches() {
+    // The equality check stops at the first mismatch, but the failure message must not.
+    expectFailureWhenTesting()
+        .that(parse("o_int: 3 r_string: 'abc' o_test_message: { o_int: 5 }"))
+        .isEqualTo(parse("o_int: 4 r_string: 'abc' o_test_message: { o_int: 6 }"));
+    expectIsEqualToFailed();
+    expectThatFailure().hasMessageThat().contains("modified: o_int: 4 -> 3");
+    expectThatFailure().hasMessageThat().contains("modified: o_test_message.o_int: 6 -> 5");
+  }
+
+  @Test
+  public void testMapWithDefaultKey() {
+    Message message = makeProtoMap(ImmutableMap.of("", 2, "foo", 3));
+
+    expectThat(makeProtoMap(ImmutableMap.of("foo", 3, "", 2))).isEqualTo(message);
+
+    expectFailureWhenTesting()
+        .that(makeProtoMap(ImmutableMap.of("", 4, "foo", 3)))
+        .isEqualTo(message);
+    expectIsEqualToFailed();
+    expectThatFailure().hasMessageThat().contains("modified: test_message_map[\"\"].o_int: 2 -> 4");
+  }
+
   @Test
   public void testIgnoringFieldAbsence() {
     Message message = parse("o_int: 3");
@@ -311,6 +335,38 @@ public class ProtoSubjectTest extends ProtoSubjectTestBase {
     }
   }
 
+  @Test
+  public void testRepeatedFieldOrder_findsMaximumMatching() {
+    // The first actual element matches both expected elements, but the second only matches the
+    // first, so pairing up the first elements greedily would fail.
+    Message message =
+        parse("r_test_message: { o_double: 0.0 } r_test_message: { o_double: 2.0 }");
+    Message eqMessage =
+        parse("r_test_message: { o_double: 1.0 } r_test_message: { o_double: -0.5 }");
+
+    expectThat(eqMessage)
+        .ignoringRepeatedFieldOrder()
+        .usingDoubleTolerance(1.0)
+        .isEqualTo(message);
+    expectThat(eqMessage)
+        .ignoringRepeatedFieldOrder()
+        .usingDoubleTolerance(0.9)
+        .isNotEqualTo(message);
+
+    expectFailureWhenTesting()
+        .that(eqMessage)
+        .ignoringRepeatedFieldOrder()
+        .usingDoubleTolerance(1.0)
+        .isNotEqualTo(message);
+    expectIsNotEqualToFailed();
+    expectThatFailure()
+        .hasMessageThat()
+        .contains("moved: r_test_message[0] -> r_test_message[1]:");
+    expectThatFailure()
+        .hasMessageThat()
+        .contains("moved: r_test_message[1] -> r_test_message[0]:");
+  }
+
   @Test
   public void testDoubleTolerance() {
     Message message = parse("o_double: 1.0");
@@ -408,6 +464,27 @@ public class ProtoSubjectTest extends ProtoSubjectTestBase {
     }
   }
 
+  @Test
+  public void testDoubleTolerance_mapValues() {
+    // Tolerances never match NaN, even with itself.
+    Message message = parse("test_message_map { key: 'foo' value { o_double: nan } }");
+
+    expectThat(message).isEqualTo(message);
+    expectThat(message).usingDoubleTolerance(0.1).isNotEqualTo(message);
+  }
+
+  @Test
+  public void testDoubleTolerance_equalNonFiniteValues() {
+    Message message = parse("o_double: nan o_double2: inf");
+    Message eqMessage = parse("o_double: nan o_double2: inf");
+
+    expectThat(eqMessage).isEqualTo(message);
+    expectThat(eqMessage).ignoringFieldAbsence().isEqualTo(message);
+    expectThat(eqMessage).usingDoubleTolerance(0.1).isNotEqualTo(message);
+    expectThat(eqMessage).usingDoubleToleranceForFields(0.1, 8).isNotEqualTo(message);
+    expectThat(eqMessage).ignoringFields(7).usingDoubleTolerance(0.1).isNotEqualTo(message);
+  }
+
   @Test
   public void testFloatTolerance() {
     Message message = parse("o_float: 1.0");
@@ -688,6 +765,36 @@ public class ProtoSubjectTest extends ProtoSubjectTestBase {
     expectThatFailure().hasMessageThat().contains("not_bar");
   }
 
+  @Test
+  public void testReportingMismatchesOnly_map() {
+    Message message = makeProtoMap(ImmutableMap.of("foo", 2, "bar", 3, "baz", 4));
+    Message diffMessage = makeProtoMap(ImmutableMap.of("bar", 3, "foo", 5, "qux", 4));
+
+    expectFailureWhenTesting().that(diffMessage).reportingMismatchesOnly().isEqualTo(message);
+    expectIsEqualToFailed();
+    expectThatFailure()
+        .hasMessageThat()
+        .contains("modified: test_message_map[\"foo\"].o_int: 2 -> 5");
+    expectThatFailure().hasMessageThat().contains("added: test_message_map[\"qux\"]");
+    expectThatFailure().hasMessageThat().contains("deleted: test_message_map[\"baz\"]");
+    expectThatFailure().hasMessageThat().doesNotContain("bar");
+  }
+
+  @Test
+  public void testMapEntriesReportedInEntryOrder() {
+    // Entries of the actual map come first, in its order, and then those only in the expected map.
+    Message message = makeProtoMap(ImmutableMap.of("mmm", 1, "qux", 7, "aaa", 2, "zzz", 3));
+    Message diffMessage = makeProtoMap(ImmutableMap.of("zzz", 4, "aaa", 5, "mmm", 6));
+
+    expectFailureWhenTesting().that(diffMessage).isEqualTo(message);
+    expectIsEqualToFailed();
+    expectThatFailure()
+        .hasMessageThat()
+        .containsMatch(
+            "(?s)test_message_map\\[\"zzz\"\\].*test_message_map\\[\"aaa\"\\]"
+                + ".*test_message_map\\[\"mmm\"\\].*deleted: test_message_map\\[\"qux\"\\]");
+  }
+
   @Test
   public void testReportingMismatchesOnly_isNotEqualTo() {
     Message message = parse("o_int: 33 r_string: \"foo\" r_string: \"bar\"");